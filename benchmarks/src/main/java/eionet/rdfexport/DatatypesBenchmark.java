@@ -0,0 +1,86 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is RDFExport 1.0
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev or Zero Technologies are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Søren Roug, EEA
+ */
+package eionet.rdfexport;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+import javax.sql.rowset.serial.SerialClob;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Formatting of the values the JDBC drivers return, as done by
+ * Datatypes.getFormattedValue for ids, references and literals.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DatatypesBenchmark {
+
+    /** The kind of value to format. */
+    @Param({"string", "integer", "decimal", "double", "date", "timestamp", "bytes", "clob"})
+    public String kind;
+
+    /** The value to format. */
+    private Object value;
+
+    @Setup
+    public void setUp() throws SQLException {
+        if ("string".equals(kind)) {
+            value = "Ethylene dichloride";
+        } else if ("integer".equals(kind)) {
+            value = Integer.valueOf(882911);
+        } else if ("decimal".equals(kind)) {
+            value = new BigDecimal("299.95");
+        } else if ("double".equals(kind)) {
+            value = Double.valueOf(0.000123);
+        } else if ("date".equals(kind)) {
+            value = Date.valueOf("1980-11-02");
+        } else if ("timestamp".equals(kind)) {
+            value = Timestamp.valueOf("1984-03-18 20:55:31.25");
+        } else if ("bytes".equals(kind)) {
+            value = "Héllo".getBytes(StandardCharsets.UTF_8);
+        } else {
+            value = new SerialClob("Fruit & vegetables from the market".toCharArray());
+        }
+    }
+
+    @Benchmark
+    public String format() throws SQLException {
+        return Datatypes.getFormattedValue(value);
+    }
+}
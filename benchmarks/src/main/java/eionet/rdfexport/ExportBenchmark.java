@@ -0,0 +1,265 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is RDFExport 1.0
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev or Zero Technologies are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Søren Roug, EEA
+ */
+package eionet.rdfexport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Exports a table from an in-memory H2 database, from the query to the
+ * last byte. The table is made from the first table of a seed file of the
+ * tests: its rows are repeated until there are enough, with the first
+ * column as a running key. The query selects the other columns again and
+ * again until it has the wanted width, and a CLOB column is added when a
+ * LOB size is given.
+ * <p>
+ * Choose the parameters on the command line, as in
+ * <code>java -jar benchmarks.jar ExportBenchmark -p rows=100000 -p format=nt</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExportBenchmark {
+
+    /** The seed file to take the rows from. */
+    @Param({"seed-person.xml"})
+    public String seed;
+
+    /** Number of rows in the table. */
+    @Param({"1000", "10000"})
+    public int rows;
+
+    /** Number of property columns in the query, not counting the LOB. */
+    @Param({"4", "16"})
+    public int width;
+
+    /** Number of characters in the CLOB column, or 0 for no LOB. */
+    @Param({"0", "4096"})
+    public int lobSize;
+
+    /** The output format. */
+    @Param({"xml", "ttl", "nt", "jsonld"})
+    public String format;
+
+    /** The database. */
+    private Connection dbConn;
+
+    /** The compiled properties. */
+    private ExportPlan plan;
+
+    /** Name of the table in the properties file. */
+    private String table;
+
+    @Setup
+    public void setUp() throws SQLException, IOException, XMLStreamException {
+        Map<String, String> columns = new LinkedHashMap<String, String>();
+        List<Map<String, String>> templates = readSeed(columns);
+        String tableName = table;
+        table = table.toLowerCase();
+        List<String> names = new ArrayList<String>(columns.keySet());
+        String key = names.remove(0);
+
+        dbConn = DriverManager.getConnection("jdbc:h2:mem:bench" + System.nanoTime(), "sa", "");
+        StringBuilder create = new StringBuilder("CREATE TABLE " + tableName + " (" + key + " BIGINT PRIMARY KEY");
+        StringBuilder insert = new StringBuilder("INSERT INTO " + tableName + " VALUES (?");
+        for (String name : names) {
+            create.append(", ").append(name).append(" ").append(columns.get(name));
+            insert.append(", ?");
+        }
+        if (lobSize > 0) {
+            create.append(", NOTE CLOB");
+            insert.append(", ?");
+        }
+        Statement statement = dbConn.createStatement();
+        statement.executeUpdate(create.append(")").toString());
+        statement.close();
+
+        String note = lobText();
+        PreparedStatement ps = dbConn.prepareStatement(insert.append(")").toString());
+        for (int r = 0; r < rows; r++) {
+            Map<String, String> template = templates.get(r % templates.size());
+            ps.setLong(1, r + 1);
+            for (int c = 0; c < names.size(); c++) {
+                ps.setString(c + 2, template.get(names.get(c)));
+            }
+            if (lobSize > 0) {
+                ps.setString(names.size() + 2, note);
+            }
+            ps.addBatch();
+            if (r % 1000 == 999) {
+                ps.executeBatch();
+            }
+        }
+        ps.executeBatch();
+        ps.close();
+
+        StringBuilder query = new StringBuilder("SELECT " + key + " AS \"id\"");
+        for (int c = 0; c < width; c++) {
+            String name = names.get(c % names.size());
+            query.append(", ").append(name).append(" AS \"").append(name.toLowerCase());
+            if (c >= names.size()) {
+                query.append(c / names.size() + 1);
+            }
+            query.append("\"");
+        }
+        if (lobSize > 0) {
+            query.append(", NOTE AS \"note\"");
+        }
+        query.append(" FROM ").append(tableName).append(" ORDER BY ").append(key);
+
+        Properties props = new Properties();
+        props.setProperty("tables", table);
+        props.setProperty("vocabulary", "http://rdfdata.eionet.europa.eu/voc/");
+        props.setProperty("baseurl", "http://rdfdata.eionet.europa.eu/");
+        props.setProperty("outputformat", format);
+        props.setProperty("xmlns.xsd", "http://www.w3.org/2001/XMLSchema#");
+        props.setProperty("datatype.bigint", "xsd:integer");
+        props.setProperty("datatype.timestamp", "xsd:dateTime");
+        props.setProperty(table + ".query", query.toString());
+        plan = new ExportPlan(props);
+    }
+
+    /**
+     * Read the rows of the first table in the seed file. The attributes
+     * are kept in the order of the file, so the first is the key.
+     *
+     * @param columns
+     *            - gets the columns with their SQL types
+     * @return the rows, as values by column
+     * @throws XMLStreamException
+     *             - if the seed file is not well-formed
+     * @throws IOException
+     *             - if the seed file is missing
+     */
+    private List<Map<String, String>> readSeed(Map<String, String> columns) throws XMLStreamException, IOException {
+        List<Map<String, String>> templates = new ArrayList<Map<String, String>>();
+        InputStream in = ExportBenchmark.class.getClassLoader().getResourceAsStream(seed);
+        if (in == null) {
+            throw new IOException("Seed file not found: " + seed);
+        }
+        try {
+            XMLStreamReader xml = XMLInputFactory.newInstance().createXMLStreamReader(in);
+            int depth = 0;
+            while (xml.hasNext()) {
+                int event = xml.next();
+                if (event == XMLStreamReader.END_ELEMENT) {
+                    depth--;
+                } else if (event == XMLStreamReader.START_ELEMENT && ++depth == 2) {
+                    if (table == null) {
+                        table = xml.getLocalName();
+                    }
+                    if (table.equals(xml.getLocalName())) {
+                        Map<String, String> row = new LinkedHashMap<String, String>();
+                        for (int i = 0; i < xml.getAttributeCount(); i++) {
+                            String name = xml.getAttributeLocalName(i);
+                            String value = xml.getAttributeValue(i);
+                            row.put(name, value);
+                            columns.put(name, sqlType(columns.get(name), value));
+                        }
+                        templates.add(row);
+                    }
+                }
+            }
+            xml.close();
+        } finally {
+            in.close();
+        }
+        return templates;
+    }
+
+    /**
+     * Guess the SQL type of a column from its values so far.
+     *
+     * @param type
+     *            - the type guessed from the earlier values, or null
+     * @param value
+     *            - the next value
+     * @return BIGINT, TIMESTAMP or VARCHAR
+     */
+    private static String sqlType(String type, String value) {
+        String guess;
+        if (value.matches("-?[0-9]+")) {
+            guess = "BIGINT";
+        } else if (value.matches("[0-9]{4}-[0-9]{2}-[0-9]{2}( .*)?")) {
+            guess = "TIMESTAMP";
+        } else {
+            guess = "VARCHAR(4000)";
+        }
+        return type == null || type.equals(guess) ? guess : "VARCHAR(4000)";
+    }
+
+    /**
+     * Make the text of the CLOB column.
+     *
+     * @return text of the LOB size, with characters to escape
+     */
+    private String lobText() {
+        StringBuilder buf = new StringBuilder(lobSize);
+        while (buf.length() < lobSize) {
+            buf.append("Søren's emissions of CO2 & NOx are < 10% of the limit. ");
+        }
+        buf.setLength(lobSize);
+        return buf.toString();
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        dbConn.close();
+    }
+
+    @Benchmark
+    public long export() throws SQLException, IOException {
+        GenerateRDF generator = new GenerateRDF(OutputStream.nullOutputStream(), dbConn, plan);
+        generator.exportTable(table);
+        generator.writeRdfFooter();
+        return generator.getBytesWritten();
+    }
+}
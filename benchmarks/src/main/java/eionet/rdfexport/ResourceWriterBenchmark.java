@@ -0,0 +1,126 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is RDFExport 1.0
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev or Zero Technologies are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Søren Roug, EEA
+ */
+package eionet.rdfexport;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writing properties with each of the resource writers. A resource is
+ * started, a number of properties of one kind are written and the resource
+ * is ended, so the JSON-LD writer, which collects the values of a resource,
+ * is measured the same way as the others. The time is per property.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResourceWriterBenchmark {
+
+    /** Number of properties written to a resource. */
+    private static final int PROPERTIES = 10;
+
+    /** The output format. */
+    @Param({"xml", "ttl", "nt", "nq", "jsonld", "ndjsonld"})
+    public String format;
+
+    /** The kind of property to write. */
+    @Param({"literal", "language", "decimal", "dateTime", "reference"})
+    public String kind;
+
+    /** The writer. */
+    private ResourceWriter writer;
+
+    /** The property. */
+    private RDFField property;
+
+    /** The value. */
+    private Object value;
+
+    @Setup
+    public void setUp() throws IOException {
+        OutputSink sink = new OutputSink(OutputStream.nullOutputStream());
+        if ("xml".equals(format)) {
+            writer = new ResourceWriterXML(sink);
+        } else if ("ttl".equals(format)) {
+            writer = new ResourceWriterTTL(sink);
+        } else if ("nt".equals(format)) {
+            writer = new ResourceWriterNT(sink);
+        } else if ("nq".equals(format)) {
+            writer = new ResourceWriterNQ(sink);
+        } else if ("jsonld".equals(format)) {
+            writer = new ResourceWriterJSONLD(sink);
+        } else {
+            writer = new ResourceWriterNDJSONLD(sink);
+        }
+        writer.setVocabulary("http://rdfdata.eionet.europa.eu/voc/");
+        writer.setBaseURL("http://rdfdata.eionet.europa.eu/");
+        writer.addNamespace("rdfs", "http://www.w3.org/2000/01/rdf-schema#");
+        writer.addNamespace("xsd", "http://www.w3.org/2001/XMLSchema#");
+        writer.writeRdfHeader();
+
+        if ("literal".equals(kind)) {
+            property = new RDFField("name", "", "");
+            value = "Fruit & vegetables <from the market>";
+        } else if ("language".equals(kind)) {
+            property = new RDFField("rdfs:label", "", "en");
+            value = "Included elsewhere";
+        } else if ("decimal".equals(kind)) {
+            property = new RDFField("total", "xsd:decimal", "");
+            value = new BigDecimal("299.95");
+        } else if ("dateTime".equals(kind)) {
+            property = new RDFField("born", "xsd:dateTime", "");
+            value = Timestamp.valueOf("1984-03-18 20:55:31");
+        } else {
+            property = new RDFField("forCountry", "->countries", "");
+            value = "DK";
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PROPERTIES)
+    public long writeProperty() throws SQLException, IOException {
+        writer.writeStartResource("Person", "person", "182208");
+        for (int i = 0; i < PROPERTIES; i++) {
+            writer.writeProperty(property, value);
+        }
+        writer.writeEndResource("Person");
+        return writer.getTripleCount();
+    }
+}
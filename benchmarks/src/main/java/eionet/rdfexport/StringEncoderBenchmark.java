@@ -0,0 +1,113 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is RDFExport 1.0
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev or Zero Technologies are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Søren Roug, EEA
+ */
+package eionet.rdfexport;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the escaping in StringEncoder with the old two-pass version.
+ * The values are typical of what goes through the writers: identifiers,
+ * short literals and longer texts with and without characters to escape.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringEncoderBenchmark {
+
+    /** The kind of value to escape. */
+    @Param({"id", "clean", "dirty", "long"})
+    public String kind;
+
+    /** The value to escape. */
+    private String value;
+
+    /** Buffer for the escaping straight into the output. */
+    private OutputSink sink;
+
+    @Setup
+    public void setUp() {
+        if ("id".equals(kind)) {
+            value = "ICHLOROETHANE-1,2 (DCE)";
+        } else if ("clean".equals(kind)) {
+            value = "Ethylene dichloride is used to make vinyl chloride";
+        } else if ("dirty".equals(kind)) {
+            value = "Fruit & vegetables <from 'the' \"market\">";
+        } else {
+            StringBuilder buf = new StringBuilder();
+            for (int i = 0; i < 20; i++) {
+                buf.append("Søren's emissions of CO2 & NOx are < 10% of the limit. ");
+            }
+            value = buf.toString();
+        }
+        sink = new OutputSink(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+            }
+        });
+    }
+
+    @Benchmark
+    public String legacyXml() {
+        return LegacyStringEncoder.encodeToXml(value);
+    }
+
+    @Benchmark
+    public String tableXml() {
+        return StringEncoder.encodeToXml(value);
+    }
+
+    @Benchmark
+    public String legacyXmlIRI() {
+        return LegacyStringEncoder.encodeToXml(LegacyStringEncoder.encodeToIRI(value));
+    }
+
+    @Benchmark
+    public String tableXmlIRI() {
+        return StringEncoder.encodeToXmlIRI(value);
+    }
+
+    @Benchmark
+    public void sinkXmlIRI(Blackhole bh) throws IOException {
+        sink.writeEscaped(value, StringEncoder.XML_IRI_ESCAPES);
+        bh.consume(sink);
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is RDFExport 1.0
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev or Zero Technologies are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Søren Roug, EEA
+ */
+package eionet.rdfexport;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A journal of the work an export has finished, so that an export that
+ * was stopped can be resumed. Each line of the journal records a finished
+ * table or key range, and the size of the output when it was finished.
+ * When the export is resumed, the output is cut back to the size in the
+ * last line, and the finished work is skipped.
+ * <p>
+ * The journal is kept next to the output, with the extension .checkpoint,
+ * and is deleted when the export completes.
+ */
+class Checkpoint {
+
+    /** The journal file. */
+    private File journalFile;
+
+    /** The output, opened for appending. */
+    private FileOutputStream output;
+
+    /** The journal, opened for appending. */
+    private FileOutputStream journal;
+
+    /** Tables that are finished. */
+    private Set<String> tables = new HashSet<String>();
+
+    /** Key ranges that are finished, by table, in the order they were written. */
+    private Map<String, List<String>> ranges = new HashMap<String, List<String>>();
+
+    /** Size of the output before the first finished key range of a table. */
+    private Map<String, Long> rangeStarts = new HashMap<String, Long>();
+
+    /** Size of the output when the last piece of work was finished. */
+    private long size;
+
+    /** True if the output already has the work of an earlier run. */
+    private boolean resumed;
+
+    /** True if work has been recorded since the journal was opened. */
+    private boolean recorded;
+
+    /**
+     * Constructor.
+     *
+     * @param outputFile
+     *            - the file the export is written to
+     * @param resume
+     *            - true to continue from the journal of an earlier run. If
+     *            false, or there is no journal, the export starts over.
+     * @throws IOException
+     *             - if the files can't be opened
+     */
+    Checkpoint(File outputFile, boolean resume) throws IOException {
+        journalFile = new File(outputFile.getPath() + ".checkpoint");
+        if (resume && journalFile.exists()) {
+            readJournal();
+        }
+        resumed = size > 0;
+        RandomAccessFile raf = new RandomAccessFile(outputFile, "rw");
+        try {
+            if (raf.length() < size) {
+                throw new IOException("The output " + outputFile + " is shorter than the checkpoint says");
+            }
+            raf.setLength(size);
+        } finally {
+            raf.close();
+        }
+        output = new FileOutputStream(outputFile, true);
+        journal = new FileOutputStream(journalFile, resumed);
+    }
+
+    /**
+     * Read the journal of an earlier run.
+     *
+     * @throws IOException
+     *             - if the journal can't be read
+     */
+    private void readJournal() throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile),
+                StandardCharsets.UTF_8));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length == 3 && "table".equals(fields[0])) {
+                    tables.add(fields[1]);
+                    ranges.remove(fields[1]);
+                    size = Long.parseLong(fields[2]);
+                } else if (fields.length == 4 && "range".equals(fields[0])) {
+                    addRange(fields[1], fields[2]);
+                    size = Long.parseLong(fields[3]);
+                } else if (fields.length == 3 && "rewind".equals(fields[0])) {
+                    ranges.remove(fields[1]);
+                    size = Long.parseLong(fields[2]);
+                } else {
+                    // A line cut short when the export was stopped. It can only be the last one.
+                    break;
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Remember a finished key range.
+     *
+     * @param table
+     *            - name of table in properties file
+     * @param range
+     *            - the range as written by {@link KeyRange#toString()}
+     */
+    private void addRange(String table, String range) {
+        List<String> done = ranges.get(table);
+        if (done == null) {
+            done = new ArrayList<String>();
+            ranges.put(table, done);
+            rangeStarts.put(table, size);
+        }
+        done.add(range);
+    }
+
+    /**
+     * The stream to write the export to. It continues where the finished
+     * work ends.
+     *
+     * @return the output
+     */
+    OutputStream getOutput() {
+        return output;
+    }
+
+    /**
+     * Check if the output already has work from an earlier run, including
+     * the RDF header.
+     *
+     * @return true if the export is being resumed
+     */
+    boolean isResumed() {
+        return resumed;
+    }
+
+    /**
+     * Check if a table was finished by an earlier run.
+     *
+     * @param table
+     *            - name of table in properties file
+     * @return true if the table is in the output
+     */
+    boolean isDone(String table) {
+        return tables.contains(table);
+    }
+
+    /**
+     * The key ranges of a table that were finished by an earlier run.
+     *
+     * @param table
+     *            - name of table in properties file
+     * @return the ranges in the order they were written. Empty if none.
+     */
+    List<String> getRanges(String table) {
+        List<String> done = ranges.get(table);
+        return done == null ? new ArrayList<String>() : new ArrayList<String>(done);
+    }
+
+    /**
+     * Record that a table is finished. The output must have been flushed.
+     *
+     * @param table
+     *            - name of table in properties file
+     * @throws IOException
+     *             - if the journal can't be written
+     */
+    void tableDone(String table) throws IOException {
+        tables.add(table);
+        ranges.remove(table);
+        record("table\t" + table);
+    }
+
+    /**
+     * Record that a key range of a table is finished. The output must have
+     * been flushed.
+     *
+     * @param table
+     *            - name of table in properties file
+     * @param range
+     *            - the range
+     * @throws IOException
+     *             - if the journal can't be written
+     */
+    void rangeDone(String table, KeyRange range) throws IOException {
+        addRange(table, range.toString());
+        record("range\t" + table + "\t" + range);
+    }
+
+    /**
+     * Throw away the finished key ranges of a table, because the table is
+     * split differently this time. The output is cut back to where the
+     * table started. The output must have been flushed.
+     *
+     * @param table
+     *            - name of table in properties file
+     * @throws IOException
+     *             - if the output can't be cut back
+     */
+    void rewind(String table) throws IOException {
+        Long start = rangeStarts.get(table);
+        if (start == null) {
+            return;
+        }
+        if (recorded || output.getChannel().size() != size) {
+            throw new IllegalStateException("Can't rewind " + table + " after other tables have been written");
+        }
+        output.getChannel().truncate(start);
+        ranges.remove(table);
+        rangeStarts.remove(table);
+        record("rewind\t" + table);
+    }
+
+    /**
+     * Append a line to the journal with the current size of the output.
+     * Both files are synced, so the line can be trusted after a crash.
+     *
+     * @param entry
+     *            - the line without the size
+     * @throws IOException
+     *             - if the journal can't be written
+     */
+    private void record(String entry) throws IOException {
+        output.getFD().sync();
+        size = output.getChannel().size();
+        journal.write((entry + "\t" + size + "\n").getBytes(StandardCharsets.UTF_8));
+        journal.getFD().sync();
+        recorded = true;
+    }
+
+    /**
+     * Close the journal and delete it, because the export has completed.
+     */
+    void finish() {
+        close();
+        journalFile.delete();
+    }
+
+    /**
+     * Close the journal. The output is closed by whoever writes to it.
+     */
+    void close() {
+        try {
+            journal.close();
+        } catch (IOException e) {
+            // Ignore closing exceptions
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is RDFExport 1.0
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev or Zero Technologies are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Søren Roug, EEA
+ */
+package eionet.rdfexport;
+
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Reads the value of one column of a query. The reader is chosen once per
+ * query from the column type, so the type is not looked at again for every
+ * row. Numbers are read as primitives and written into a buffer that is
+ * reused for every row, so they are never boxed.
+ * <p>
+ * A value returned as a CharSequence is only valid until the next row is
+ * read.
+ */
+abstract class ColumnReader {
+
+    /**
+     * Read the value of the column in the current row.
+     *
+     * @param rs
+     *            - the result set positioned on the row
+     * @param column
+     *            - the column number
+     * @return the lexical form, a value that needs formatting, or null for SQL NULL
+     * @throws SQLException
+     *             - if the SQL database is not available
+     */
+    abstract Object read(ResultSet rs, int column) throws SQLException;
+
+    /**
+     * Choose the reader for a column.
+     *
+     * @param rsmd
+     *            - metadata of the query
+     * @param column
+     *            - the column number
+     * @return the reader
+     * @throws SQLException
+     *             - if the SQL database is not available
+     */
+    static ColumnReader forColumn(ResultSetMetaData rsmd, int column) throws SQLException {
+        switch (rsmd.getColumnType(column)) {
+        case Types.BIGINT:
+            // An unsigned BIGINT may not fit in a long.
+            return rsmd.isSigned(column) ? new LongReader() : new ObjectReader();
+        case Types.INTEGER:
+        case Types.SMALLINT:
+        case Types.TINYINT:
+            return new LongReader();
+        case Types.FLOAT:
+        case Types.DOUBLE:
+            return new DoubleReader();
+        case Types.REAL:
+            return new FloatReader();
+        case Types.DECIMAL:
+        case Types.NUMERIC:
+            return new DecimalReader();
+        case Types.CHAR:
+        case Types.VARCHAR:
+        case Types.LONGVARCHAR:
+        case Types.NCHAR:
+        case Types.NVARCHAR:
+        case Types.LONGNVARCHAR:
+            return new StringReader();
+        case Types.DATE:
+            return new DateReader();
+        case Types.TIME:
+            return new TimeReader();
+        case Types.TIMESTAMP:
+            return new TimestampReader();
+        case Types.CLOB:
+        case Types.NCLOB:
+            return new ClobReader();
+        case Types.BLOB:
+            return new BlobReader();
+        default:
+            return new ObjectReader();
+        }
+    }
+
+    /**
+     * Reads integers with getLong().
+     */
+    private static class LongReader extends ColumnReader {
+        /** The lexical form of the current value. */
+        private StringBuilder buf = new StringBuilder(20);
+
+        @Override
+        Object read(ResultSet rs, int column) throws SQLException {
+            long v = rs.getLong(column);
+            if (v == 0 && rs.wasNull()) {
+                return null;
+            }
+            buf.setLength(0);
+            return buf.append(v);
+        }
+    }
+
+    /**
+     * Reads double precision floating point numbers with getDouble().
+     */
+    private static class DoubleReader extends ColumnReader {
+        /** The lexical form of the current value. */
+        private StringBuilder buf = new StringBuilder(24);
+
+        @Override
+        Object read(ResultSet rs, int column) throws SQLException {
+            double v = rs.getDouble(column);
+            if (v == 0 && rs.wasNull()) {
+                return null;
+            }
+            buf.setLength(0);
+            return buf.append(v);
+        }
+    }
+
+    /**
+     * Reads single precision floating point numbers with getFloat().
+     */
+    private static class FloatReader extends ColumnReader {
+        /** The lexical form of the current value. */
+        private StringBuilder buf = new StringBuilder(16);
+
+        @Override
+        Object read(ResultSet rs, int column) throws SQLException {
+            float v = rs.getFloat(column);
+            if (v == 0 && rs.wasNull()) {
+                return null;
+            }
+            buf.setLength(0);
+            return buf.append(v);
+        }
+    }
+
+    /**
+     * Reads decimals with getBigDecimal().
+     */
+    private static class DecimalReader extends ColumnReader {
+        @Override
+        Object read(ResultSet rs, int column) throws SQLException {
+            java.math.BigDecimal v = rs.getBigDecimal(column);
+            return v == null ? null : v.toString();
+        }
+    }
+
+    /**
+     * Reads text with getString().
+     */
+    private static class StringReader extends ColumnReader {
+        @Override
+        Object read(ResultSet rs, int column) throws SQLException {
+            return rs.getString(column);
+        }
+    }
+
+    /**
+     * Reads dates with getDate().
+     */
+    private static class DateReader extends ColumnReader {
+        @Override
+        Object read(ResultSet rs, int column) throws SQLException {
+            return rs.getDate(column);
+        }
+    }
+
+    /**
+     * Reads times with getTime().
+     */
+    private static class TimeReader extends ColumnReader {
+        @Override
+        Object read(ResultSet rs, int column) throws SQLException {
+            return rs.getTime(column);
+        }
+    }
+
+    /**
+     * Reads timestamps with getTimestamp().
+     */
+    private static class TimestampReader extends ColumnReader {
+        @Override
+        Object read(ResultSet rs, int column) throws SQLException {
+            return rs.getTimestamp(column);
+        }
+    }
+
+    /**
+     * Reads CLOBs with getClob(). The writer streams the text.
+     */
+    private static class ClobReader extends ColumnReader {
+        @Override
+        Object read(ResultSet rs, int column) throws SQLException {
+            return rs.getClob(column);
+        }
+    }
+
+    /**
+     * Reads BLOBs with getBlob(). The writer streams the bytes.
+     */
+    private static class BlobReader extends ColumnReader {
+        @Override
+        Object read(ResultSet rs, int column) throws SQLException {
+            return rs.getBlob(column);
+        }
+    }
+
+    /**
+     * Reads anything else with getObject(). The value is formatted by
+     * {@link Datatypes#getFormattedValue(Object)}.
+     */
+    private static class ObjectReader extends ColumnReader {
+        @Override
+        Object read(ResultSet rs, int column) throws SQLException {
+            return rs.getObject(column);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is RDFExport 1.0
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev or Zero Technologies are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Søren Roug, EEA
+ */
+package eionet.rdfexport;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A fixed set of database connections shared by the threads of a parallel
+ * export. The connections are opened by the caller and handed to the pool,
+ * which only lends them out one at a time.
+ */
+public class ConnectionPool {
+
+    /** Connections not currently lent out. */
+    private BlockingQueue<Connection> idle = new LinkedBlockingQueue<Connection>();
+
+    /** All connections added to the pool. */
+    private List<Connection> connections = new ArrayList<Connection>();
+
+    /**
+     * Add a connection to the pool. The pool takes ownership and closes it
+     * in {@link #close()}.
+     *
+     * @param con
+     *            - an open database connection
+     */
+    public synchronized void add(Connection con) {
+        connections.add(con);
+        idle.add(con);
+    }
+
+    /**
+     * Number of connections in the pool. This is also the number of
+     * queries that can run at the same time.
+     *
+     * @return the size of the pool
+     */
+    public synchronized int size() {
+        return connections.size();
+    }
+
+    /**
+     * Borrow a connection. Blocks until one is available.
+     *
+     * @return a connection
+     * @throws SQLException
+     *             - if the thread is interrupted while waiting
+     */
+    public Connection acquire() throws SQLException {
+        try {
+            return idle.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+    }
+
+    /**
+     * Return a borrowed connection to the pool.
+     *
+     * @param con
+     *            - the connection obtained from {@link #acquire()}
+     */
+    public void release(Connection con) {
+        if (con != null) {
+            idle.add(con);
+        }
+    }
+
+    /**
+     * Close all connections in the pool.
+     */
+    public synchronized void close() {
+        for (Connection con : connections) {
+            try {
+                con.close();
+            } catch (SQLException e) {
+                // Ignore closing exceptions
+            }
+        }
+        connections.clear();
+        idle.clear();
+    }
+}
@@ -21,16 +21,24 @@
  */
 package eionet.rdfexport;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.sql.Blob;
 import java.sql.Clob;
 import java.sql.SQLException;
 import java.sql.Time;
 import java.sql.Timestamp;
 import java.sql.Types;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
 
 
 /**
@@ -38,17 +46,21 @@ import java.util.HashMap;
  */
 public final class Datatypes {
 
-    /** Format of xsd:date value. */
-    private static final String DATE_FORMAT = "yyyy-MM-dd";
+    /** Longest output of {@link #formatTemporal(Object, byte[], int)}. */
+    static final int MAX_TEMPORAL_LENGTH = 32;
 
-    /** Format of xsd:dateTime value. */
-    private static final String DATE_TIME_FORMAT = "yyyy-MM-dd'T'HH:mm:ss";
+    /** Milliseconds in a day. */
+    private static final long MILLIS_PER_DAY = 86400000L;
 
-    /** Date format. */
-    private static SimpleDateFormat dateFormat = new SimpleDateFormat(DATE_FORMAT);
+    /** 1582-10-15, the first day of the Gregorian calendar, in days since 1970. */
+    private static final long GREGORIAN_CUTOVER_DAY = -141427L;
 
-    /** Date-time format. */
-    private static SimpleDateFormat dateTimeFormat = new SimpleDateFormat(DATE_TIME_FORMAT);
+    /**
+     * The time zone the dates are shown in. The JDBC drivers make the
+     * java.sql values in the default time zone of the JVM. Looked up once
+     * as TimeZone.getDefault() makes a copy on every call.
+     */
+    private static final TimeZone TIME_ZONE = TimeZone.getDefault();
 
     /** Known java types. */
     private static HashMap<String, Integer> knownTypes = new HashMap<String, Integer>();
@@ -136,17 +148,33 @@ public final class Datatypes {
      * @return the SQL type as a String
      */
     public static String getRDFType(Integer sqlType) {
-        return defaultMapping.get(sqlType);
+        synchronized (defaultMapping) {
+            return defaultMapping.get(sqlType);
+        }
+    }
+
+    /**
+     * A copy of the mappings from SQL types to RDF types.
+     *
+     * @return the RDF types by SQL type
+     */
+    static Map<Integer, String> getRDFTypes() {
+        synchronized (defaultMapping) {
+            return new HashMap<Integer, String>(defaultMapping);
+        }
     }
 
     /**
-     * Update the rdf type map.
+     * Update the rdf type map. Only export plans compiled afterwards use
+     * the new mapping.
      *
      * @param sqlType - The type name
      * @param rdfType - The updated RDF type
      */
     public static void setRDFType(Integer sqlType, String rdfType) {
-        defaultMapping.put(sqlType, rdfType);
+        synchronized (defaultMapping) {
+            defaultMapping.put(sqlType, rdfType);
+        }
     }
 
     /**
@@ -159,30 +187,20 @@ public final class Datatypes {
      * @return the formatted string
      */
     public static String getFormattedValue(Object value) throws SQLException {
-        if (value instanceof java.sql.Date) {
-            Date sqlDate = (java.sql.Date) value;
-            return dateFormat.format(new Date(sqlDate.getTime()));
-        }
-
-        if (value instanceof Time) {
-            Time sqlDate = (Time) value;
-            return dateTimeFormat.format(new Date(sqlDate.getTime()));
-        }
-
-        if (value instanceof Timestamp) {
-            Timestamp sqlDate = (Timestamp) value;
-            return dateTimeFormat.format(new Date(sqlDate.getTime()));
+        if (isTemporal(value)) {
+            byte[] buf = new byte[MAX_TEMPORAL_LENGTH];
+            int len = formatTemporal(value, buf, 0);
+            return new String(buf, 0, len, StandardCharsets.US_ASCII);
         }
 
         if (value instanceof Clob) {
-            Clob tValue = (Clob) value;
-            return tValue.getSubString(1, (int) tValue.length());
+            return readFully(((Clob) value).getCharacterStream(), "CLOB");
         }
 
         if (value instanceof Blob) {
             // There is no guarantee that we'll get text data from a BLOB.
             Blob tValue = (Blob) value;
-            return new String(tValue.getBytes(1, (int) tValue.length()), Charset.forName("UTF-8"));
+            return readFully(new InputStreamReader(tValue.getBinaryStream(), StandardCharsets.UTF_8), "BLOB");
         }
 
         if (value instanceof byte[]) {
@@ -192,4 +210,188 @@ public final class Datatypes {
         return value.toString();
 
     }
+
+    /**
+     * Read all text from a LOB stream.
+     *
+     * @param reader - the stream
+     * @param type - CLOB or BLOB
+     * @return the text
+     * @throws SQLException
+     *             - if the stream can't be read
+     */
+    private static String readFully(Reader reader, String type) throws SQLException {
+        ExportEvents.Lob event = new ExportEvents.Lob(type);
+        StringBuilder buf = new StringBuilder();
+        char[] chars = new char[8192];
+        try {
+            try {
+                int n;
+                while ((n = reader.read(chars)) != -1) {
+                    buf.append(chars, 0, n);
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            throw new SQLException("Failed to read LOB", e);
+        }
+        event.done(buf.length());
+        return buf.toString();
+    }
+
+    /**
+     * Check if a value is binary data from the database.
+     *
+     * @param value - value from the database
+     * @return true for a BLOB or a byte array
+     */
+    static boolean isBinary(Object value) {
+        return value instanceof Blob || value instanceof byte[];
+    }
+
+    /**
+     * Get a stream of the bytes of a binary value.
+     *
+     * @param value - a BLOB or a byte array
+     * @return the stream
+     * @throws SQLException
+     *             - if the SQL database is not available
+     */
+    static InputStream getBinaryStream(Object value) throws SQLException {
+        if (value instanceof Blob) {
+            return ((Blob) value).getBinaryStream();
+        }
+        return new ByteArrayInputStream((byte[]) value);
+    }
+
+    /**
+     * Check if a value is a date, time or timestamp from the database.
+     *
+     * @param value - value from the database
+     * @return true if {@link #formatTemporal(Object, byte[], int)} can format it
+     */
+    static boolean isTemporal(Object value) {
+        return value instanceof java.sql.Date || value instanceof Time || value instanceof Timestamp;
+    }
+
+    /**
+     * Write a date as xsd:date, a time as xsd:time and a timestamp as
+     * xsd:dateTime without fractions of a second. The digits are written
+     * as ASCII straight into the buffer, so nothing is allocated. Safe to
+     * call from several threads.
+     *
+     * @param value - a java.sql.Date, Time or Timestamp
+     * @param buf - where to write. Must have room for MAX_TEMPORAL_LENGTH bytes.
+     * @param off - where to start writing
+     * @return the position after the last byte written
+     */
+    static int formatTemporal(Object value, byte[] buf, int off) {
+        long millis = ((java.util.Date) value).getTime();
+        long local = millis + TIME_ZONE.getOffset(millis);
+        long days = Math.floorDiv(local, MILLIS_PER_DAY);
+        int secondOfDay = (int) (Math.floorMod(local, MILLIS_PER_DAY) / 1000);
+        if (!(value instanceof Time)) {
+            if (days < GREGORIAN_CUTOVER_DAY) {
+                off = formatJulianDate(days, buf, off);
+            } else {
+                off = formatDate(days, buf, off);
+            }
+        }
+        if (value instanceof Timestamp) {
+            buf[off++] = 'T';
+        }
+        if (!(value instanceof java.sql.Date)) {
+            off = formatDigits(secondOfDay / 3600, 2, buf, off);
+            buf[off++] = ':';
+            off = formatDigits(secondOfDay / 60 % 60, 2, buf, off);
+            buf[off++] = ':';
+            off = formatDigits(secondOfDay % 60, 2, buf, off);
+        }
+        return off;
+    }
+
+    /**
+     * Write a day as yyyy-MM-dd in the proleptic Gregorian calendar.
+     * See Howard Hinnant's civil_from_days algorithm.
+     *
+     * @param epochDay - days since 1970-01-01
+     * @param buf - where to write
+     * @param off - where to start writing
+     * @return the position after the last byte written
+     */
+    private static int formatDate(long epochDay, byte[] buf, int off) {
+        long z = epochDay + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < 0) {
+            buf[off++] = '-';
+            year = -year;
+        }
+        off = formatDigits(year, 4, buf, off);
+        buf[off++] = '-';
+        off = formatDigits(month, 2, buf, off);
+        buf[off++] = '-';
+        return formatDigits(day, 2, buf, off);
+    }
+
+    /**
+     * Write a day before the Gregorian calendar as yyyy-MM-dd in the Julian
+     * calendar, like java.sql.Date.valueOf() reads it. Rare, so the calendar
+     * is allowed to allocate.
+     *
+     * @param epochDay - days since 1970-01-01
+     * @param buf - where to write
+     * @param off - where to start writing
+     * @return the position after the last byte written
+     */
+    private static int formatJulianDate(long epochDay, byte[] buf, int off) {
+        GregorianCalendar cal = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+        cal.setTimeInMillis(epochDay * MILLIS_PER_DAY);
+        long year = cal.get(Calendar.YEAR);
+        if (cal.get(Calendar.ERA) == GregorianCalendar.BC) {
+            // Astronomical numbering: 1 BC is year 0.
+            year = 1 - year;
+        }
+        if (year < 0) {
+            buf[off++] = '-';
+            year = -year;
+        }
+        off = formatDigits(year, 4, buf, off);
+        buf[off++] = '-';
+        off = formatDigits(cal.get(Calendar.MONTH) + 1, 2, buf, off);
+        buf[off++] = '-';
+        return formatDigits(cal.get(Calendar.DAY_OF_MONTH), 2, buf, off);
+    }
+
+    /**
+     * Write a positive number with leading zeros.
+     *
+     * @param n - the number
+     * @param width - the least number of digits
+     * @param buf - where to write
+     * @param off - where to start writing
+     * @return the position after the last byte written
+     */
+    private static int formatDigits(long n, int width, byte[] buf, int off) {
+        int digits = 1;
+        for (long rest = n / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        if (digits < width) {
+            digits = width;
+        }
+        int end = off + digits;
+        for (int i = end - 1; i >= off; i--) {
+            buf[i] = (byte) ('0' + n % 10);
+            n /= 10;
+        }
+        return end;
+    }
 }
@@ -22,13 +22,20 @@
 
 package eionet.rdfexport;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
@@ -39,7 +46,6 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Scanner;
-import java.util.zip.GZIPOutputStream;
 
 /**
  * RDF export main class. Executed from command line.
@@ -117,6 +123,39 @@ public final class Execute {
     /** The primary-key value of the row to export, if only one row from one table is to be exported. */
     private String rowId = null;
 
+    /** File with the primary-key values of the rows to export, one per line. "-" means standard input. */
+    private String rowIdFile = null;
+
+    /** The output format: xml, ttl, nt, nq, jsonld or ndjsonld. Overrides the outputformat property. */
+    private String outputFormat = null;
+
+    /** File with the watermarks of an incremental export. Null if the export isn't incremental. */
+    private String watermarkFilePath = null;
+
+    /** File with the digests of the resources of the previous run. Null if all resources are written. */
+    private String digestIndexPath = null;
+
+    /** File to write the offsets of the gzip members to. Null if no index is wanted. */
+    private String gzipIndexPath = null;
+
+    /** Other formats to write in the same scan, as format:file pairs separated by commas. */
+    private String extraOutputs = null;
+
+    /** Write the output as shards in the -o directory: "table", a number of resources, or bytes with K, M or G. */
+    private String shardLimit = null;
+
+    /** Keep a checkpoint journal next to the output file, and continue from it if an export was stopped. */
+    private boolean resume = false;
+
+    /** Number of tables to export at the same time. Each thread uses its own database connection. */
+    private int threads = 1;
+
+    /** Port to serve the resources over HTTP on instead of exporting. Null to export. */
+    private String serverPort = null;
+
+    /** File to write the metrics of the export to as JSON. "-" means standard error. Null if no metrics are kept. */
+    private String metricsFilePath = null;
+
     /** The map of properties, based on which the RDF generation will be executed or the output properties file generated. */
     private Properties props = new Properties();
 
@@ -171,6 +210,26 @@ public final class Execute {
             props.setProperty("baseurl", baseUri);
         }
 
+        if (outputFormat != null) {
+            props.setProperty("outputformat", outputFormat);
+        }
+        if (resume && "jsonld".equals(props.getProperty("outputformat"))) {
+            throw new IllegalArgumentException("A JSON-LD export can't be resumed");
+        }
+        if (baseUri == null || baseUri.isEmpty()) {
+            List<String> formats = new ArrayList<String>();
+            formats.add(props.getProperty("outputformat"));
+            if (extraOutputs != null) {
+                for (String output : extraOutputs.split(",")) {
+                    formats.add(output.substring(0, Math.max(output.indexOf(':'), 0)));
+                }
+            }
+            if (formats.contains("nt") || formats.contains("nq")) {
+                throw new IllegalArgumentException("N-Triples and N-Quads need absolute IRIs;"
+                        + " give the baseurl property or -B base_uri");
+            }
+        }
+
         if (vocabularyUri == null) {
             // Get the vocabulary URI from the loaded input properties. If it's null or empty, then generate it on the basis of the
             // given base URI. If the latter is not given either, just set it to "#properties/".
@@ -200,15 +259,16 @@ public final class Execute {
      */
     private void parseArguments(String[] args) {
 
-        OptionParser op = new OptionParser(args, "xclzpd:i:m:o:f:B:D:J:U:P:T:V:");
+        OptionParser op = new OptionParser(args, "xclzprd:i:k:m:o:f:s:t:w:A:B:D:F:G:I:J:M:U:P:S:T:V:");
         selfExplore = op.getOptionFlag("x");
         if (selfExplore) {
             interActiveMode = op.getOptionFlag("c");
         }
         outputList = op.getOptionFlag("l");
         zipOutput = op.getOptionFlag("z");
+        resume = op.getOptionFlag("r");
         outputProps = op.getOptionFlag("p");
-        baseUri = op.getOptionArgument("b");
+        baseUri = op.getOptionArgument("B");
         templatePropsFilePath = op.getOptionArgument("T");
         mdbFilePath = op.getOptionArgument("m");
         outputFilePath = op.getOptionArgument("o");
@@ -218,11 +278,43 @@ public final class Execute {
         dbPropsFilePath = op.getOptionArgument("d");
         inputPropsFilePath = op.getOptionArgument("f");
         rowId = op.getOptionArgument("i");
+        rowIdFile = op.getOptionArgument("I");
+        watermarkFilePath = op.getOptionArgument("w");
+        digestIndexPath = op.getOptionArgument("k");
+        shardLimit = op.getOptionArgument("s");
+        gzipIndexPath = op.getOptionArgument("G");
+        extraOutputs = op.getOptionArgument("A");
         jdbcUrl = op.getOptionArgument("J");
         jdbcDriver = op.getOptionArgument("D");
         userName = op.getOptionArgument("U");
         password = op.getOptionArgument("P");
         vocabularyUri = op.getOptionArgument("V");
+        outputFormat = op.getOptionArgument("F");
+        serverPort = op.getOptionArgument("S");
+        metricsFilePath = op.getOptionArgument("M");
+        String threadsArg = op.getOptionArgument("t");
+        if (threadsArg != null) {
+            threads = Integer.parseInt(threadsArg);
+            if (threads < 1) {
+                throw new IllegalArgumentException("The number of threads must be at least 1");
+            }
+        }
+
+        if (resume && (outputFilePath == null || outputFilePath.isEmpty() || zipOutput)) {
+            throw new IllegalArgumentException("Only an uncompressed output file can be resumed");
+        }
+        if (shardLimit != null && (outputFilePath == null || outputFilePath.isEmpty() || resume)) {
+            throw new IllegalArgumentException("Sharded output needs a directory for -o and can't be resumed");
+        }
+        if (extraOutputs != null && (threads > 1 || digestIndexPath != null || shardLimit != null || resume)) {
+            throw new IllegalArgumentException("Other formats can't be written together with -t, -k, -s or -r");
+        }
+        if (gzipIndexPath != null && (!zipOutput || shardLimit != null)) {
+            throw new IllegalArgumentException("A gzip index can only be written for a zipped output");
+        }
+        if (resume && digestIndexPath != null) {
+            throw new IllegalArgumentException("An export with a digest index can't be resumed");
+        }
 
         unusedArguments = op.getUnusedArguments();
     }
@@ -240,15 +332,32 @@ public final class Execute {
      */
     private void run() throws SQLException, IOException {
 
+        if (serverPort != null) {
+            serve();
+            return;
+        }
+
         Connection conn = null;
+        ConnectionPool pool = null;
+        Checkpoint checkpoint = null;
+        ExportMetrics metrics = null;
         OutputStream outputStream = System.out;
+        List<OutputStream> extras = new ArrayList<OutputStream>();
         try {
-            if (outputFilePath != null && !outputFilePath.isEmpty()) {
-                outputStream = new FileOutputStream(outputFilePath);
+            // With sharded output, -o is a directory and the shards are opened by the exporter.
+            if (outputFilePath != null && !outputFilePath.isEmpty() && shardLimit == null) {
+                // The journal costs a sync per table, so it is only kept when asked for.
+                if (!resume || outputList || outputProps
+                        || "jsonld".equals(props.getProperty("outputformat"))) {
+                    outputStream = new FileOutputStream(outputFilePath);
+                } else {
+                    checkpoint = new Checkpoint(new File(outputFilePath), resume);
+                    outputStream = checkpoint.getOutput();
+                }
             }
 
-            if (zipOutput) {
-                outputStream = new GZIPOutputStream(outputStream);
+            if (zipOutput && shardLimit == null) {
+                outputStream = new ParallelGZIPOutputStream(outputStream, Runtime.getRuntime().availableProcessors());
             }
 
             conn = getConnection();
@@ -287,25 +396,144 @@ public final class Execute {
             }
 
             GenerateRDF exporter = new GenerateRDF(outputStream, conn, props);
+            if (metricsFilePath != null) {
+                metrics = new ExportMetrics();
+                metrics.register();
+                exporter.setMetrics(metrics);
+            }
+            if (watermarkFilePath != null) {
+                Properties watermarks = new Properties();
+                if (new File(watermarkFilePath).exists()) {
+                    Execute.loadProperties(watermarks, watermarkFilePath);
+                }
+                exporter.setWatermarks(watermarks);
+            }
+            if (digestIndexPath != null) {
+                exporter.setDigestIndex(new File(digestIndexPath));
+            }
+            if (checkpoint != null) {
+                exporter.setCheckpoint(checkpoint);
+            }
+            if (extraOutputs != null) {
+                for (String output : extraOutputs.split(",")) {
+                    int colon = output.indexOf(':');
+                    if (colon < 1) {
+                        throw new IllegalArgumentException("Expected format:file for -A, got " + output);
+                    }
+                    OutputStream extra = new FileOutputStream(output.substring(colon + 1));
+                    if (zipOutput) {
+                        extra = new ParallelGZIPOutputStream(extra, Runtime.getRuntime().availableProcessors());
+                    }
+                    extras.add(extra);
+                    exporter.addOutput(extra, output.substring(0, colon));
+                }
+            }
+            ShardedOutput shards = null;
+            if (shardLimit != null) {
+                shards = new ShardedOutput(new File(outputFilePath), props.getProperty("outputformat", "xml"),
+                        shardLimit, zipOutput);
+                exporter.setShards(shards);
+            }
 
             String[] tablesToExport = (unusedArguments.length == 0) ? exporter.getAllTables() : unusedArguments;
 
-            for (String table : tablesToExport) {
-                exporter.exportTable(table, rowId);
+            if (rowIdFile != null) {
+                List<String> rowIds = loadIdentifiers(rowIdFile);
+                for (String table : tablesToExport) {
+                    exporter.exportTable(table, rowIds);
+                }
+            } else if (threads > 1) {
+                pool = new ConnectionPool();
+                for (int i = 0; i < threads; i++) {
+                    pool.add(openConnection());
+                }
+                exporter.exportTables(tablesToExport, rowId, pool);
+            } else {
+                for (String table : tablesToExport) {
+                    exporter.exportTable(table, rowId);
+                }
             }
 
             exporter.exportDocumentInformation();
             exporter.writeRdfFooter();
 
-            if (outputStream instanceof GZIPOutputStream) {
-                ((GZIPOutputStream) outputStream).finish();
+            if (outputStream instanceof ParallelGZIPOutputStream) {
+                ((ParallelGZIPOutputStream) outputStream).finish();
+                if (gzipIndexPath != null) {
+                    ((ParallelGZIPOutputStream) outputStream).writeIndex(new File(gzipIndexPath));
+                }
+            }
+            outputStream.flush();
+            for (OutputStream extra : extras) {
+                extra.close();
+            }
+            if (shards != null) {
+                shards.writeManifest();
+            }
+            if (watermarkFilePath != null) {
+                Execute.saveWatermarks(exporter.getWatermarks(), watermarkFilePath);
+            }
+            if (digestIndexPath != null) {
+                // Only a run of all rows of all tables can tell what has been deleted.
+                boolean complete = unusedArguments.length == 0 && rowId == null && rowIdFile == null
+                        && watermarkFilePath == null;
+                exporter.commitDigests(new File(digestIndexPath + ".deleted"), complete);
+            }
+            exporter.close();
+            if (checkpoint != null) {
+                checkpoint.finish();
             }
         } finally {
+            if (metrics != null) {
+                metrics.unregister();
+                Execute.saveMetrics(metrics, metricsFilePath);
+            }
+            if (checkpoint != null) {
+                checkpoint.close();
+            }
             Execute.close(outputStream);
+            for (OutputStream extra : extras) {
+                Execute.close(extra);
+            }
             Execute.close(conn);
+            if (pool != null) {
+                pool.close();
+            }
         }
     }
 
+    /**
+     * Start serving the tables over HTTP on one connection per thread. The
+     * server runs until the program is stopped.
+     *
+     * @throws SQLException
+     *             - if the SQL database is not available
+     * @throws IOException
+     *             - if the port can't be bound
+     */
+    private void serve() throws SQLException, IOException {
+        final ConnectionPool pool = new ConnectionPool();
+        ResourceServer server = null;
+        try {
+            for (int i = 0; i < threads; i++) {
+                pool.add(openConnection());
+            }
+            server = new ResourceServer(new InetSocketAddress(Integer.parseInt(serverPort)), new ExportPlan(props),
+                    pool);
+        } finally {
+            if (server == null) {
+                pool.close();
+            }
+        }
+        final ResourceServer running = server;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            running.stop();
+            pool.close();
+        }));
+        running.start();
+        System.err.println("Serving on port " + running.getPort());
+    }
+
     /**
      * Ask whether discovered foreign key should be used.
      * @param dbExplorer - object holding the explored tables.
@@ -356,6 +584,36 @@ public final class Execute {
         }
     }
 
+    /**
+     * Read the identifiers of the rows to export. Each line holds one
+     * identifier. Blank lines are skipped.
+     *
+     * @param filePath
+     *         - the file to read or "-" for standard input
+     * @return the identifiers in the order of the file
+     * @throws IOException
+     *             - if the file can't be read
+     */
+    private static List<String> loadIdentifiers(String filePath) throws IOException {
+        InputStream inputStream = "-".equals(filePath) ? System.in : new FileInputStream(filePath);
+        List<String> identifiers = new ArrayList<String>();
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty()) {
+                    identifiers.add(line);
+                }
+            }
+        } finally {
+            if (inputStream != System.in) {
+                Execute.close(inputStream);
+            }
+        }
+        return identifiers;
+    }
+
     /**
      * Utility method that returns a connection on the database given on the command line or in the properties file.
      *
@@ -412,6 +670,19 @@ public final class Execute {
             throw new IllegalArgumentException("Failed to detect database from command line or properties file!");
         }
 
+        return openConnection();
+    }
+
+    /**
+     * Opens a new connection on the database resolved by {@link #getConnection()}.
+     *
+     * @return
+     *             - the connection
+     * @throws SQLException
+     *             - if the SQL database is not available
+     */
+    private Connection openConnection() throws SQLException {
+        String driver = props.getProperty("db.driver");
         try {
             Class.forName(driver);
             Connection con = DriverManager.getConnection(jdbcUrl, userName, password);
@@ -423,6 +694,61 @@ public final class Execute {
         }
     }
 
+    /**
+     * Store the watermarks of an incremental export. They are written to a
+     * temporary file that then replaces the old file, so a failed run never
+     * leaves a half written file behind.
+     *
+     * @param watermarks
+     *         - the watermarks
+     * @param filePath
+     *         - the file to write
+     * @throws IOException if the file can't be written
+     */
+    private static void saveWatermarks(Properties watermarks, String filePath) throws IOException {
+        File file = new File(filePath).getAbsoluteFile();
+        File tempFile = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        try {
+            SortedProperties props = new SortedProperties();
+            props.putAll(watermarks);
+            OutputStream out = new FileOutputStream(tempFile);
+            try {
+                props.store(out, "Watermarks of incremental export");
+            } finally {
+                out.close();
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Write the metrics of the export as JSON. They are also written when
+     * the export fails, to show how far it got.
+     *
+     * @param metrics
+     *         - the metrics
+     * @param filePath
+     *         - the file to write, or "-" for standard error
+     * @throws IOException
+     *             - if the file can't be written
+     */
+    private static void saveMetrics(ExportMetrics metrics, String filePath) throws IOException {
+        if ("-".equals(filePath)) {
+            System.err.println(metrics.toJson());
+            return;
+        }
+        Writer out = new OutputStreamWriter(new FileOutputStream(filePath), StandardCharsets.UTF_8);
+        try {
+            out.write(metrics.toJson());
+            out.write('\n');
+        } finally {
+            out.close();
+        }
+    }
+
     /**
      * Writes the given properties into the given output, but first remove
      * irrelevant keys.
@@ -583,7 +909,11 @@ public final class Execute {
                 + " If -T and -p have been specified, then -f is ignored and no RDF output generated."
                 + " Instead, the output_properties_file will be generated and the program exits.");
 
-        System.out.println(" -z                          The RDF output file will be zipped if this argument is present.");
+        System.out.println(" -z                          The RDF output file will be zipped if this argument is present."
+                + " The compression runs on all processors.");
+        System.out.println(" -G index_file               With -z, write the offsets of the gzip members to this file"
+                + " in the layout of .gzi, so readers can seek. The members are plain gzip, not BGZF,"
+                + " so bgzip and htslib can't use the index.");
 
         System.out.println(" -m                          Path of the MS Access file to query from."
                 + " Overrides the one given in input_properties_file or template_properties_file.");
@@ -594,7 +924,32 @@ public final class Execute {
                 + " input_properties_file or template_properties_file.");
         System.out.println(" -V vocabulary_uri           Vocabulary URI which overrides the one in the"
                 + " input_properties_file or template_properties_file.");
+        System.out.println(" -F format                   Output format: xml (default), ttl, nt (N-Triples), nq (N-Quads),"
+                + " jsonld or ndjsonld (one JSON-LD node per line)."
+                + " Overrides the outputformat property. nt and nq need a base URI.");
         System.out.println(" -i rowId                    Only records with this primary key value will be exported.");
+        System.out.println(" -I file                     Only records with the primary key values in this file, one per line,"
+                + " will be exported. Use - to read them from standard input.");
+        System.out.println(" -w file                     Incremental export. Only rows changed since the run that wrote"
+                + " the watermarks in this file are exported, and the file is updated when the export completes.");
+        System.out.println(" -k index_file               Only write resources that are new or have changed since the run"
+                + " that wrote this index. Subjects that have gone are written to index_file.deleted, but only when"
+                + " all rows of all tables are exported.");
+        System.out.println(" -A format:file,...          Also write the export in these formats to these files."
+                + " The database is only read once.");
+        System.out.println(" -s limit                    Write one document per table to the -o directory, with a manifest."
+                + " Limit is 'table', or the number of resources or bytes (with K, M or G) before a new document is started.");
+        System.out.println(" -r                          Make the export to the -o file resumable, and resume it if an"
+                + " earlier run with -r was stopped. The tables that were finished are kept and the rest are appended.");
+        System.out.println(" -t threads                  Export this many tables at the same time, each on its own"
+                + " database connection. The output is the same as for a sequential export.");
+        System.out.println(" -S port                     Serve the tables over HTTP on this port instead of exporting."
+                + " GET /table/id gives a record and /table the whole table, as RDF/XML, Turtle, N-Triples or JSON-LD"
+                + " by the Accept header. N-Triples is only offered with a base URI."
+                + " Use -t for the number of connections.");
+        System.out.println(" -M file                     Write the rows, resources, triples, bytes and time of each table"
+                + " and query to this file as JSON when the export ends. Use - for standard error. While the export"
+                + " runs, the same counters are in JMX as " + ExportMetrics.OBJECT_NAME + ".");
         System.out.println(" -h or -?                    Show this help");
         System.out.println("Unrecognized arguments will be treated as names of tables to export."
             + " If no arguments are found, all tables will be exported.");
@@ -0,0 +1,167 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is RDFExport 1.0
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev or Zero Technologies are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Søren Roug, EEA
+ */
+package eionet.rdfexport;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exported documents kept in memory, so that a document asked for again
+ * doesn't go to the database. The cache holds a limited number of bytes,
+ * and the documents used least recently are dropped first. A document is
+ * also dropped when it is older than the time to live.
+ */
+class ExportCache {
+
+    /**
+     * A document in the cache.
+     */
+    static class Entry {
+
+        /** The document. */
+        final byte[] body;
+
+        /** The entity tag of the document, in quotes. */
+        final String etag;
+
+        /** Value of {@link System#nanoTime()} when the document expires. */
+        private final long expires;
+
+        /**
+         * Constructor.
+         *
+         * @param body
+         *            - the document
+         * @param expires
+         *            - when the document expires
+         */
+        private Entry(byte[] body, long expires) {
+            this.body = body;
+            this.etag = "\"" + Long.toHexString(ResourceDigests.hash(body, 0, body.length)) + "\"";
+            this.expires = expires;
+        }
+    }
+
+    /** The documents, the one used least recently first. */
+    private LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    /** Number of bytes the documents can take. */
+    private long maxBytes;
+
+    /** Time to live in nanoseconds. */
+    private long ttl;
+
+    /** Number of bytes the documents take. */
+    private long bytes;
+
+    /**
+     * Constructor.
+     *
+     * @param maxBytes
+     *            - number of bytes the documents can take. A document
+     *            larger than this is never kept.
+     * @param ttlSeconds
+     *            - number of seconds a document is kept
+     */
+    ExportCache(long maxBytes, long ttlSeconds) {
+        if (maxBytes < 0 || ttlSeconds < 0) {
+            throw new IllegalArgumentException("The cache size and time to live can't be negative");
+        }
+        this.maxBytes = maxBytes;
+        this.ttl = TimeUnit.SECONDS.toNanos(ttlSeconds);
+    }
+
+    /**
+     * Look up a document.
+     *
+     * @param key
+     *            - the key the document was put with
+     * @return the document, or null if it isn't in the cache or has expired
+     */
+    synchronized Entry get(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null && System.nanoTime() - entry.expires >= 0) {
+            remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Put a document in the cache. The documents used least recently are
+     * dropped until it fits.
+     *
+     * @param key
+     *            - the key to find the document by
+     * @param body
+     *            - the document
+     * @return the entry of the document, also when it was too large to keep
+     */
+    synchronized Entry put(String key, byte[] body) {
+        Entry entry = new Entry(body, System.nanoTime() + ttl);
+        remove(key);
+        if (body.length > maxBytes || ttl == 0) {
+            return entry;
+        }
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (bytes + body.length > maxBytes) {
+            bytes -= eldest.next().getValue().body.length;
+            eldest.remove();
+        }
+        entries.put(key, entry);
+        bytes += body.length;
+        return entry;
+    }
+
+    /**
+     * Drop a document.
+     *
+     * @param key
+     *            - the key the document was put with
+     */
+    private void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            bytes -= entry.body.length;
+        }
+    }
+
+    /**
+     * Number of documents in the cache, including expired ones not yet
+     * dropped.
+     *
+     * @return the count
+     */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Number of bytes the documents in the cache take.
+     *
+     * @return the count
+     */
+    synchronized long getBytes() {
+        return bytes;
+    }
+}
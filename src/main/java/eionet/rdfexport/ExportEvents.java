@@ -0,0 +1,293 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is RDFExport 1.0
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev or Zero Technologies are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Søren Roug, EEA
+ */
+package eionet.rdfexport;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Events for Java Flight Recorder, so a recording shows which query of
+ * which table an export was busy with. When nothing is recorded the events
+ * are never committed, and the JIT removes them.
+ */
+final class ExportEvents {
+
+    /** Category of the events in JDK Mission Control. */
+    private static final String CATEGORY = "RDF Export";
+
+    /**
+     * Constructor. Only the events are used.
+     */
+    private ExportEvents() {
+    }
+
+    /**
+     * A query from running it to the last row. It also makes the
+     * {@link FetchBatch} events when the rows are read directly from the
+     * result set.
+     */
+    @Name("eionet.rdfexport.Query")
+    @Label("Query")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class Query extends Event {
+
+        /** Name of table in properties file. */
+        @Label("Table")
+        String table;
+
+        /** Name of the query in properties file. */
+        @Label("Query")
+        String query;
+
+        /** Number of rows read. */
+        @Label("Rows")
+        long rows;
+
+        /** Time from running the query to having the first row. */
+        @Label("First Row")
+        @Description("Time from running the query to having the first row")
+        @Timespan(Timespan.NANOSECONDS)
+        long firstRow;
+
+        /** When the query was run, or 0 if the event is not enabled. */
+        private long started;
+
+        /** Number of rows in a batch, or 0 if the batches are not counted here. */
+        private int fetchSize;
+
+        /** Rows left in the current batch. */
+        private int batchLeft;
+
+        /** The current batch. */
+        private FetchBatch batch;
+
+        /**
+         * Start the event.
+         *
+         * @param table
+         *            - name of table in properties file
+         * @param query
+         *            - name of the query in properties file
+         * @param fetchSize
+         *            - number of rows in a batch, or 0 if the rows are
+         *            read by a pipeline that makes its own batch events
+         */
+        Query(String table, String query, int fetchSize) {
+            this.table = table;
+            this.query = query;
+            this.fetchSize = fetchSize;
+            if (isEnabled()) {
+                started = System.nanoTime();
+            }
+            if (fetchSize > 0) {
+                batchLeft = fetchSize;
+                batch = new FetchBatch(table, query, 1);
+            }
+            begin();
+        }
+
+        /**
+         * Count the batches here after all, when the rows turn out not to be
+         * read by a pipeline. Must be called before the first row.
+         *
+         * @param size
+         *            - number of rows in a batch
+         */
+        void countBatches(int size) {
+            fetchSize = size;
+            batchLeft = size;
+            batch = new FetchBatch(table, query, 1);
+        }
+
+        /**
+         * Note that a row has been read. The time of the first is kept.
+         */
+        void rowRead() {
+            if (rows++ == 0 && started != 0) {
+                firstRow = System.nanoTime() - started;
+            }
+            if (fetchSize > 0 && --batchLeft == 0) {
+                batch.done(fetchSize);
+                batch = new FetchBatch(table, query, rows / fetchSize + 1);
+                batchLeft = fetchSize;
+            }
+        }
+
+        /**
+         * Commit the event, and the last batch, if they are recorded.
+         */
+        void done() {
+            if (fetchSize > 0 && batchLeft < fetchSize) {
+                batch.done(fetchSize - batchLeft);
+            }
+            end();
+            if (shouldCommit()) {
+                commit();
+            }
+        }
+    }
+
+    /**
+     * Rows read from the database, as many as the fetch size. When the rows
+     * are read by a pipeline, the event is the time it took to fill a
+     * batch. Otherwise it is the time from the previous batch, including
+     * writing the rows.
+     */
+    @Name("eionet.rdfexport.FetchBatch")
+    @Label("Fetch Batch")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class FetchBatch extends Event {
+
+        /** Name of table in properties file. */
+        @Label("Table")
+        String table;
+
+        /** Name of the query in properties file. */
+        @Label("Query")
+        String query;
+
+        /** Number of the batch in the query, starting at 1. */
+        @Label("Batch")
+        long batch;
+
+        /** Number of rows in the batch. */
+        @Label("Rows")
+        long rows;
+
+        /**
+         * Start the event.
+         *
+         * @param table
+         *            - name of table in properties file
+         * @param query
+         *            - name of the query in properties file
+         * @param batch
+         *            - number of the batch, starting at 1
+         */
+        FetchBatch(String table, String query, long batch) {
+            this.table = table;
+            this.query = query;
+            this.batch = batch;
+            begin();
+        }
+
+        /**
+         * Commit the event if it is recorded.
+         *
+         * @param count
+         *            - number of rows in the batch
+         */
+        void done(long count) {
+            end();
+            if (shouldCommit()) {
+                rows = count;
+                commit();
+            }
+        }
+    }
+
+    /**
+     * Bytes handed from the output buffer to the stream.
+     */
+    @Name("eionet.rdfexport.Flush")
+    @Label("Output Flush")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class Flush extends Event {
+
+        /** Number of bytes written. */
+        @Label("Bytes")
+        @DataAmount(DataAmount.BYTES)
+        long bytes;
+
+        /**
+         * Start the event.
+         */
+        Flush() {
+            begin();
+        }
+
+        /**
+         * Commit the event if it is recorded.
+         *
+         * @param count
+         *            - number of bytes written
+         */
+        void done(long count) {
+            end();
+            if (shouldCommit()) {
+                bytes = count;
+                commit();
+            }
+        }
+    }
+
+    /**
+     * A CLOB or BLOB read into memory.
+     */
+    @Name("eionet.rdfexport.Lob")
+    @Label("LOB Materialization")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class Lob extends Event {
+
+        /** CLOB or BLOB. */
+        @Label("Type")
+        String type;
+
+        /** Number of characters of a CLOB or bytes of a BLOB. */
+        @Label("Length")
+        long length;
+
+        /**
+         * Start the event.
+         *
+         * @param type
+         *            - CLOB or BLOB
+         */
+        Lob(String type) {
+            this.type = type;
+            begin();
+        }
+
+        /**
+         * Commit the event if it is recorded.
+         *
+         * @param count
+         *            - number of characters or bytes read
+         */
+        void done(long count) {
+            end();
+            if (shouldCommit()) {
+                length = count;
+                commit();
+            }
+        }
+    }
+}
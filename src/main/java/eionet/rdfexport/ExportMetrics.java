@@ -0,0 +1,237 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is RDFExport 1.0
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev or Zero Technologies are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Søren Roug, EEA
+ */
+package eionet.rdfexport;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters of an export, by table and query. Give it to
+ * {@link GenerateRDF#setMetrics(ExportMetrics)} before the export starts.
+ * The counters can be read while the export runs, through JMX after
+ * {@link #register()}, and as a JSON summary with {@link #toJson()}.
+ * <p>
+ * When several queries of a table are merged, the resources, triples and
+ * bytes are counted on the first query.
+ */
+public class ExportMetrics implements ExportMetricsMXBean {
+
+    /** The name the metrics are registered with in JMX. */
+    public static final String OBJECT_NAME = "eionet.rdfexport:type=ExportMetrics";
+
+    /** When the metrics were created. */
+    private final long started = System.nanoTime();
+
+    /** The counters of the queries by table and query name, in the order they were started. */
+    private final Map<String, QueryMetrics> queries = new LinkedHashMap<String, QueryMetrics>();
+
+    /** The name registered in JMX, or null. */
+    private ObjectName registered;
+
+    /**
+     * The counters of a query. They are created the first time the query is
+     * asked for.
+     *
+     * @param table
+     *            - name of table in properties file
+     * @param query
+     *            - name of the query in properties file
+     * @return the counters
+     */
+    synchronized QueryMetrics query(String table, String query) {
+        String key = table + "\t" + query;
+        QueryMetrics metrics = queries.get(key);
+        if (metrics == null) {
+            metrics = new QueryMetrics(table, query);
+            queries.put(key, metrics);
+        }
+        return metrics;
+    }
+
+    @Override
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+    }
+
+    @Override
+    public long getRows() {
+        long sum = 0;
+        for (QueryMetrics query : getQueries()) {
+            sum += query.getRows();
+        }
+        return sum;
+    }
+
+    @Override
+    public long getTriples() {
+        long sum = 0;
+        for (QueryMetrics query : getQueries()) {
+            sum += query.getTriples();
+        }
+        return sum;
+    }
+
+    @Override
+    public long getBytes() {
+        long sum = 0;
+        for (QueryMetrics query : getQueries()) {
+            sum += query.getBytes();
+        }
+        return sum;
+    }
+
+    @Override
+    public synchronized List<QueryMetrics> getQueries() {
+        return new ArrayList<QueryMetrics>(queries.values());
+    }
+
+    @Override
+    public List<QueryMetrics> getTables() {
+        Map<String, QueryMetrics> tables = new LinkedHashMap<String, QueryMetrics>();
+        for (QueryMetrics query : getQueries()) {
+            QueryMetrics table = tables.get(query.getTable());
+            if (table == null) {
+                table = new QueryMetrics(query.getTable(), null);
+                tables.put(query.getTable(), table);
+            }
+            table.add(query);
+        }
+        return new ArrayList<QueryMetrics>(tables.values());
+    }
+
+    @Override
+    public String getSummary() {
+        return toJson();
+    }
+
+    /**
+     * Write the metrics as a JSON document: the totals, and for each table
+     * its sums and its queries.
+     *
+     * @return the document
+     */
+    public String toJson() {
+        StringWriter out = new StringWriter();
+        try {
+            JsonGenerator json = new JsonFactory().createGenerator(out);
+            json.useDefaultPrettyPrinter();
+            json.writeStartObject();
+            json.writeNumberField("elapsedMillis", getElapsedMillis());
+            json.writeNumberField("rows", getRows());
+            json.writeNumberField("triples", getTriples());
+            json.writeNumberField("bytes", getBytes());
+            List<QueryMetrics> all = getQueries();
+            json.writeArrayFieldStart("tables");
+            for (QueryMetrics table : getTables()) {
+                json.writeStartObject();
+                writeCounters(json, table);
+                json.writeArrayFieldStart("queries");
+                for (QueryMetrics query : all) {
+                    if (query.getTable().equals(table.getTable())) {
+                        json.writeStartObject();
+                        writeCounters(json, query);
+                        json.writeEndObject();
+                    }
+                }
+                json.writeEndArray();
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+            json.close();
+        } catch (IOException e) {
+            // A StringWriter doesn't fail.
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Write the counters of a table or query as fields.
+     *
+     * @param json
+     *            - the generator, in an object
+     * @param metrics
+     *            - the counters
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    private static void writeCounters(JsonGenerator json, QueryMetrics metrics) throws IOException {
+        json.writeStringField(metrics.getQuery() == null ? "table" : "query",
+                metrics.getQuery() == null ? metrics.getTable() : metrics.getQuery());
+        json.writeNumberField("executions", metrics.getExecutions());
+        json.writeNumberField("rows", metrics.getRows());
+        json.writeNumberField("resources", metrics.getResources());
+        json.writeNumberField("triples", metrics.getTriples());
+        json.writeNumberField("bytes", metrics.getBytes());
+        json.writeNumberField("firstRowMillis", metrics.getFirstRowMillis());
+        json.writeNumberField("fetchMillis", metrics.getFetchMillis());
+        json.writeNumberField("writeMillis", metrics.getWriteMillis());
+        json.writeNumberField("rowsPerSecond", Math.round(metrics.getRowsPerSecond()));
+    }
+
+    /**
+     * Make the metrics visible in JMX under {@link #OBJECT_NAME}, replacing
+     * the metrics of an earlier export.
+     */
+    public synchronized void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+            registered = name;
+        } catch (JMException e) {
+            throw new IllegalStateException("Can't register the metrics in JMX", e);
+        }
+    }
+
+    /**
+     * Remove the metrics from JMX if they were registered.
+     */
+    public synchronized void unregister() {
+        if (registered == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registered);
+        } catch (JMException e) {
+            // Already gone
+        }
+        registered = null;
+    }
+}
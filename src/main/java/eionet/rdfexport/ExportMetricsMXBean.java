@@ -0,0 +1,78 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is RDFExport 1.0
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev or Zero Technologies are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Søren Roug, EEA
+ */
+package eionet.rdfexport;
+
+import java.util.List;
+
+/**
+ * What an export has done so far, as seen through JMX.
+ */
+public interface ExportMetricsMXBean {
+
+    /**
+     * Time since the export started.
+     *
+     * @return milliseconds
+     */
+    long getElapsedMillis();
+
+    /**
+     * Number of rows read by all queries.
+     *
+     * @return the count
+     */
+    long getRows();
+
+    /**
+     * Number of triples written by all queries.
+     *
+     * @return the count
+     */
+    long getTriples();
+
+    /**
+     * Number of bytes written by all queries.
+     *
+     * @return the count
+     */
+    long getBytes();
+
+    /**
+     * The sums of each table, in the order the tables were started.
+     *
+     * @return the tables
+     */
+    List<QueryMetrics> getTables();
+
+    /**
+     * The counters of each query, in the order the queries were started.
+     *
+     * @return the queries
+     */
+    List<QueryMetrics> getQueries();
+
+    /**
+     * The metrics as a JSON document.
+     *
+     * @return the document
+     */
+    String getSummary();
+}
@@ -0,0 +1,407 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is RDFExport 1.0
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev or Zero Technologies are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Søren Roug, EEA
+ */
+package eionet.rdfexport;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The properties of an export compiled into the form the exporter uses:
+ * the namespaces, object properties and datatype mappings, and for every
+ * table its queries in the order they are run with their key hints. The
+ * properties are only scanned when the plan is made.
+ * <p>
+ * A plan doesn't change once it is made, so it can be shared by many
+ * generators and threads. It can be written to a file and read back
+ * instead of compiling the properties again.
+ */
+public final class ExportPlan implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** A copy of the properties the plan was made from. */
+    private final Properties props = new Properties();
+
+    /** The properties sorted by name, to find the queries of a table. */
+    private final TreeMap<String, String> sortedProps = new TreeMap<String, String>();
+
+    /** The namespaces from the xmlns.* properties, by prefix. */
+    private final Map<String, String> namespaces = new HashMap<String, String>();
+
+    /** The object properties from the objectproperty.* properties, with the '-&gt;' in front. */
+    private final Map<String, String> objectProperties = new HashMap<String, String>();
+
+    /** The datatype mappings from the datatype.* properties, by SQL type name. */
+    private final Map<String, String> datatypes = new HashMap<String, String>();
+
+    /**
+     * The RDF datatypes by JDBC type: the defaults with the datatype.*
+     * properties on top. Made again when a plan is read from a file.
+     */
+    private transient Map<Integer, String> rdfTypes;
+
+    /** The tables in the tables property. */
+    private final String[] tables;
+
+    /** The compiled tables, by name. Tables not in the tables property are added when asked for. */
+    private final ConcurrentHashMap<String, Table> tablePlans = new ConcurrentHashMap<String, Table>();
+
+    /**
+     * One query or attribute table of a table.
+     */
+    static final class Query implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        /** The property the query is in, such as person.query1. */
+        final String key;
+
+        /** The SQL. */
+        final String sql;
+
+        /** True for an attribute table. */
+        final boolean attributes;
+
+        /** The column holding the identifier, from the key hint, or null. */
+        final String keyHint;
+
+        /** The column that tells when a row of this query changed, or null. */
+        final String changedColumn;
+
+        /**
+         * Constructor.
+         *
+         * @param key
+         *            - the property the query is in
+         * @param sql
+         *            - the SQL
+         * @param attributes
+         *            - true for an attribute table
+         * @param keyHint
+         *            - the key hint or null
+         * @param changedColumn
+         *            - the changed column or null
+         */
+        Query(String key, String sql, boolean attributes, String keyHint, String changedColumn) {
+            this.key = key;
+            this.sql = sql;
+            this.attributes = attributes;
+            this.keyHint = keyHint;
+            this.changedColumn = changedColumn;
+        }
+    }
+
+    /**
+     * The settings and queries of a table.
+     */
+    static final class Table implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        /** The rdf:type of the resources. */
+        final String rdfClass;
+
+        /** The vocabulary of the table, or null for the default vocabulary. */
+        final String vocabulary;
+
+        /** True if the queries are to be merged on the key. */
+        final boolean merge;
+
+        /** Number of key ranges to split the table into in a parallel export. */
+        final int partitions;
+
+        /** The column to split the table on, if a query has no key hint. */
+        final String partitionKey;
+
+        /** The column that tells when a row of the first query changed, or null. */
+        final String changedColumn;
+
+        /** The queries followed by the attribute tables, each sorted on the property name. */
+        final List<Query> queries;
+
+        /**
+         * Compile a table.
+         *
+         * @param name
+         *            - name of table in properties file
+         * @param plan
+         *            - the plan with the properties
+         */
+        private Table(String name, ExportPlan plan) {
+            Properties props = plan.props;
+            String defaultClass = name.substring(0, 1).toUpperCase() + name.substring(1).toLowerCase();
+            rdfClass = props.getProperty(name.concat(".class"), defaultClass);
+            vocabulary = props.getProperty(name.concat(".vocabulary"));
+            merge = Boolean.parseBoolean(props.getProperty(name.concat(".merge"), "false"));
+            partitions = Integer.parseInt(props.getProperty(name.concat(".partitions"), "1"));
+            partitionKey = props.getProperty(name.concat(".partitionkey"), props.getProperty(name.concat(".key")));
+            changedColumn = props.getProperty(name.concat(".changedcolumn"));
+            List<Query> list = new ArrayList<Query>();
+            plan.addQueries(list, name.concat(".query"), name.concat(".key"), name.concat(".changedcolumn"), false);
+            plan.addQueries(list, name.concat(".attributetable"), name.concat(".attributekey"),
+                    name.concat(".attributechangedcolumn"), true);
+            // The changed column of the table is that of the first query, unless it has its own.
+            if (changedColumn != null && !list.isEmpty()) {
+                Query first = list.get(0);
+                if (!first.attributes && first.changedColumn == null) {
+                    list.set(0, new Query(first.key, first.sql, false, first.keyHint, changedColumn));
+                }
+            }
+            queries = Collections.unmodifiableList(list);
+        }
+
+        /**
+         * The first query of the table, which is used to look up the key
+         * bounds.
+         *
+         * @return the query or null if the table only has attribute tables
+         */
+        Query getFirstQuery() {
+            if (queries.isEmpty() || queries.get(0).attributes) {
+                return null;
+            }
+            return queries.get(0);
+        }
+    }
+
+    /**
+     * Compile the properties of an export.
+     *
+     * @param properties
+     *            - the properties
+     */
+    public ExportPlan(Properties properties) {
+        for (String key : properties.stringPropertyNames()) {
+            String value = properties.getProperty(key);
+            props.setProperty(key, value);
+            sortedProps.put(key, value);
+            if (key.startsWith("xmlns.")) {
+                namespaces.put(key.substring(6), value);
+            } else if (key.startsWith("objectproperty.")) {
+                objectProperties.put(key.substring(15), "->".concat(value));
+            } else if (key.startsWith("datatype.")) {
+                datatypes.put(key.substring(9), value);
+            }
+        }
+        String tablesProperty = props.getProperty("tables");
+        if (tablesProperty != null && !tablesProperty.isEmpty()) {
+            tables = tablesProperty.split("\\s+");
+        } else {
+            tables = new String[0];
+        }
+        for (String table : tables) {
+            tablePlans.put(table, new Table(table, this));
+        }
+        rdfTypes = compileRDFTypes();
+    }
+
+    /**
+     * Apply the datatype.* properties to the default mappings.
+     *
+     * @return the RDF datatypes by JDBC type
+     */
+    private Map<Integer, String> compileRDFTypes() {
+        Map<Integer, String> types = Datatypes.getRDFTypes();
+        for (Map.Entry<String, String> datatype : datatypes.entrySet()) {
+            types.put(Datatypes.getSQLType(datatype.getKey()), datatype.getValue());
+        }
+        return Collections.unmodifiableMap(types);
+    }
+
+    /**
+     * Read the plan and make the mappings that aren't stored.
+     *
+     * @param in
+     *            - the stream
+     * @throws IOException
+     *             - if the stream can't be read
+     * @throws ClassNotFoundException
+     *             - if the stream has an unknown class
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        rdfTypes = compileRDFTypes();
+    }
+
+    /**
+     * Add the queries with names starting with a prefix, sorted on the name.
+     *
+     * @param list
+     *            - where to add the queries
+     * @param prefix
+     *            - table.query or table.attributetable
+     * @param keyPrefix
+     *            - the start of the name of the key hints
+     * @param changedPrefix
+     *            - the start of the name of the changed columns
+     * @param attributes
+     *            - true for attribute tables
+     */
+    private void addQueries(List<Query> list, String prefix, String keyPrefix, String changedPrefix,
+            boolean attributes) {
+        for (Map.Entry<String, String> entry
+                : sortedProps.subMap(prefix, true, prefix + Character.MAX_VALUE, true).entrySet()) {
+            String suffix = entry.getKey().substring(prefix.length());
+            String keyHint = props.getProperty(keyPrefix.concat(suffix));
+            String changedColumn = props.getProperty(changedPrefix.concat(suffix));
+            list.add(new Query(entry.getKey(), entry.getValue(), attributes, keyHint, changedColumn));
+        }
+    }
+
+    /**
+     * Read a plan written by {@link #write(File)}.
+     *
+     * @param file
+     *            - the file
+     * @return the plan
+     * @throws IOException
+     *             - if the file can't be read or doesn't hold a plan
+     */
+    public static ExportPlan read(File file) throws IOException {
+        ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            return (ExportPlan) in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("The file " + file + " doesn't hold an export plan", e);
+        } catch (ClassCastException e) {
+            throw new IOException("The file " + file + " doesn't hold an export plan", e);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Write the plan to a file.
+     *
+     * @param file
+     *            - the file
+     * @throws IOException
+     *             - if the file can't be written
+     */
+    public void write(File file) throws IOException {
+        ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeObject(this);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * The value of a property.
+     *
+     * @param key
+     *            - the name of the property
+     * @return the value or null
+     */
+    public String getProperty(String key) {
+        return props.getProperty(key);
+    }
+
+    /**
+     * The value of a property.
+     *
+     * @param key
+     *            - the name of the property
+     * @param defaultValue
+     *            - what to return if there is no such property
+     * @return the value or the default value
+     */
+    public String getProperty(String key, String defaultValue) {
+        return props.getProperty(key, defaultValue);
+    }
+
+    /**
+     * Return the tables in the tables property.
+     *
+     * @return the names of the tables
+     */
+    public String[] getAllTables() {
+        return Arrays.copyOf(tables, tables.length);
+    }
+
+    /**
+     * The namespaces to declare.
+     *
+     * @return the namespace URLs by prefix
+     */
+    Map<String, String> getNamespaces() {
+        return Collections.unmodifiableMap(namespaces);
+    }
+
+    /**
+     * The object properties. A column with one of these names is a
+     * reference to another resource.
+     *
+     * @return the datatypes starting with '-&gt;', by column name
+     */
+    Map<String, String> getObjectProperties() {
+        return Collections.unmodifiableMap(objectProperties);
+    }
+
+    /**
+     * The mappings from SQL types to RDF datatypes. They are made once per
+     * plan, so generators on several threads can share them.
+     *
+     * @return the RDF datatypes by JDBC type
+     */
+    Map<Integer, String> getRDFTypes() {
+        return rdfTypes;
+    }
+
+    /**
+     * The compiled form of a table.
+     *
+     * @param table
+     *            - name of table in properties file
+     * @return the table, which has no queries if there is no such table
+     */
+    Table getTable(String table) {
+        Table plan = tablePlans.get(table);
+        if (plan == null) {
+            plan = new Table(table, this);
+            // Only remember real tables, so asking for made up names doesn't fill the memory.
+            if (!plan.queries.isEmpty()) {
+                Table earlier = tablePlans.putIfAbsent(table, plan);
+                if (earlier != null) {
+                    plan = earlier;
+                }
+            }
+        }
+        return plan;
+    }
+}
@@ -21,18 +21,31 @@
  */
 package eionet.rdfexport;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.sql.Connection;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
-import java.util.TreeSet;
+import java.util.Set;
 
 /**
  * RDF generator. The queries are stored in a properties file. There are two
@@ -48,22 +61,100 @@ public class GenerateRDF {
 
     /** Tell the DB driver how much to fetch at a time. */
     private static final int FETCH_SIZE = 1000;
+    /** Name of the shard with the document information. */
+    static final String DOCUMENT_SHARD = "_document";
+    /** Number of identifiers looked up by one query when exporting many records. A power of two. */
+    private static final int IDS_PER_QUERY = 512;
     /** Connection to database. */
     private Connection con;
-    /** Names, types and langcodes of columns. */
-    private RDFField[] names;
     /** The properties that are object properties. They point to another object. */
-    private HashMap<String, String> objectProperties;
-    /** The datatype mappings. */
-    //private HashMap<Integer, String> datatypeMap;
-    /** All the tables in the properties file. */
-    private String[] tables = new String[0];
-    /** Hashtable of loaded properties. */
-    private Properties props;
+    private Map<String, String> objectProperties;
+
+    /** The RDF datatypes by JDBC type, from the export plan. */
+    private Map<Integer, String> datatypeMap;
+    /** The compiled properties. */
+    private ExportPlan plan;
+    /** The output format of the resource writer. */
+    private String format;
+    /** Counters by table and query, or null if they aren't kept. */
+    private ExportMetrics metrics;
+    /** Triples written by the resource writers of earlier shards. */
+    private long retiredTriples;
+    /** Bytes written by the resource writers of earlier shards. */
+    private long retiredBytes;
 
     /** The object doing the serialisation. */
     private ResourceWriter resourceWriter;
 
+    /**
+     * If true, only the resources are written. The RDF header is left to
+     * whoever stitches the segment into the final document.
+     */
+    private boolean segmentOnly = false;
+
+    /**
+     * Rows per batch when reading in a separate thread. Zero if the rows
+     * are read by the thread that writes them.
+     */
+    private int pipelineBatch = 0;
+
+    /** Number of batches when reading in a separate thread. */
+    private int pipelineDepth = 4;
+
+    /**
+     * Prepared statements for single record lookups, keyed by the query
+     * with the placeholder for the identifier.
+     */
+    private HashMap<String, Lookup> lookups = new HashMap<String, Lookup>();
+
+    /**
+     * Values of the changed columns that the previous run got to, keyed by
+     * table. Null if the export isn't incremental.
+     */
+    private Properties previousMarks;
+
+    /** Values of the changed columns that this run gets to. */
+    private Properties nextMarks;
+
+    /**
+     * Digests of the resources of the previous run. Null if all resources
+     * are to be written.
+     */
+    private ResourceDigests digests;
+
+    /** False while resources that are always written, like the document information, are written. */
+    private boolean detectChanges = true;
+
+    /** Holds a resource until it is known whether it has changed. */
+    private ResourceBuffer resourceBuffer;
+
+    /** The sink that writes to the resource buffer. */
+    private OutputSink bufferSink;
+
+    /** The sink the output goes to while a resource is buffered. */
+    private OutputSink directSink;
+
+    /** The subject of the buffered resource. */
+    private String bufferedSubject;
+
+    /** Journal of the finished tables, or null if the export can't be resumed. */
+    private Checkpoint checkpoint;
+
+    /** The directory of shards, or null if the output is one document. */
+    private ShardedOutput shards;
+
+    /** The shard being written, or null if there is none. */
+    private ShardedOutput.Shard shard;
+
+    /** The sink writing to the current shard. */
+    private OutputSink shardSink;
+
+    /** The table of the current shard. */
+    private String shardTable;
+
+    /** The name the current shard was opened with. */
+    private String shardName;
+
     /**
      * Constructor.
      *
@@ -80,7 +171,49 @@ public class GenerateRDF {
      */
     public GenerateRDF(OutputStream writer, Connection dbCon,
                 Properties properties) throws IOException, SQLException {
-        this(new OutputStreamWriter(writer, "UTF-8"), dbCon, properties);
+        this(new OutputSink(writer), dbCon, new ExportPlan(properties));
+    }
+
+    /**
+     * Constructor with properties that have already been compiled, so they
+     * aren't scanned again.
+     *
+     * @param writer
+     *            - The output stream to send output to
+     * @param dbCon
+     *            - The database connection
+     * @param plan
+     *            - The compiled properties
+     * @throws IOException
+     *             - if the output can't be opened
+     * @throws SQLException
+     *             - if the SQL database is not available
+     */
+    public GenerateRDF(OutputStream writer, Connection dbCon,
+                ExportPlan plan) throws IOException, SQLException {
+        this(new OutputSink(writer), dbCon, plan, plan.getProperty("outputformat", "xml"));
+    }
+
+    /**
+     * Constructor with compiled properties and a format that overrides the
+     * outputformat property, so one plan can serve several formats.
+     *
+     * @param writer
+     *            - The output stream to send output to
+     * @param dbCon
+     *            - The database connection
+     * @param plan
+     *            - The compiled properties
+     * @param format
+     *            - The output format
+     * @throws IOException
+     *             - if the output can't be opened
+     * @throws SQLException
+     *             - if the SQL database is not available
+     */
+    GenerateRDF(OutputStream writer, Connection dbCon,
+                ExportPlan plan, String format) throws IOException, SQLException {
+        this(new OutputSink(writer), dbCon, plan, format);
     }
 
     /**
@@ -99,40 +232,213 @@ public class GenerateRDF {
      */
     public GenerateRDF(OutputStreamWriter writer, Connection dbCon,
                 Properties properties) throws IOException, SQLException {
-        if (!"UTF8".equals(writer.getEncoding())) {
-            throw new RuntimeException("Only UTF-8 is supported!");
-        }
-        props = properties;
+        this(utf8Sink(writer), dbCon, new ExportPlan(properties));
+    }
 
-        resourceWriter = new ResourceWriterXML(writer);
+    /**
+     * Constructor.
+     *
+     * @param sink
+     *            - The buffer to send output to
+     * @param dbCon
+     *            - The database connection
+     * @param plan
+     *            - The compiled properties
+     * @throws IOException
+     *             - if the properties file is missing
+     * @throws SQLException
+     *             - if the SQL database is not available
+     */
+    private GenerateRDF(OutputSink sink, Connection dbCon,
+                ExportPlan plan) throws IOException, SQLException {
+        this(sink, dbCon, plan, plan.getProperty("outputformat", "xml"));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param sink
+     *            - The buffer to send output to
+     * @param dbCon
+     *            - The database connection
+     * @param plan
+     *            - The compiled properties
+     * @param format
+     *            - The output format
+     * @throws IOException
+     *             - if the properties file is missing
+     * @throws SQLException
+     *             - if the SQL database is not available
+     */
+    private GenerateRDF(OutputSink sink, Connection dbCon,
+                ExportPlan plan, String format) throws IOException, SQLException {
+        this.plan = plan;
+        this.format = format;
+
+        resourceWriter = createResourceWriter(sink, format);
         // Generate exception if there is no vocabulary property
-        resourceWriter.setVocabulary(props.getProperty("vocabulary"));
-        resourceWriter.setBaseURL(props.getProperty("baseurl"));
-        boolean emptyStringIsNull = Boolean.parseBoolean(props.getProperty("emptystringisnull", "false"));
+        resourceWriter.setVocabulary(plan.getProperty("vocabulary"));
+        resourceWriter.setBaseURL(plan.getProperty("baseurl"));
+        boolean emptyStringIsNull = Boolean.parseBoolean(plan.getProperty("emptystringisnull", "false"));
         resourceWriter.setEmptyStringIsNull(emptyStringIsNull);
+        resourceWriter.setBlobEncoding(plan.getProperty("blobencoding", "text"));
 
 
-        String tablesProperty = props.getProperty("tables");
-        if (tablesProperty != null && !tablesProperty.isEmpty()) {
-            tables = tablesProperty.split("\\s+");
+        if (Boolean.parseBoolean(plan.getProperty("pipeline", "false"))) {
+            pipelineBatch = Integer.parseInt(plan.getProperty("pipelinebatch", Integer.toString(FETCH_SIZE)));
+            pipelineDepth = Integer.parseInt(plan.getProperty("pipelinedepth", "4"));
+            if (pipelineBatch < 1 || pipelineDepth < 1) {
+                throw new IllegalArgumentException("pipelinebatch and pipelinedepth must be at least 1");
+            }
         }
 
         con = dbCon;
 
-        objectProperties = new HashMap<String, String>();
-        //datatypeMap = new HashMap<Integer, String>();
-        // Get the namespaces from the properties file.
-        // Get the objectproperties from the properties file.
-        for (String key : props.stringPropertyNames()) {
-            if (key.startsWith("xmlns.")) {
-                resourceWriter.addNamespace(key.substring(6), props.getProperty(key));
-            } else if (key.startsWith("objectproperty.")) {
-                String value = props.getProperty(key);
-                addObjectProperty(key.substring(15), "->".concat(value));
-            } else if (key.startsWith("datatype.")) {
-                Integer type = Datatypes.getSQLType(key.substring(9));
-                Datatypes.setRDFType(type, props.getProperty(key));
-            }
+        objectProperties = plan.getObjectProperties();
+        for (Map.Entry<String, String> namespace : plan.getNamespaces().entrySet()) {
+            resourceWriter.addNamespace(namespace.getKey(), namespace.getValue());
+        }
+        datatypeMap = plan.getRDFTypes();
+    }
+
+    /**
+     * Constructor for a worker in a parallel export. The configuration is
+     * taken from an existing generator, so the properties are not scanned
+     * again. The worker writes resources only, and no RDF header.
+     *
+     * @param writer
+     *            - The output stream to send output to
+     * @param dbCon
+     *            - The database connection
+     * @param template
+     *            - The generator to copy the configuration from
+     * @throws IOException
+     *             - if the output can't be opened
+     */
+    GenerateRDF(OutputStream writer, Connection dbCon, GenerateRDF template) throws IOException {
+        plan = template.plan;
+        format = template.format;
+        metrics = template.metrics;
+        objectProperties = template.objectProperties;
+        datatypeMap = template.datatypeMap;
+        pipelineBatch = template.pipelineBatch;
+        pipelineDepth = template.pipelineDepth;
+        previousMarks = template.previousMarks;
+        nextMarks = template.nextMarks;
+        digests = template.digests;
+        shards = template.shards;
+        con = dbCon;
+        segmentOnly = true;
+
+        resourceWriter = createResourceWriter(new OutputSink(writer), template.resourceWriter);
+    }
+
+    /**
+     * Check that a writer encodes to UTF-8 and wrap it.
+     *
+     * @param writer
+     *            - The output stream to send output to
+     * @return the sink to give to the resource writer
+     */
+    private static OutputSink utf8Sink(OutputStreamWriter writer) {
+        if (!"UTF8".equals(writer.getEncoding())) {
+            throw new RuntimeException("Only UTF-8 is supported!");
+        }
+        return new OutputSink(writer);
+    }
+
+    /**
+     * Create the serialiser for a format. The formats are xml, ttl, nt, nq,
+     * jsonld and ndjsonld. The format of the export is given in the outputformat property,
+     * where xml is the default.
+     *
+     * @param writer
+     *            - The buffer to send output to
+     * @param format
+     *            - the output format
+     * @return the resource writer
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    private static ResourceWriter createResourceWriter(OutputSink writer, String format) throws IOException {
+        if ("xml".equals(format)) {
+            return new ResourceWriterXML(writer);
+        } else if ("ttl".equals(format)) {
+            return new ResourceWriterTTL(writer);
+        } else if ("nt".equals(format)) {
+            return new ResourceWriterNT(writer);
+        } else if ("nq".equals(format)) {
+            return new ResourceWriterNQ(writer);
+        } else if ("jsonld".equals(format)) {
+            return new ResourceWriterJSONLD(writer);
+        } else if ("ndjsonld".equals(format)) {
+            return new ResourceWriterNDJSONLD(writer);
+        }
+        throw new IllegalArgumentException("Unknown output format: " + format);
+    }
+
+    /**
+     * Create a serialiser with the same settings as another.
+     *
+     * @param writer
+     *            - The buffer to send output to
+     * @param template
+     *            - the resource writer to copy the settings from
+     * @return the resource writer
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    private ResourceWriter createResourceWriter(OutputSink writer, ResourceWriter template) throws IOException {
+        return createResourceWriter(writer, format, template);
+    }
+
+    /**
+     * Create a serialiser for a format with the same settings as another.
+     *
+     * @param writer
+     *            - The buffer to send output to
+     * @param format
+     *            - the output format
+     * @param template
+     *            - the resource writer to copy the settings from
+     * @return the resource writer
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    private ResourceWriter createResourceWriter(OutputSink writer, String format, ResourceWriter template)
+            throws IOException {
+        ResourceWriter copy = createResourceWriter(writer, format);
+        copy.setVocabulary(plan.getProperty("vocabulary"));
+        copy.setBaseURL(plan.getProperty("baseurl"));
+        copy.setEmptyStringIsNull(template.emptyStringIsNull);
+        copy.setBlobEncoding(template.blobEncoding);
+        copy.namespaces.putAll(template.namespaces);
+        return copy;
+    }
+
+    /**
+     * Also write the export in another format to another stream. The rows
+     * are read from the database once and written in all the formats.
+     * Must be called before anything is exported. Several formats can't
+     * be combined with a parallel export, sharding, checkpoints or a
+     * digest index.
+     *
+     * @param writer
+     *            - The output stream to send the other format to
+     * @param format
+     *            - the format: xml, ttl, nt, nq, jsonld or ndjsonld
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    public void addOutput(OutputStream writer, String format) throws IOException {
+        if (digests != null || shards != null || checkpoint != null) {
+            throw new IllegalStateException("Several formats can only be written by a plain export");
+        }
+        ResourceWriter extra = createResourceWriter(new OutputSink(writer), format, resourceWriter);
+        if (resourceWriter instanceof ResourceWriterTee) {
+            ((ResourceWriterTee) resourceWriter).add(extra);
+        } else {
+            resourceWriter = new ResourceWriterTee(resourceWriter, extra);
         }
     }
 
@@ -148,6 +454,20 @@ public class GenerateRDF {
      * @return patched SQL query
      */
     String injectHaving(String query, String identifier) {
+        return injectHavingCondition(query, "id='" + identifier.replace("'", "''") + "'");
+    }
+
+    /**
+     * Add a condition to the HAVING clause of a query. If there is no HAVING
+     * clause, one is inserted before ORDER BY, LIMIT etc.
+     *
+     * @param query
+     *            - SQL query to patch
+     * @param condition
+     *            - the condition to add
+     * @return patched SQL query
+     */
+    String injectHavingCondition(String query, String condition) {
         String[] keywords = {" order ", " limit ", " procedure ", " into ", " for ", " lock "};
         String lquery = query.toLowerCase().replace("\n", " ");
         int insertBefore = lquery.length();
@@ -159,11 +479,9 @@ public class GenerateRDF {
         }
         int h = lquery.indexOf(" having ");
         if (h == -1) {
-            query =
-                    query.substring(0, insertBefore) + " HAVING id='" + identifier.replace("'", "''") + "'"
-                            + query.substring(insertBefore);
+            query = query.substring(0, insertBefore) + " HAVING " + condition + query.substring(insertBefore);
         } else {
-            query = query.substring(0, h + 8) + "id='" + identifier.replace("'", "''") + "' AND " + query.substring(h + 8);
+            query = query.substring(0, h + 8) + condition + " AND " + query.substring(h + 8);
         }
         return query;
     }
@@ -182,6 +500,20 @@ public class GenerateRDF {
      * @return patched SQL query
      */
     String injectWhere(String query, String key, String identifier) {
+        return injectCondition(query, key + "='" + identifier.replace("'", "''") + "'");
+    }
+
+    /**
+     * Add a condition to the WHERE clause of a query. If there is no WHERE
+     * clause, one is inserted before GROUP BY, HAVING, ORDER BY etc.
+     *
+     * @param query
+     *            - SQL query to patch
+     * @param condition
+     *            - the condition to add
+     * @return patched SQL query
+     */
+    String injectCondition(String query, String condition) {
         // Handle WHERE for key hints
         String[] keywords = {" group ", " having ", " order ", " limit ", " procedure ", " into ", " for ", " lock "};
         String lquery = query.toLowerCase().replace("\n", " ");
@@ -194,22 +526,69 @@ public class GenerateRDF {
         }
         int h = lquery.indexOf(" where ");
         if (h == -1) {
-            query =
-                    query.substring(0, insertBefore) + " WHERE " + key + "='" + identifier.replace("'", "''") + "'"
-                            + query.substring(insertBefore);
+            query = query.substring(0, insertBefore) + " WHERE " + condition + query.substring(insertBefore);
         } else {
-            query = query.substring(0, h + 7) + key + "='" + identifier.replace("'", "''") + "' AND " + query.substring(h + 7);
+            query = query.substring(0, h + 7) + condition + " AND " + query.substring(h + 7);
         }
         return query;
     }
 
+    /**
+     * Create the condition that selects records by identifier, with a
+     * placeholder for each identifier.
+     *
+     * @param column
+     *            - the key column
+     * @param count
+     *            - the number of identifiers
+     * @return the condition
+     */
+    static String keyCondition(String column, int count) {
+        if (count == 1) {
+            return column + " = ?";
+        }
+        StringBuilder condition = new StringBuilder(column).append(" IN (?");
+        for (int i = 1; i < count; i++) {
+            condition.append(", ?");
+        }
+        return condition.append(')').toString();
+    }
+
+    /**
+     * Turn a query into one that finds the smallest and largest value of a
+     * key column. The select list is replaced, and GROUP BY, ORDER BY and
+     * what follows is removed. The WHERE clause is kept.
+     *
+     * @param query
+     *            - SQL query of the table
+     * @param key
+     *            - Name of column that can be used as key in index
+     * @return SQL query returning one row with the minimum and maximum
+     */
+    String injectKeyBounds(String query, String key) {
+        String[] keywords = {" group ", " having ", " order ", " limit ", " procedure ", " into ", " for ", " lock "};
+        String lquery = query.toLowerCase().replace("\n", " ");
+        int from = lquery.indexOf(" from ");
+        if (from == -1) {
+            throw new IllegalArgumentException("Can't find FROM in query: " + query);
+        }
+        int end = lquery.length();
+        for (String k : keywords) {
+            int i = lquery.indexOf(k, from);
+            if (i >= 0 && i < end) {
+                end = i;
+            }
+        }
+        return "SELECT MIN(" + key + "), MAX(" + key + ")" + query.substring(from, end);
+    }
+
     /**
      * Return all known tables in properties file.
      *
      * @return list of strings.
      */
     public String[] getAllTables() {
-        return tables == null ? null : Arrays.copyOf(tables, tables.length);
+        return plan.getAllTables();
     }
 
     /**
@@ -223,7 +602,7 @@ public class GenerateRDF {
      *             - if the output is not open.
      */
     public void exportTable(String table) throws SQLException, IOException {
-        exportTable(table, null);
+        exportTable(table, (String) null);
     }
 
     /**
@@ -242,104 +621,888 @@ public class GenerateRDF {
      *             - if the output is not open.
      */
     public void exportTable(String table, String identifier) throws SQLException, IOException {
-        String voc = props.getProperty(table.concat(".vocabulary"));
-        if (voc != null) {
-            resourceWriter.setVocabulary(voc);
-        } else {
-            resourceWriter.setVocabulary(props.getProperty("vocabulary"));
+        if (isDone(table)) {
+            return;
         }
-        resourceWriter.writeRdfHeader();
+        rewindRanges(table);
+        beginTable(table);
+        if (identifier == null) {
+            advanceWatermark(table);
+        }
+        exportQueries(table, identifier == null ? null : Collections.singletonList(identifier), null);
+        tableDone(table);
+    }
+
+    /**
+     * Export many records of a table as RDF. The identifiers are looked up
+     * in groups with <code>IN (...)</code> on the key hint of each query, or
+     * on the id in HAVING if there is no key hint. A record asked for
+     * twice is exported once. A group that is not full is filled up to a
+     * power of two by repeating its last identifier, so that a query
+     * prepares at most a few statements whatever the number of identifiers.
+     *
+     * @param table
+     *            - name of table in properties file
+     * @param identifiers
+     *            - primary keys of the records we want
+     * @throws SQLException
+     *             if there is a database problem.
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    public void exportTable(String table, Collection<String> identifiers) throws SQLException, IOException {
+        if (isDone(table)) {
+            return;
+        }
+        rewindRanges(table);
+        beginTable(table);
+        Set<String> unique = new LinkedHashSet<String>(identifiers);
+        List<String> group = new ArrayList<String>(IDS_PER_QUERY);
+        int left = unique.size();
+        for (String identifier : unique) {
+            group.add(identifier);
+            left--;
+            if (group.size() == IDS_PER_QUERY || left == 0) {
+                int size = paddedSize(group.size());
+                while (group.size() < size) {
+                    group.add(identifier);
+                }
+                exportQueries(table, group, null);
+                group.clear();
+            }
+        }
+        tableDone(table);
+    }
+
+    /**
+     * The number of placeholders for a group of identifiers: the next power
+     * of two.
+     *
+     * @param count
+     *            - number of identifiers, at most {@link #IDS_PER_QUERY}
+     * @return the number of placeholders
+     */
+    static int paddedSize(int count) {
+        int size = Integer.highestOneBit(count);
+        return size == count ? size : size << 1;
+    }
+
+    /**
+     * Run the queries of a table. If a key range is given, only the rows in
+     * the range are exported. The column the range is applied to is the
+     * key hint of the query, or the partition key of the table. In an
+     * incremental export, only the rows changed since the previous run are
+     * exported.
+     *
+     * @param table
+     *            - name of table in properties file
+     * @param identifiers
+     *            - primary keys of the records we want or null for all records.
+     * @param range
+     *            - the rows we want or null for all rows.
+     * @throws SQLException
+     *             if there is a database problem.
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    private void exportQueries(String table, List<String> identifiers, KeyRange range) throws SQLException, IOException {
         Boolean firstQuery = true;
-        String rdfClass = table.substring(0, 1).toUpperCase() + table.substring(1).toLowerCase();
-        rdfClass = props.getProperty(table.concat(".class"), rdfClass);
-        TreeSet<String> sortedProps = new TreeSet<String>(props.stringPropertyNames());
-        String tableQueryKey = table.concat(".query");
-
-        for (String key : sortedProps) {
-            if (key.startsWith(tableQueryKey)) {
-                String query = props.getProperty(key);
-                if (identifier != null) {
-                    String tableKeyKey = table.concat(".key").concat(key.substring(tableQueryKey.length()));
-                    String whereKey = props.getProperty(tableKeyKey);
-                    if (whereKey != null) {
-                        query = injectWhere(query, whereKey, identifier);
-                    } else {
-                        query = injectHaving(query, identifier);
-                    }
+        ExportPlan.Table tablePlan = plan.getTable(table);
+        String rdfClass = tablePlan.rdfClass;
+        boolean merge = tablePlan.merge;
+        List<String> mergeQueries = new ArrayList<String>();
+        List<Boolean> mergeAttributes = new ArrayList<Boolean>();
+        List<String> mergeKeys = new ArrayList<String>();
+        if (digests != null && !merge && tablePlan.queries.size() > 1) {
+            throw new IllegalArgumentException("Change detection needs " + table
+                    + ".merge = true, because the table has several queries");
+        }
+
+        for (ExportPlan.Query planned : tablePlan.queries) {
+            String query = planned.sql;
+            if (identifiers != null) {
+                if (planned.keyHint != null) {
+                    query = injectCondition(query, keyCondition(planned.keyHint, identifiers.size()));
+                } else {
+                    query = injectHavingCondition(query, keyCondition("id", identifiers.size()));
                 }
+            }
+            if (range != null) {
+                query = injectRange(query, range, planned.keyHint != null ? planned.keyHint : tablePlan.partitionKey);
+            }
+            String changed = identifiers == null ? changedCondition(table, planned) : null;
+            if (changed != null) {
+                query = injectCondition(query, changed);
+            }
 
-                runQuery(table, query, firstQuery ? rdfClass : "rdf:Description");
+            if (merge) {
+                mergeQueries.add(query);
+                mergeAttributes.add(planned.attributes);
+                mergeKeys.add(planned.key);
+            } else if (planned.attributes) {
+                runAttributes(table, planned.key, query, identifiers, firstQuery ? rdfClass : "rdf:Description");
+                firstQuery = false;
+            } else {
+                runQuery(table, planned.key, query, identifiers, firstQuery ? rdfClass : "rdf:Description");
                 firstQuery = false;
             }
         }
+        if (!mergeQueries.isEmpty()) {
+            runMerged(table, mergeKeys, mergeQueries, identifiers, mergeAttributes, rdfClass);
+        }
+    }
 
-        String tableAttributesKey = table.concat(".attributetable");
+    /**
+     * Start counting a run of a query.
+     *
+     * @param table
+     *            - name of table in properties file
+     * @param query
+     *            - name of the query in properties file
+     * @return the probe, or null if no metrics are kept
+     */
+    private QueryMetrics.Probe probe(String table, String query) {
+        if (metrics == null) {
+            return null;
+        }
+        return metrics.query(table, query).start(getTripleCount(), getBytesWritten());
+    }
 
-        for (String key : sortedProps) {
-            if (key.startsWith(tableAttributesKey)) {
-                String query = props.getProperty(key);
-                if (identifier != null) {
-                    String tableKeyKey = table.concat(".attributekey").concat(key.substring(tableAttributesKey.length()));
-                    String whereKey = props.getProperty(tableKeyKey);
-                    if (whereKey != null) {
-                        query = injectWhere(query, whereKey, identifier);
-                    } else {
-                        query = injectHaving(query, identifier);
+    /**
+     * Export several tables at the same time. Each table is exported by its
+     * own thread on a connection from the pool, and written to a temporary
+     * segment. The segments are then copied to the output in the order of
+     * the tables argument, so the result is the same as calling
+     * {@link #exportTable(String, String)} for each table in turn.
+     *
+     * @param tablesToExport
+     *            - names of tables in properties file
+     * @param identifier
+     *            - primary key of the record we want or null for all records.
+     * @param pool
+     *            - the connections to use. The size of the pool decides how
+     *            many tables are exported concurrently.
+     * @throws SQLException
+     *             if there is a database problem.
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    public void exportTables(String[] tablesToExport, final String identifier, ConnectionPool pool)
+            throws SQLException, IOException {
+        if (resourceWriter instanceof ResourceWriterTee) {
+            throw new IllegalStateException("A parallel export can't write several formats");
+        }
+        ParallelExport parallel = new ParallelExport(this, pool);
+        try {
+            List<List<KeyRange>> partsOfTables = new ArrayList<List<KeyRange>>();
+            boolean[] rewind = new boolean[tablesToExport.length];
+            for (int i = 0; i < tablesToExport.length; i++) {
+                final String table = tablesToExport[i];
+                if (isDone(table)) {
+                    partsOfTables.add(null);
+                    continue;
+                }
+                if (identifier == null) {
+                    advanceWatermark(table);
+                }
+                List<KeyRange> ranges = identifier == null ? partitionTable(table, pool) : null;
+                if (ranges == null) {
+                    parallel.submit(worker -> {
+                        worker.beginTable(table);
+                        worker.exportQueries(table, identifier == null ? null
+                                : Collections.singletonList(identifier), null);
+                        worker.endShard();
+                    });
+                    partsOfTables.add(Collections.<KeyRange>singletonList(null));
+                } else {
+                    List<KeyRange> todo = ranges;
+                    if (checkpoint != null) {
+                        List<String> done = checkpoint.getRanges(table);
+                        if (done.size() <= ranges.size() && done.equals(rangeNames(ranges.subList(0, done.size())))) {
+                            todo = ranges.subList(done.size(), ranges.size());
+                        } else {
+                            rewind[i] = true;
+                        }
+                    }
+                    for (int p = 0; p < todo.size(); p++) {
+                        final KeyRange range = todo.get(p);
+                        final String shardName = table + "." + (p + 1);
+                        parallel.submit(worker -> {
+                            if (shards != null) {
+                                worker.openShard(table, shardName);
+                            } else {
+                                // Each part gets a new worker, which starts with the default vocabulary.
+                                worker.setTableVocabulary(table);
+                            }
+                            worker.exportQueries(table, null, range);
+                            worker.endShard();
+                        });
                     }
+                    partsOfTables.add(todo);
                 }
-                runAttributes(table, query, firstQuery ? rdfClass : "rdf:Description");
-                firstQuery = false;
             }
+            for (int i = 0; i < tablesToExport.length; i++) {
+                List<KeyRange> parts = partsOfTables.get(i);
+                if (parts == null) {
+                    continue;
+                }
+                if (rewind[i]) {
+                    flush();
+                    checkpoint.rewind(tablesToExport[i]);
+                }
+                if (shards == null) {
+                    beginTable(tablesToExport[i]);
+                }
+                for (KeyRange range : parts) {
+                    parallel.appendNext();
+                    if (range != null && checkpoint != null) {
+                        flush();
+                        checkpoint.rangeDone(tablesToExport[i], range);
+                    }
+                }
+                tableDone(tablesToExport[i]);
+            }
+        } finally {
+            parallel.close();
+        }
+    }
+
+    /**
+     * Find the key ranges to split a table into. This is only done when
+     * &lt;table&gt;.partitions is more than one. The bounds are looked up
+     * with the first query of the table.
+     *
+     * @param table
+     *            - name of table in properties file
+     * @param pool
+     *            - where to get a connection for the lookup
+     * @return the ranges in key order or null if the table isn't partitioned.
+     * @throws SQLException
+     *             if there is a database problem.
+     */
+    private List<KeyRange> partitionTable(String table, ConnectionPool pool) throws SQLException {
+        ExportPlan.Table tablePlan = plan.getTable(table);
+        int partitions = tablePlan.partitions;
+        if (partitions <= 1) {
+            return null;
+        }
+        ExportPlan.Query first = tablePlan.getFirstQuery();
+        if (first == null) {
+            return null;
+        }
+        String column = first.keyHint != null ? first.keyHint : tablePlan.partitionKey;
+        if (column == null) {
+            throw new IllegalArgumentException(table + ".partitions requires " + table + ".partitionkey or "
+                    + table + ".key" + first.key.substring(table.length() + ".query".length()));
+        }
+
+        Connection boundsCon = pool.acquire();
+        Statement stmt = null;
+        ResultSet rs = null;
+        try {
+            stmt = boundsCon.createStatement();
+            rs = stmt.executeQuery(injectKeyBounds(first.sql, column));
+            if (!rs.next()) {
+                return null;
+            }
+            Object min = rs.getObject(1);
+            Object max = rs.getObject(2);
+            if (min == null || max == null) {
+                return null;
+            }
+            if (!(min instanceof Number) || !(max instanceof Number)) {
+                throw new IllegalArgumentException("The partition key " + column + " of " + table + " must be numeric");
+            }
+            return KeyRange.split(((Number) min).longValue(), ((Number) max).longValue(), partitions);
+        } finally {
+            closeIgnoringExceptions(rs);
+            closeIgnoringExceptions(stmt);
+            pool.release(boundsCon);
+        }
+    }
+
+    /**
+     * Make the export incremental. Tables with a &lt;table&gt;.changedcolumn
+     * property only export the rows where the column is higher than the
+     * watermark of the previous run. Tables without a watermark are
+     * exported in full.
+     *
+     * @param watermarks
+     *            - the watermarks from the previous run, as returned by
+     *            {@link #getWatermarks()}
+     */
+    public void setWatermarks(Properties watermarks) {
+        previousMarks = new Properties();
+        previousMarks.putAll(watermarks);
+        nextMarks = new Properties();
+        nextMarks.putAll(watermarks);
+    }
+
+    /**
+     * The watermarks to use for the next run. They must only be stored
+     * when the export has completed.
+     *
+     * @return the watermarks of all tables or null if the export isn't
+     *         incremental
+     */
+    public Properties getWatermarks() {
+        return nextMarks;
+    }
+
+    /**
+     * Find the highest value of the changed columns of a table before it is
+     * exported. Rows changed after this will be picked up by the next run.
+     * Every query with a changed column has a watermark of its own.
+     *
+     * @param table
+     *            - name of table in properties file
+     * @throws SQLException
+     *             if there is a database problem.
+     */
+    private void advanceWatermark(String table) throws SQLException {
+        if (previousMarks == null) {
+            return;
+        }
+        for (ExportPlan.Query planned : plan.getTable(table).queries) {
+            if (planned.changedColumn != null) {
+                advanceWatermark(watermarkKey(table, planned), planned);
+            }
+        }
+    }
+
+    /**
+     * The name of the watermark of a query. The first query of a table has
+     * the watermark of the table, the others are named after their property.
+     *
+     * @param table
+     *            - name of table in properties file
+     * @param planned
+     *            - the query
+     * @return the name in the watermarks
+     */
+    private String watermarkKey(String table, ExportPlan.Query planned) {
+        return planned == plan.getTable(table).getFirstQuery() ? table : planned.key;
+    }
+
+    /**
+     * Find the highest value of the changed column of a query.
+     *
+     * @param mark
+     *            - name of the watermark
+     * @param planned
+     *            - the query
+     * @throws SQLException
+     *             if there is a database problem.
+     */
+    private void advanceWatermark(String mark, ExportPlan.Query planned) throws SQLException {
+        Statement stmt = null;
+        ResultSet rs = null;
+        try {
+            stmt = con.createStatement();
+            rs = stmt.executeQuery(injectKeyBounds(planned.sql, planned.changedColumn));
+            if (!rs.next()) {
+                return;
+            }
+            String type;
+            String value;
+            switch (rs.getMetaData().getColumnType(2)) {
+            case Types.TIMESTAMP:
+            case Types.TIMESTAMP_WITH_TIMEZONE:
+                type = "timestamp";
+                java.sql.Timestamp timestamp = rs.getTimestamp(2);
+                value = timestamp == null ? null : timestamp.toString();
+                break;
+            case Types.DATE:
+                type = "date";
+                java.sql.Date date = rs.getDate(2);
+                value = date == null ? null : date.toString();
+                break;
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                type = "number";
+                java.math.BigDecimal number = rs.getBigDecimal(2);
+                value = number == null ? null : number.toPlainString();
+                break;
+            default:
+                type = "string";
+                value = rs.getString(2);
+            }
+            if (value != null) {
+                nextMarks.setProperty(mark, value);
+                nextMarks.setProperty(mark.concat(".type"), type);
+            }
+        } finally {
+            closeIgnoringExceptions(rs);
+            closeIgnoringExceptions(stmt);
+        }
+    }
+
+    /**
+     * Create the condition that selects the rows of a query changed since
+     * the previous run and up to the watermark of this run. The first run
+     * exports all rows, including those where the column is NULL. A query
+     * without a changed column exports all its rows every time.
+     *
+     * @param table
+     *            - name of table in properties file
+     * @param planned
+     *            - the query
+     * @return the condition or null if all rows are to be exported
+     */
+    private String changedCondition(String table, ExportPlan.Query planned) {
+        String column = planned.changedColumn;
+        if (previousMarks == null || column == null) {
+            return null;
+        }
+        String mark = watermarkKey(table, planned);
+        if (previousMarks.getProperty(mark) == null) {
+            return null;
+        }
+        return column + " > " + watermarkLiteral(previousMarks, mark) + " AND " + column + " <= "
+                + watermarkLiteral(nextMarks, mark);
+    }
+
+    /**
+     * Write a watermark as an SQL literal.
+     *
+     * @param marks
+     *            - the watermarks
+     * @param table
+     *            - name of the watermark: the table or the query property
+     * @return the literal
+     */
+    static String watermarkLiteral(Properties marks, String table) {
+        String value = marks.getProperty(table);
+        String type = marks.getProperty(table.concat(".type"), "string");
+        if ("timestamp".equals(type)) {
+            return "TIMESTAMP '" + java.sql.Timestamp.valueOf(value) + "'";
+        } else if ("date".equals(type)) {
+            return "DATE '" + java.sql.Date.valueOf(value) + "'";
+        } else if ("number".equals(type)) {
+            return new java.math.BigDecimal(value).toPlainString();
+        }
+        return "'" + value.replace("'", "''") + "'";
+    }
+
+    /**
+     * Restrict a query to a key range.
+     *
+     * @param query
+     *            - SQL query to patch
+     * @param range
+     *            - the rows we want
+     * @param column
+     *            - the key column to apply the range to
+     * @return patched SQL query
+     */
+    private String injectRange(String query, KeyRange range, String column) {
+        if (column == null) {
+            throw new IllegalArgumentException("No key column to partition query on: " + query);
+        }
+        String condition = range.condition(column);
+        return condition == null ? query : injectCondition(query, condition);
+    }
+
+    /**
+     * Set up the vocabulary of a table and write the RDF header if it
+     * hasn't been written yet.
+     *
+     * @param table
+     *            - name of table in properties file
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    private void beginTable(String table) throws IOException {
+        if (shards != null) {
+            openShard(table, table);
+            return;
+        }
+        setTableVocabulary(table);
+        if (!segmentOnly) {
+            writeRdfHeader();
+        }
+    }
+
+    /**
+     * Set the vocabulary of a table.
+     *
+     * @param table
+     *            - name of table in properties file
+     */
+    private void setTableVocabulary(String table) {
+        String voc = plan.getTable(table).vocabulary;
+        if (voc != null) {
+            resourceWriter.setVocabulary(voc);
+        } else {
+            resourceWriter.setVocabulary(plan.getProperty("vocabulary"));
+        }
+    }
+
+    /**
+     * Write the export as shards instead of one document. Every table gets
+     * its own shards, and the document information is written to a shard
+     * of its own.
+     *
+     * @param shards
+     *            - the directory of shards
+     */
+    void setShards(ShardedOutput shards) {
+        if (resourceWriter instanceof ResourceWriterTee) {
+            throw new IllegalStateException("Sharded output can't have several formats");
+        }
+        this.shards = shards;
+    }
+
+    /**
+     * Finish the current shard and start a new one with its own RDF
+     * header.
+     *
+     * @param table
+     *            - name of table in properties file, or null for the
+     *            document information
+     * @param name
+     *            - the start of the file name
+     * @throws IOException
+     *             - if the shard can't be written
+     */
+    private void openShard(String table, String name) throws IOException {
+        endShard();
+        shard = shards.open(table, name);
+        shardSink = new OutputSink(shard.getStream());
+        retiredTriples += resourceWriter.getTripleCount();
+        retiredBytes += resourceWriter.getBytesWritten();
+        resourceWriter = createResourceWriter(shardSink, resourceWriter);
+        shardTable = table;
+        shardName = name;
+        if (table != null) {
+            setTableVocabulary(table);
+        }
+        resourceWriter.writeRdfHeader();
+    }
+
+    /**
+     * Write the RDF footer of the current shard and close it.
+     *
+     * @throws IOException
+     *             - if the shard can't be written
+     */
+    void endShard() throws IOException {
+        if (shard == null) {
+            return;
+        }
+        ShardedOutput.Shard done = shard;
+        shard = null;
+        resourceWriter.writeRdfFooter();
+        shards.close(done, resourceWriter.getTripleCount());
+    }
+
+    /**
+     * Write the RDF header if it hasn't been written yet. When an export is
+     * resumed, the header is already in the output, so it is only marked
+     * as written.
+     *
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    private void writeRdfHeader() throws IOException {
+        if (checkpoint == null || !checkpoint.isResumed()) {
+            resourceWriter.writeRdfHeader();
+            return;
+        }
+        OutputSink direct = resourceWriter.redirect(new OutputSink(OutputStream.nullOutputStream()));
+        try {
+            resourceWriter.writeRdfHeader();
+        } finally {
+            resourceWriter.redirect(direct);
+        }
+    }
+
+    /**
+     * Check if a table is in the output from a run that was stopped.
+     *
+     * @param table
+     *            - name of table in properties file
+     * @return true if the table must be skipped
+     */
+    private boolean isDone(String table) {
+        return checkpoint != null && checkpoint.isDone(table);
+    }
+
+    /**
+     * Cut the output back to the start of a table if a parallel run that
+     * was stopped finished some of its key ranges. A sequential export
+     * writes the whole table, so the ranges would otherwise be there twice.
+     *
+     * @param table
+     *            - name of table in properties file
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    private void rewindRanges(String table) throws IOException {
+        if (checkpoint != null && !checkpoint.getRanges(table).isEmpty()) {
+            flush();
+            checkpoint.rewind(table);
+        }
+    }
+
+    /**
+     * Record in the checkpoint journal that a table is in the output.
+     *
+     * @param table
+     *            - name of table in properties file
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    private void tableDone(String table) throws IOException {
+        if (checkpoint != null) {
+            flush();
+            checkpoint.tableDone(table);
+        }
+    }
+
+    /**
+     * The names of key ranges as they are recorded in the checkpoint journal.
+     *
+     * @param ranges
+     *            - the ranges
+     * @return the names
+     */
+    private static List<String> rangeNames(List<KeyRange> ranges) {
+        List<String> names = new ArrayList<String>(ranges.size());
+        for (KeyRange range : ranges) {
+            names.add(range.toString());
+        }
+        return names;
+    }
+
+    /**
+     * Make the export resumable. The finished tables and key ranges are
+     * recorded in the checkpoint, and those already finished by an earlier
+     * run are skipped.
+     *
+     * @param checkpoint
+     *            - the journal of the output
+     */
+    void setCheckpoint(Checkpoint checkpoint) {
+        if (resourceWriter instanceof ResourceWriterTee) {
+            throw new IllegalStateException("An export with several formats can't be resumed");
+        }
+        if ("jsonld".equals(format)) {
+            // Whether the output has resources that need a comma after them isn't in the journal.
+            throw new IllegalStateException("A JSON-LD export can't be resumed");
+        }
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * Copy a segment written by a worker to the output.
+     *
+     * @param segment
+     *            - file holding UTF-8 encoded resources
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    void appendSegment(File segment) throws IOException {
+        InputStream in = new FileInputStream(segment);
+        try {
+            resourceWriter.output(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Flush the output.
+     *
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    void flush() throws IOException {
+        resourceWriter.flush();
+    }
+
+    /**
+     * Looks for 'class' and 'query' properties from the rdf properties file
+     * like this.
+     *
+     * <pre>
+     *  class = bibo:Document
+     *  query = SELECT NULL AS 'id', \
+     *    'GEMET RDF file' AS 'rdfs:label', \
+     *    'Søren Roug' AS 'dcterms:creator', \
+     * 'http://creativecommons.org/licenses/by/2.5/dk/' AS 'dcterms:licence-&gt;'
+     *
+     * </pre>
+     * When found, {@code &lt;bibo:Document rdf:about=""&gt;} section with given
+     * properties will be exported.
+     * @throws IOException
+     *             - if the output is not open.
+     * @throws SQLException
+     *             if there is a database problem.
+     */
+    public void exportDocumentInformation() throws IOException, SQLException {
+        if (shards != null) {
+            if (plan.getProperty("query") == null && plan.getProperty("attributetable") == null) {
+                return;
+            }
+            openShard(null, DOCUMENT_SHARD);
+        }
+        detectChanges = false;
+        try {
+            writeDocumentInformation();
+        } finally {
+            detectChanges = true;
         }
     }
 
     /**
-     * Looks for 'class' and 'query' properties from the rdf properties file
-     * like this.
-     *
-     * <pre>
-     *  class = bibo:Document
-     *  query = SELECT NULL AS 'id', \
-     *    'GEMET RDF file' AS 'rdfs:label', \
-     *    'Søren Roug' AS 'dcterms:creator', \
-     * 'http://creativecommons.org/licenses/by/2.5/dk/' AS 'dcterms:licence-&gt;'
+     * Write the resources of the document information.
      *
-     * </pre>
-     * When found, {@code &lt;bibo:Document rdf:about=""&gt;} section with given
-     * properties will be exported.
      * @throws IOException
      *             - if the output is not open.
      * @throws SQLException
      *             if there is a database problem.
      */
-    public void exportDocumentInformation() throws IOException, SQLException {
-        String rdfClass = props.getProperty("class", "rdf:Description");
+    private void writeDocumentInformation() throws IOException, SQLException {
+        String rdfClass = plan.getProperty("class", "rdf:Description");
 
-        String queryTable = props.getProperty("query");
+        String queryTable = plan.getProperty("query");
         if (queryTable != null) {
-            resourceWriter.writeRdfHeader();
-            runQuery("", queryTable, rdfClass);
+            writeRdfHeader();
+            runQuery("", "query", queryTable, null, rdfClass);
             rdfClass = "rdf:Description"; // Any further declaration must be anonymous
         }
-        String attributesTable = props.getProperty("attributetable");
+        String attributesTable = plan.getProperty("attributetable");
         if (attributesTable != null) {
-            resourceWriter.writeRdfHeader();
-            runAttributes("", attributesTable, rdfClass);
+            writeRdfHeader();
+            runAttributes("", "attributetable", attributesTable, null, rdfClass);
             rdfClass = "rdf:Description"; // Any further declaration must be anonymous
         }
     }
 
 
     /**
-     * Add name of property to table of object properties.
+     * Only write the resources that are new or have changed since the
+     * previous run. The digest of every resource is compared with the
+     * digest in the index.
      *
-     * @param name
-     *            - name of column.
-     * @param reference
-     *            - will always start with '-&gt;'.
+     * @param index
+     *            - the index of the digests. It is created if it doesn't
+     *            exist.
+     * @throws IOException
+     *             - if the index can't be read
+     */
+    public void setDigestIndex(File index) throws IOException {
+        digests = new ResourceDigests(index);
+    }
+
+    /**
+     * Write the subjects of the resources that have gone since the previous
+     * run, and replace the index with the digests of this run. Must only be
+     * called when the export has completed.
+     *
+     * @param deletions
+     *            - the file to write the deleted subjects to, one per line
+     * @throws IOException
+     *             - if the files can't be written
+     */
+    public void commitDigests(File deletions) throws IOException {
+        commitDigests(deletions, true);
+    }
+
+    /**
+     * Replace the index with the digests of this run. If the run exported
+     * only some of the tables or rows, no subjects are written as deleted,
+     * and the digests of the resources not exported are kept.
+     *
+     * @param deletions
+     *            - the file to write the deleted subjects to, one per line
+     * @param complete
+     *            - true if all rows of all tables were exported
+     * @throws IOException
+     *             - if the files can't be written
+     */
+    public void commitDigests(File deletions, boolean complete) throws IOException {
+        digests.commit(deletions, complete);
+        digests = null;
+    }
+
+    /**
+     * Start writing a resource. When changes are detected, the resource is
+     * written to a buffer until it is complete.
+     *
+     * @param rdfClass
+     *            - the class to assign or rdf:Description
+     * @param segment
+     *            - the namespace of the table
+     * @param id
+     *            - the key of the resource
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    private void startResource(String rdfClass, String segment, String id) throws IOException {
+        if (shard != null) {
+            if (shard.isFull(shardSink.buffered())) {
+                openShard(shardTable, shardName);
+            }
+            shard.resourceStarted();
+        }
+        if (digests != null && detectChanges) {
+            if (bufferSink == null) {
+                resourceBuffer = new ResourceBuffer();
+                bufferSink = new OutputSink(resourceBuffer);
+            }
+            resourceBuffer.reset();
+            directSink = resourceWriter.redirect(bufferSink);
+            StringBuilder subject = new StringBuilder(resourceWriter.baseurl == null ? "#" : resourceWriter.baseurl);
+            subject.append(segment);
+            if (id != null) {
+                subject.append('/').append(StringEncoder.encodeToIRI(id));
+            }
+            bufferedSubject = subject.toString();
+        }
+        resourceWriter.writeStartResource(rdfClass, segment, id);
+    }
+
+    /**
+     * Finish writing a resource. A buffered resource is written if it is
+     * new or has changed.
+     *
+     * @param rdfClass
+     *            - the class to assign or rdf:Description
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    private void endResource(String rdfClass) throws IOException {
+        resourceWriter.writeEndResource(rdfClass);
+        if (directSink != null) {
+            resourceWriter.redirect(directSink);
+            directSink = null;
+            bufferSink.flush();
+            byte[] bytes = resourceBuffer.bytes();
+            int length = resourceBuffer.size();
+            if (digests.changed(bufferedSubject, ResourceDigests.hash(bytes, 0, length))) {
+                resourceWriter.outputResource(bytes, 0, length);
+            }
+        }
+    }
+
+    /**
+     * A byte array output stream that lets the bytes be read without a copy.
      */
-    private void addObjectProperty(String name, String reference) {
-        objectProperties.put(name, reference);
+    private static class ResourceBuffer extends ByteArrayOutputStream {
+        /**
+         * The bytes written so far, followed by unused space.
+         *
+         * @return the buffer
+         */
+        byte[] bytes() {
+            return buf;
+        }
     }
 
     /**
@@ -349,8 +1512,12 @@ public class GenerateRDF {
      *
      * @param segment
      *            - the namespace of the table
+     * @param queryKey
+     *            - name of the query in properties file
      * @param sql
      *            - the query to run.
+     * @param parameters
+     *            - the identifiers to bind to the placeholders or null
      * @param rdfClass
      *            - the class to assign or rdf:Description
      * @throws SQLException
@@ -358,55 +1525,90 @@ public class GenerateRDF {
      * @throws IOException
      *             - if the output is not open.
      */
-    private void runQuery(String segment, String sql, String rdfClass) throws SQLException, IOException {
+    private void runQuery(String segment, String queryKey, String sql, List<String> parameters, String rdfClass)
+            throws SQLException, IOException {
 
         ResultSet rs = null;
         Statement stmt = null;
         String currentId = "/..";
         Integer currentRow = 0;
         Boolean firstTime = true;
+        QueryMetrics.Probe probe = probe(segment, queryKey);
+        // A pipeline reads the rows in a thread of its own and makes the batch events there.
+        ExportEvents.Query event = new ExportEvents.Query(segment, queryKey, pipelineBatch > 0 ? 0 : FETCH_SIZE);
 
         try {
-            stmt = con.createStatement();
-            stmt.setFetchSize(FETCH_SIZE);
-            if (stmt.execute(sql)) {
-
-                rs = stmt.getResultSet();
+            stmt = execute(sql, parameters);
+            rs = stmt.getResultSet();
+            if (rs != null) {
 
                 ResultSetMetaData rsmd = rs.getMetaData();
-                queryStruct(rsmd);
+                RDFField[] names = queryStruct(rsmd);
 
                 int numcols = rsmd.getColumnCount();
 
-                while (rs.next()) {
+                RowCursor rows;
+                if (pipelineBatch > 0 && !RowPipeline.hasLobs(rsmd)) {
+                    rows = new RowPipeline(rs, names, pipelineBatch, pipelineDepth, segment, queryKey);
+                } else {
+                    // LOBs are streamed, so they are not buffered in a pipeline.
+                    if (pipelineBatch > 0) {
+                        event.countBatches(FETCH_SIZE);
+                    }
+                    rows = new RowCursor.Direct(rs, names);
+                }
+                try {
+                    while (rows.next()) {
+                        event.rowRead();
+                        if (probe != null) {
+                            probe.fetched(true);
+                        }
 
-                    currentRow += 1;
+                        currentRow += 1;
 
-                    String id = rs.getString(1);
-                    if (id != null && id.equals("@")) {
-                        id = currentRow.toString();
-                    }
+                        String id = rows.getId();
+                        if (id != null && id.equals("@")) {
+                            id = currentRow.toString();
+                        }
 
-                    if (currentId != null && !currentId.equals(id)) {
-                        if (!firstTime) {
-                            resourceWriter.writeEndResource(rdfClass);
+                        if (currentId != null && !currentId.equals(id)) {
+                            if (!firstTime) {
+                                endResource(rdfClass);
+                            }
+                            if (probe != null) {
+                                probe.resourceStarted(getTripleCount(), getBytesWritten());
+                            }
+                            startResource(rdfClass, segment, id);
+                            currentId = id;
+                            firstTime = false;
                         }
-                        resourceWriter.writeStartResource(rdfClass, segment, id);
-                        currentId = id;
-                        firstTime = false;
-                    }
 
-                    for (int i = 2; i <= numcols; i++) {
-                        resourceWriter.writeProperty(names[i], rs.getObject(i));
+                        for (int i = 2; i <= numcols; i++) {
+                            resourceWriter.writeProperty(names[i], rows.getValue(i));
+                        }
+                        if (probe != null) {
+                            probe.written();
+                        }
+                    }
+                    if (probe != null) {
+                        probe.fetched(false);
                     }
+                } finally {
+                    rows.close();
                 }
                 if (!firstTime) {
-                    resourceWriter.writeEndResource(rdfClass);
+                    endResource(rdfClass);
                 }
             }
         } finally {
             closeIgnoringExceptions(rs);
-            closeIgnoringExceptions(stmt);
+            if (parameters == null) {
+                closeIgnoringExceptions(stmt);
+            }
+            if (probe != null) {
+                probe.update(getTripleCount(), getBytesWritten());
+            }
+            event.done();
         }
     }
 
@@ -419,8 +1621,12 @@ public class GenerateRDF {
      *
      * @param segment
      *            - the namespace of the table
+     * @param queryKey
+     *            - name of the query in properties file
      * @param sql
      *            - the query
+     * @param parameters
+     *            - the identifiers to bind to the placeholders or null
      * @param rdfClass
      *            - the class to assign or rdf:Description
      * @throws SQLException
@@ -428,29 +1634,33 @@ public class GenerateRDF {
      * @throws IOException
      *             - if the output is not open.
      */
-    private void runAttributes(String segment, String sql, String rdfClass) throws SQLException, IOException {
+    private void runAttributes(String segment, String queryKey, String sql, List<String> parameters,
+            String rdfClass) throws SQLException, IOException {
 
         ResultSet rs = null;
         Statement stmt = null;
         String currentId = "/..";
         Integer currentRow = 0;
         Boolean firstTime = true;
+        QueryMetrics.Probe probe = probe(segment, queryKey);
+        ExportEvents.Query event = new ExportEvents.Query(segment, queryKey, FETCH_SIZE);
 
         try {
-            stmt = con.createStatement();
-            stmt.setFetchSize(FETCH_SIZE);
-
-            if (stmt.execute(sql)) {
-                rs = stmt.getResultSet();
+            stmt = execute(sql, parameters);
+            rs = stmt.getResultSet();
+            if (rs != null) {
 
                 ResultSetMetaData rsmd = rs.getMetaData();
                 int numcols = rsmd.getColumnCount();
 
                 while (rs.next()) {
+                    event.rowRead();
+                    if (probe != null) {
+                        probe.fetched(true);
+                    }
 
                     currentRow += 1;
 
-                    RDFField property = new RDFField();
                     String id = rs.getString(1);
                     if (id != null && id.equals("@")) {
                         id = currentRow.toString();
@@ -458,39 +1668,469 @@ public class GenerateRDF {
 
                     if (currentId != null && !currentId.equals(id)) {
                         if (!firstTime) {
-                            resourceWriter.writeEndResource(rdfClass);
+                            endResource(rdfClass);
+                        }
+                        if (probe != null) {
+                            probe.resourceStarted(getTripleCount(), getBytesWritten());
                         }
-                        resourceWriter.writeStartResource(rdfClass, segment, id);
+                        startResource(rdfClass, segment, id);
                         currentId = id;
                         firstTime = false;
                     }
 
-                    for (int b = 2; b < numcols; b += 4) {
-                        property.name = rs.getObject(b + 0).toString();
-                        if (rs.getObject(b + 2) == null) {
-                            if (objectProperties.containsKey(property.name)) {
-                                property.datatype = objectProperties.get(property.name);
-                            } else {
-                                property.datatype = "";
-                            }
-                        } else {
-                            property.datatype = rs.getObject(b + 2).toString();
+                    writeAttributes(rs, numcols);
+                    if (probe != null) {
+                        probe.written();
+                    }
+                }
+                if (probe != null) {
+                    probe.fetched(false);
+                }
+                if (!firstTime) {
+                    endResource(rdfClass);
+                }
+            }
+        } finally {
+            GenerateRDF.closeIgnoringExceptions(rs);
+            if (parameters == null) {
+                GenerateRDF.closeIgnoringExceptions(stmt);
+            }
+            if (probe != null) {
+                probe.update(getTripleCount(), getBytesWritten());
+            }
+            event.done();
+        }
+    }
+
+    /**
+     * Write the properties of a row from a plain query.
+     *
+     * @param rs
+     *            - the result set positioned on the row
+     * @param names
+     *            - names, types and langcodes of the columns
+     * @param numcols
+     *            - number of columns
+     * @throws SQLException
+     *             - if the SQL database is not available
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    private void writeColumns(ResultSet rs, RDFField[] names, int numcols) throws SQLException, IOException {
+        for (int i = 2; i <= numcols; i++) {
+            resourceWriter.writeProperty(names[i], names[i].reader.read(rs, i));
+        }
+    }
+
+    /**
+     * Write the properties of a row from an attributes table.
+     *
+     * @param rs
+     *            - the result set positioned on the row
+     * @param numcols
+     *            - number of columns
+     * @throws SQLException
+     *             - if the SQL database is not available
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    private void writeAttributes(ResultSet rs, int numcols) throws SQLException, IOException {
+        RDFField property = new RDFField();
+        for (int b = 2; b < numcols; b += 4) {
+            property.name = rs.getObject(b + 0).toString();
+            if (rs.getObject(b + 2) == null) {
+                if (objectProperties.containsKey(property.name)) {
+                    property.datatype = objectProperties.get(property.name);
+                } else {
+                    property.datatype = "";
+                }
+            } else {
+                property.datatype = rs.getObject(b + 2).toString();
+            }
+            if (rs.getObject(b + 3) != null) {
+                property.langcode = rs.getObject(b + 3).toString();
+            } else {
+                property.langcode = "";
+            }
+            resourceWriter.writeProperty(property, rs.getObject(b + 1));
+        }
+    }
+
+    /**
+     * Run all queries of a table side by side and write each resource once.
+     * The queries must be sorted on the id. This is a merge join: only one
+     * row of each query is held at a time. Ids are compared as numbers if
+     * the id column of every query is numeric, otherwise as strings in the
+     * order of {@link String#compareTo}, which is a binary collation.
+     *
+     * @param segment
+     *            - the namespace of the table
+     * @param queryKeys
+     *            - names of the queries in properties file
+     * @param queries
+     *            - the queries to run
+     * @param parameters
+     *            - the identifiers to bind to the placeholders or null
+     * @param attributes
+     *            - for each query, true if it is an attributes table
+     * @param rdfClass
+     *            - the class to assign
+     * @throws SQLException
+     *             - if the SQL database is not available
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    private void runMerged(String segment, List<String> queryKeys, List<String> queries, List<String> parameters,
+            List<Boolean> attributes, String rdfClass) throws SQLException, IOException {
+        List<MergeCursor> cursors = new ArrayList<MergeCursor>();
+        QueryMetrics.Probe first = null;
+        boolean numeric = true;
+        try {
+            for (int q = 0; q < queries.size(); q++) {
+                MergeCursor cursor = new MergeCursor();
+                cursors.add(cursor);
+                cursor.probe = probe(segment, queryKeys.get(q));
+                cursor.event = new ExportEvents.Query(segment, queryKeys.get(q), FETCH_SIZE);
+                if (q == 0) {
+                    // Resources, triples and bytes are counted on the first query, since they are made from all of them.
+                    first = cursor.probe;
+                }
+                cursor.stmt = execute(queries.get(q), parameters);
+                cursor.rs = cursor.stmt.getResultSet();
+                if (cursor.rs == null) {
+                    throw new SQLException("The query returns no rows: " + queries.get(q));
+                }
+                ResultSetMetaData rsmd = cursor.rs.getMetaData();
+                cursor.numcols = rsmd.getColumnCount();
+                numeric &= isNumericType(rsmd.getColumnType(1));
+                if (!attributes.get(q)) {
+                    cursor.names = queryStruct(rsmd);
+                }
+                cursor.advance();
+            }
+
+            String previousId = null;
+            while (true) {
+                String id = null;
+                boolean found = false;
+                for (MergeCursor cursor : cursors) {
+                    if (!cursor.done && (!found || compareIds(cursor.id, id, numeric) < 0)) {
+                        id = cursor.id;
+                        found = true;
+                    }
+                }
+                if (!found) {
+                    break;
+                }
+                if (first != null) {
+                    first.resourceStarted(getTripleCount(), getBytesWritten());
+                }
+                startResource(rdfClass, segment, id);
+                for (MergeCursor cursor : cursors) {
+                    while (!cursor.done && compareIds(cursor.id, id, numeric) == 0) {
+                        if (cursor.probe != null) {
+                            cursor.probe.mark();
                         }
-                        if (rs.getObject(b + 3) != null) {
-                            property.langcode = rs.getObject(b + 3).toString();
+                        if (cursor.names != null) {
+                            writeColumns(cursor.rs, cursor.names, cursor.numcols);
                         } else {
-                            property.langcode = "";
+                            writeAttributes(cursor.rs, cursor.numcols);
+                        }
+                        if (cursor.probe != null) {
+                            cursor.probe.written();
                         }
-                        resourceWriter.writeProperty(property, rs.getObject(b + 1));
+                        cursor.advance();
                     }
                 }
-                if (!firstTime) {
-                    resourceWriter.writeEndResource(rdfClass);
+                endResource(rdfClass);
+                previousId = id;
+                for (MergeCursor cursor : cursors) {
+                    if (!cursor.done && compareIds(cursor.id, previousId, numeric) <= 0) {
+                        throw new IllegalStateException("The queries of " + segment
+                                + " must be sorted on id to be merged. Found " + cursor.id + " after " + previousId);
+                    }
                 }
             }
         } finally {
-            GenerateRDF.closeIgnoringExceptions(rs);
-            GenerateRDF.closeIgnoringExceptions(stmt);
+            for (MergeCursor cursor : cursors) {
+                closeIgnoringExceptions(cursor.rs);
+                if (parameters == null) {
+                    closeIgnoringExceptions(cursor.stmt);
+                }
+                cursor.event.done();
+            }
+            if (first != null) {
+                first.update(getTripleCount(), getBytesWritten());
+            }
+        }
+    }
+
+    /**
+     * Execute a query. Without parameters the query is run as a plain
+     * statement, which the caller must close. With parameters the query
+     * is prepared the first time it is seen and kept for the next lookup,
+     * so the database only has to plan it once. The statement then belongs
+     * to the generator and is closed by {@link #close()}.
+     *
+     * @param sql
+     *            - the query, with a placeholder for each parameter
+     * @param parameters
+     *            - the identifiers to bind to the placeholders or null
+     * @return the statement after execution
+     * @throws SQLException
+     *             - if the SQL database is not available
+     */
+    private Statement execute(String sql, List<String> parameters) throws SQLException {
+        if (parameters == null) {
+            Statement stmt = con.createStatement();
+            try {
+                stmt.setFetchSize(FETCH_SIZE);
+                stmt.execute(sql);
+            } catch (SQLException e) {
+                closeIgnoringExceptions(stmt);
+                throw e;
+            }
+            return stmt;
+        }
+        Lookup lookup = lookups.get(sql);
+        if (lookup == null) {
+            lookup = new Lookup(con.prepareStatement(sql), parameters.size());
+            lookups.put(sql, lookup);
+        }
+        lookup.bind(parameters);
+        lookup.stmt.execute();
+        return lookup.stmt;
+    }
+
+    /**
+     * Number of triples written so far, not counting those of the other
+     * outputs.
+     *
+     * @return the count
+     */
+    long getTripleCount() {
+        return retiredTriples + resourceWriter.getTripleCount();
+    }
+
+    /**
+     * Number of bytes written so far, not counting those of the other
+     * outputs. Output to a Writer isn't counted.
+     *
+     * @return the count
+     */
+    long getBytesWritten() {
+        return retiredBytes + resourceWriter.getBytesWritten();
+    }
+
+    /**
+     * Keep counters of the rows, resources, triples, bytes and time of
+     * every query. The workers of a parallel export add to the same
+     * counters.
+     *
+     * @param metrics
+     *            - the counters or null to stop counting
+     */
+    public void setMetrics(ExportMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Close the statements kept for record lookups, and drop the digests
+     * if they haven't been committed. The connection is not closed. The generator can still be used afterwards, but the
+     * statements will have to be prepared again.
+     */
+    public void close() {
+        for (Lookup lookup : lookups.values()) {
+            closeIgnoringExceptions(lookup.stmt);
+        }
+        lookups.clear();
+        if (shard != null) {
+            closeIgnoringExceptions(shard.getStream());
+            shard = null;
+        }
+        // The digests of a worker belong to the generator it was made from.
+        if (digests != null && !segmentOnly) {
+            digests.close();
+            digests = null;
+        }
+    }
+
+    /**
+     * A prepared query that selects records by their identifiers. There is
+     * one placeholder for each identifier.
+     */
+    private static class Lookup {
+        /** The statement. */
+        PreparedStatement stmt;
+        /** SQL types of the placeholders. */
+        int[] types;
+
+        /**
+         * Constructor. The types of the placeholders are asked for once, so
+         * numeric keys can be bound as numbers and the database can use
+         * the index. If the driver doesn't know, the identifiers are bound
+         * as strings.
+         *
+         * @param stmt
+         *            - the prepared query
+         * @param count
+         *            - the number of placeholders
+         * @throws SQLException
+         *             - if the SQL database is not available
+         */
+        Lookup(PreparedStatement stmt, int count) throws SQLException {
+            this.stmt = stmt;
+            stmt.setFetchSize(FETCH_SIZE);
+            types = new int[count];
+            Arrays.fill(types, Types.VARCHAR);
+            ParameterMetaData pmd;
+            try {
+                pmd = stmt.getParameterMetaData();
+            } catch (SQLException e) {
+                return;
+            }
+            for (int i = 0; i < count; i++) {
+                try {
+                    types[i] = pmd.getParameterType(i + 1);
+                } catch (SQLException e) {
+                    types[i] = Types.VARCHAR;
+                }
+            }
+        }
+
+        /**
+         * Bind the identifiers to the placeholders.
+         *
+         * @param identifiers
+         *            - primary keys of the records we want
+         * @throws SQLException
+         *             - if the SQL database is not available
+         */
+        void bind(List<String> identifiers) throws SQLException {
+            for (int i = 0; i < types.length; i++) {
+                String identifier = identifiers.get(i);
+                switch (types[i]) {
+                case Types.TINYINT:
+                case Types.SMALLINT:
+                case Types.INTEGER:
+                case Types.BIGINT:
+                    if (isInteger(identifier) && identifier.length() < 19) {
+                        stmt.setLong(i + 1, Long.parseLong(identifier));
+                        break;
+                    }
+                    stmt.setString(i + 1, identifier);
+                    break;
+                default:
+                    stmt.setString(i + 1, identifier);
+                }
+            }
+        }
+    }
+
+    /**
+     * Compare two ids in the order a database sorts them. NULL comes first.
+     * Text is compared character by character, as a database with a binary
+     * collation does, so "10" comes before "9" and "007" before "1".
+     *
+     * @param a - first id
+     * @param b - second id
+     * @param numeric - true if the ids come from a numeric column
+     * @return negative, zero or positive like {@link Comparable#compareTo}
+     */
+    static int compareIds(String a, String b, boolean numeric) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        if (!numeric) {
+            return a.compareTo(b);
+        }
+        if (isInteger(a) && isInteger(b) && a.length() < 19 && b.length() < 19) {
+            return Long.compare(Long.parseLong(a), Long.parseLong(b));
+        }
+        return new java.math.BigDecimal(a).compareTo(new java.math.BigDecimal(b));
+    }
+
+    /**
+     * Check if a JDBC type holds numbers.
+     *
+     * @param sqlType - the type from {@link java.sql.Types}
+     * @return true for the integer and decimal types
+     */
+    private static boolean isNumericType(int sqlType) {
+        switch (sqlType) {
+        case Types.TINYINT:
+        case Types.SMALLINT:
+        case Types.INTEGER:
+        case Types.BIGINT:
+        case Types.DECIMAL:
+        case Types.NUMERIC:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Check if an id consists of digits with an optional minus sign.
+     *
+     * @param s - the id
+     * @return true if it is an integer
+     */
+    private static boolean isInteger(String s) {
+        int start = s.startsWith("-") ? 1 : 0;
+        if (s.length() == start) {
+            return false;
+        }
+        for (int i = start; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * One of the result sets in a merge join.
+     */
+    private static class MergeCursor {
+        /** The statement. */
+        Statement stmt;
+        /** The result set. */
+        ResultSet rs;
+        /** Column definitions for a plain query. Null for an attributes table. */
+        RDFField[] names;
+        /** Number of columns. */
+        int numcols;
+        /** Id of the current row. */
+        String id;
+        /** True when there are no more rows. */
+        boolean done;
+        /** Where to count the rows, or null. */
+        QueryMetrics.Probe probe;
+        /** The flight recorder event of the query. */
+        ExportEvents.Query event;
+
+        /**
+         * Move to the next row.
+         *
+         * @throws SQLException
+         *             - if the SQL database is not available
+         */
+        void advance() throws SQLException {
+            done = !rs.next();
+            if (!done) {
+                event.rowRead();
+            }
+            if (probe != null) {
+                probe.fetched(!done);
+            }
+            if (!done) {
+                id = rs.getString(1);
+                if ("@".equals(id)) {
+                    throw new IllegalArgumentException("Rows numbered with '@' can't be merged");
+                }
+            }
         }
     }
 
@@ -508,6 +2148,18 @@ public class GenerateRDF {
         }
     }
 
+    /**
+     * Close a stream.
+     * @param out - stream
+     */
+    private static void closeIgnoringExceptions(OutputStream out) {
+        try {
+            out.close();
+        } catch (Exception e) {
+            // Deliberately ignore.
+        }
+    }
+
     /**
      * Close statement.
      * @param stmt - statement
@@ -529,29 +2181,50 @@ public class GenerateRDF {
      *
      * @param rsmd
      *            - metadata extracted from database.
+     * @return names, types and langcodes of the columns
      * @throws SQLException
      *             - if the SQL database is not available
      */
-    private void queryStruct(ResultSetMetaData rsmd) throws SQLException {
+    private RDFField[] queryStruct(ResultSetMetaData rsmd) throws SQLException {
         Integer dbDatatype;
         String rdfDatatype = "";
         int numcols = rsmd.getColumnCount();
 
-        this.names = new RDFField[numcols + 1];
+        RDFField[] names = new RDFField[numcols + 1];
 
         for (int i = 1; i <= numcols; i++) {
             dbDatatype = rsmd.getColumnType(i);
-            //rdfDatatype = datatypeMap.get(dbDatatype);
-            rdfDatatype = Datatypes.getRDFType(dbDatatype);
+            rdfDatatype = datatypeMap.get(dbDatatype);
             if (rdfDatatype == null) {
                 rdfDatatype = "";
             }
+            if ("".equals(rdfDatatype) && isBinaryType(dbDatatype)) {
+                if ("base64".equals(resourceWriter.blobEncoding)) {
+                    rdfDatatype = "xsd:base64Binary";
+                } else if ("hex".equals(resourceWriter.blobEncoding)) {
+                    rdfDatatype = "xsd:hexBinary";
+                }
+            }
             String columnLabel = rsmd.getColumnLabel(i);
             if (objectProperties.containsKey(columnLabel)) {
                 rdfDatatype = objectProperties.get(columnLabel).toString();
             }
             names[i] = parseName(columnLabel, rdfDatatype);
+            names[i].reader = ColumnReader.forColumn(rsmd, i);
         }
+        return names;
+    }
+
+    /**
+     * Check if a JDBC type holds bytes.
+     *
+     * @param sqlType
+     *            - the type from the metadata
+     * @return true for BLOB and the binary types
+     */
+    private static boolean isBinaryType(int sqlType) {
+        return sqlType == Types.BLOB || sqlType == Types.BINARY || sqlType == Types.VARBINARY
+                || sqlType == Types.LONGVARBINARY;
     }
 
     /**
@@ -606,6 +2279,11 @@ public class GenerateRDF {
      *             - if the output is not open.
      */
     public void writeRdfFooter() throws IOException {
+        if (shards != null) {
+            endShard();
+            return;
+        }
+        writeRdfHeader();
         resourceWriter.writeRdfFooter();
     }
 }
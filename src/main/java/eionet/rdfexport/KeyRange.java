@@ -0,0 +1,103 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is RDFExport 1.0
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev or Zero Technologies are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Søren Roug, EEA
+ */
+package eionet.rdfexport;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A range of values of a numeric key column. The ranges made by
+ * {@link #split(long, long, int)} are disjoint and together cover every
+ * row, including rows outside the bounds and rows where the key is NULL.
+ */
+class KeyRange {
+
+    /** Lowest key in the range. Null if the range is open downwards. */
+    private Long lower;
+
+    /** First key after the range. Null if the range is open upwards. */
+    private Long upper;
+
+    /**
+     * Constructor.
+     *
+     * @param lower - inclusive lower bound or null
+     * @param upper - exclusive upper bound or null
+     */
+    KeyRange(Long lower, Long upper) {
+        this.lower = lower;
+        this.upper = upper;
+    }
+
+    /**
+     * Split the keys between min and max into ranges of about equal width.
+     * The first range is open downwards and the last range is open upwards.
+     *
+     * @param min - smallest key in the table
+     * @param max - largest key in the table
+     * @param parts - the wanted number of ranges
+     * @return list of at most <code>parts</code> ranges in key order
+     */
+    static List<KeyRange> split(long min, long max, int parts) {
+        List<KeyRange> ranges = new ArrayList<KeyRange>();
+        BigInteger span = BigInteger.valueOf(max).subtract(BigInteger.valueOf(min)).add(BigInteger.ONE);
+        BigInteger[] step = span.divideAndRemainder(BigInteger.valueOf(parts));
+        // Round up so there are never more than 'parts' ranges.
+        BigInteger width = step[1].signum() == 0 ? step[0] : step[0].add(BigInteger.ONE);
+        Long previous = null;
+        BigInteger boundary = BigInteger.valueOf(min);
+        for (int i = 1; i < parts; i++) {
+            boundary = boundary.add(width);
+            if (boundary.compareTo(BigInteger.valueOf(max)) > 0) {
+                break;
+            }
+            Long next = boundary.longValue();
+            ranges.add(new KeyRange(previous, next));
+            previous = next;
+        }
+        ranges.add(new KeyRange(previous, null));
+        return ranges;
+    }
+
+    /**
+     * Create the SQL condition that selects the range.
+     *
+     * @param column - the key column
+     * @return the condition or null if the range covers everything
+     */
+    String condition(String column) {
+        if (lower == null && upper == null) {
+            return null;
+        } else if (lower == null) {
+            return "(" + column + " < " + upper + " OR " + column + " IS NULL)";
+        } else if (upper == null) {
+            return column + " >= " + lower;
+        } else {
+            return column + " >= " + lower + " AND " + column + " < " + upper;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "[" + (lower == null ? "" : lower) + "," + (upper == null ? "" : upper) + ")";
+    }
+}
@@ -0,0 +1,460 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is RDFExport 1.0
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev or Zero Technologies are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Søren Roug, EEA
+ */
+package eionet.rdfexport;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The place the resource writers send their output. Text is encoded to
+ * UTF-8 straight into a large byte buffer, which is written to the stream
+ * in big blocks. Markup that never changes can be encoded once with
+ * {@link #ascii(String)} and written as bytes.
+ * <p>
+ * If the caller hands over a Writer instead of a stream, the text is passed
+ * on to the Writer, which then does the encoding.
+ */
+class OutputSink {
+
+    /** Size of the byte buffer. */
+    static final int BUFFER_SIZE = 65536;
+
+    /** Digits for hexadecimal output. */
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    /** The stream to write to, or null if writing to a Writer. */
+    private OutputStream stream;
+
+    /** The Writer to write to, or null if writing to a stream. */
+    private Writer writer;
+
+    /** Bytes not yet written to the stream. */
+    private byte[] buf;
+
+    /** Number of bytes used in the buffer. */
+    private int count;
+
+    /** Number of bytes written to the stream. */
+    private long written;
+
+    /**
+     * Constructor for output to a byte stream. The stream receives UTF-8.
+     *
+     * @param stream - the stream to write the output to
+     */
+    OutputSink(OutputStream stream) {
+        this.stream = stream;
+        this.buf = new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * Constructor for output to a Writer.
+     *
+     * @param writer - the writer to write the output to
+     */
+    OutputSink(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Encode a constant that contains only ASCII characters.
+     *
+     * @param s - the constant
+     * @return the bytes
+     */
+    static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Write text.
+     *
+     * @param s - the text
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    void write(CharSequence s) throws IOException {
+        write(s, 0, s.length());
+    }
+
+    /**
+     * Write part of a text.
+     *
+     * @param s - the text
+     * @param start - position of the first character to write
+     * @param len - position after the last character to write
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    void write(CharSequence s, int start, int len) throws IOException {
+        if (writer != null) {
+            writer.append(s, start, len);
+            return;
+        }
+        int i = start;
+        while (i < len) {
+            // Fast path: runs of ASCII characters, bounded by the free space in the buffer.
+            if (count == buf.length) {
+                flushBuffer();
+            }
+            int stop = Math.min(len, i + buf.length - count);
+            char c;
+            while (i < stop && (c = s.charAt(i)) < 0x80) {
+                buf[count++] = (byte) c;
+                i++;
+            }
+            if (i < stop) {
+                i = writeNonAscii(s, i, len);
+            }
+        }
+    }
+
+    /**
+     * Write text with the characters escaped that are in a table from
+     * {@link StringEncoder}. No intermediate String is made.
+     *
+     * @param s - the text
+     * @param escapes - the escape of each ASCII character, or null if it is allowed
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    void writeEscaped(CharSequence s, String[] escapes) throws IOException {
+        int len = s.length();
+        if (writer != null) {
+            int i = 0;
+            while (i < len) {
+                int next = StringEncoder.indexOfEscape(s, i, len, escapes);
+                writer.append(s, i, next);
+                if (next < len) {
+                    writer.write(escapes[s.charAt(next)]);
+                    next++;
+                }
+                i = next;
+            }
+            return;
+        }
+        int i = 0;
+        while (i < len) {
+            // Room for the longest escape or a four byte character.
+            if (buf.length - count <= 8) {
+                flushBuffer();
+            }
+            int stop = Math.min(len, i + buf.length - count - 8);
+            while (i < stop) {
+                char c = s.charAt(i);
+                if (c >= 0x80) {
+                    i = writeNonAscii(s, i, len);
+                    break;
+                }
+                String escape = escapes[c];
+                if (escape == null) {
+                    buf[count++] = (byte) c;
+                } else {
+                    for (int e = 0; e < escape.length(); e++) {
+                        buf[count++] = (byte) escape.charAt(e);
+                    }
+                    // An escape can be longer than one byte, so check the room again.
+                    i++;
+                    break;
+                }
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Write text from a Reader with escapes, one chunk at a time. Used for
+     * large values such as CLOBs, which are never held in memory at once.
+     *
+     * @param in - the text
+     * @param escapes - the escape of each ASCII character, or null if it is allowed
+     * @throws IOException
+     *             - if the output is not open or the text can't be read.
+     */
+    void writeEscaped(Reader in, String[] escapes) throws IOException {
+        char[] chars = new char[8192];
+        CharBuffer chunk = CharBuffer.wrap(chars);
+        int kept = 0;
+        int n;
+        while ((n = in.read(chars, kept, chars.length - kept)) != -1) {
+            int end = kept + n;
+            // Keep a high surrogate for the next chunk, so the pair isn't split.
+            int stop = Character.isHighSurrogate(chars[end - 1]) ? end - 1 : end;
+            if (stop > 0) {
+                chunk.limit(stop);
+                writeEscaped(chunk, escapes);
+                chunk.clear();
+            }
+            kept = end - stop;
+            if (kept > 0) {
+                chars[0] = chars[end - 1];
+            }
+        }
+        if (kept > 0) {
+            write("?");
+        }
+    }
+
+    /**
+     * Write bytes as hexadecimal digits, one chunk at a time.
+     *
+     * @param in - the bytes
+     * @throws IOException
+     *             - if the output is not open or the bytes can't be read.
+     */
+    void writeHex(InputStream in) throws IOException {
+        byte[] bytes = new byte[4096];
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        int n;
+        while ((n = in.read(bytes)) != -1) {
+            hex.setLength(0);
+            for (int i = 0; i < n; i++) {
+                hex.append(HEX_DIGITS[(bytes[i] >> 4) & 0xF]);
+                hex.append(HEX_DIGITS[bytes[i] & 0xF]);
+            }
+            write(hex);
+        }
+    }
+
+    /**
+     * Get a stream for writing ASCII bytes, such as base64, to the output.
+     * Closing it does not close the sink.
+     *
+     * @return the stream
+     */
+    OutputStream asciiStream() {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (writer != null) {
+                    for (int i = off; i < off + len; i++) {
+                        writer.write(b[i]);
+                    }
+                    return;
+                }
+                while (len > 0) {
+                    if (count == buf.length) {
+                        flushBuffer();
+                    }
+                    int n = Math.min(len, buf.length - count);
+                    System.arraycopy(b, off, buf, count, n);
+                    count += n;
+                    off += n;
+                    len -= n;
+                }
+            }
+        };
+    }
+
+    /**
+     * Write a date, time or timestamp in XSD format straight into the buffer.
+     *
+     * @param value - a java.sql.Date, Time or Timestamp
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    void writeTemporal(Object value) throws IOException {
+        if (writer != null) {
+            byte[] b = new byte[Datatypes.MAX_TEMPORAL_LENGTH];
+            int n = Datatypes.formatTemporal(value, b, 0);
+            for (int i = 0; i < n; i++) {
+                writer.write(b[i]);
+            }
+            return;
+        }
+        if (buf.length - count < Datatypes.MAX_TEMPORAL_LENGTH) {
+            flushBuffer();
+        }
+        count = Datatypes.formatTemporal(value, buf, count);
+    }
+
+    /**
+     * Write a character that is not ASCII. A surrogate pair is written as
+     * one four byte sequence. A lone surrogate can't be encoded and is
+     * written as '?', like the JDK encoder does.
+     *
+     * @param s - the text
+     * @param i - position of the character
+     * @param len - length of the text
+     * @return position of the next character
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    private int writeNonAscii(CharSequence s, int i, int len) throws IOException {
+        if (buf.length - count < 4) {
+            flushBuffer();
+        }
+        char c = s.charAt(i);
+        if (c < 0x800) {
+            buf[count++] = (byte) (0xC0 | (c >> 6));
+            buf[count++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+            int cp = Character.toCodePoint(c, s.charAt(i + 1));
+            buf[count++] = (byte) (0xF0 | (cp >> 18));
+            buf[count++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+            buf[count++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+            buf[count++] = (byte) (0x80 | (cp & 0x3F));
+            return i + 2;
+        } else if (Character.isSurrogate(c)) {
+            buf[count++] = '?';
+        } else {
+            buf[count++] = (byte) (0xE0 | (c >> 12));
+            buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            buf[count++] = (byte) (0x80 | (c & 0x3F));
+        }
+        return i + 1;
+    }
+
+    /**
+     * Write bytes that are already UTF-8 encoded.
+     *
+     * @param b - the bytes
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    void write(byte[] b) throws IOException {
+        write(b, 0, b.length);
+    }
+
+    /**
+     * Write part of an array of bytes that are already UTF-8 encoded.
+     *
+     * @param b - the bytes
+     * @param off - the first byte to write
+     * @param len - the number of bytes to write
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    void write(byte[] b, int off, int len) throws IOException {
+        if (writer != null) {
+            writer.write(new String(b, off, len, StandardCharsets.UTF_8));
+            return;
+        }
+        if (len > buf.length - count) {
+            flushBuffer();
+            if (len > buf.length) {
+                writeStream(b, off, len);
+                return;
+            }
+        }
+        System.arraycopy(b, off, buf, count, len);
+        count += len;
+    }
+
+    /**
+     * Copy UTF-8 encoded output, such as a segment written by another sink.
+     *
+     * @param in - the bytes to copy
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    void write(InputStream in) throws IOException {
+        if (writer != null) {
+            InputStreamReader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+            char[] chars = new char[8192];
+            int n;
+            while ((n = reader.read(chars)) != -1) {
+                writer.write(chars, 0, n);
+            }
+            return;
+        }
+        flushBuffer();
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            writeStream(buf, 0, n);
+        }
+    }
+
+    /**
+     * Number of bytes in the buffer that haven't been written to the stream.
+     *
+     * @return the number of bytes
+     */
+    int buffered() {
+        return count;
+    }
+
+    /**
+     * Number of bytes written so far, including those in the buffer. Output
+     * to a Writer isn't counted, since the Writer does the encoding.
+     *
+     * @return the number of bytes
+     */
+    long size() {
+        return written + count;
+    }
+
+    /**
+     * Write the buffer and flush the underlying stream or Writer.
+     *
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    void flush() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        } else {
+            flushBuffer();
+            stream.flush();
+        }
+    }
+
+    /**
+     * Write the buffered bytes to the stream.
+     *
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            writeStream(buf, 0, count);
+            count = 0;
+        }
+    }
+
+    /**
+     * Write bytes to the stream and count them.
+     *
+     * @param b - the bytes
+     * @param off - the first byte to write
+     * @param len - the number of bytes to write
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    private void writeStream(byte[] b, int off, int len) throws IOException {
+        ExportEvents.Flush event = new ExportEvents.Flush();
+        stream.write(b, off, len);
+        written += len;
+        event.done(len);
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is RDFExport 1.0
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev or Zero Technologies are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Søren Roug, EEA
+ */
+package eionet.rdfexport;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs parts of an export concurrently. Every part gets its own worker
+ * generator, a connection from the pool and a temporary file to write to.
+ * The parts are handed back to the main generator in the order they were
+ * submitted, so the final document does not depend on which part finished
+ * first.
+ */
+class ParallelExport {
+
+    /**
+     * A piece of work for a worker generator.
+     */
+    interface Part {
+        /**
+         * Export something with the worker.
+         *
+         * @param worker
+         *            - a generator writing to a temporary segment
+         * @throws SQLException
+         *             if there is a database problem.
+         * @throws IOException
+         *             - if the output is not open.
+         */
+        void export(GenerateRDF worker) throws SQLException, IOException;
+    }
+
+    /** The generator that receives the segments. */
+    private GenerateRDF target;
+
+    /** Where the workers get their connections. */
+    private ConnectionPool pool;
+
+    /** The worker threads. */
+    private ExecutorService executor;
+
+    /** Submitted parts not yet appended, in order of submission. */
+    private LinkedList<Future<File>> pending = new LinkedList<Future<File>>();
+
+    /** Temporary files not yet deleted. */
+    private List<File> segments = new ArrayList<File>();
+
+    /**
+     * Constructor.
+     *
+     * @param target
+     *            - the generator to copy configuration from and stitch into
+     * @param pool
+     *            - the connections. One thread is started per connection.
+     */
+    ParallelExport(GenerateRDF target, ConnectionPool pool) {
+        if (pool.size() == 0) {
+            throw new IllegalArgumentException("The connection pool is empty");
+        }
+        this.target = target;
+        this.pool = pool;
+        this.executor = Executors.newFixedThreadPool(pool.size());
+    }
+
+    /**
+     * Queue a part for execution.
+     *
+     * @param part
+     *            - the work to do
+     * @throws IOException
+     *             - if the temporary file can't be created
+     */
+    void submit(final Part part) throws IOException {
+        final File segment = File.createTempFile("rdfexport", ".part");
+        synchronized (segments) {
+            segments.add(segment);
+        }
+        pending.add(executor.submit(() -> {
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(segment));
+            try {
+                Connection con = pool.acquire();
+                try {
+                    GenerateRDF worker = new GenerateRDF(out, con, target);
+                    try {
+                        part.export(worker);
+                        worker.flush();
+                    } finally {
+                        worker.close();
+                    }
+                } finally {
+                    pool.release(con);
+                }
+            } finally {
+                out.close();
+            }
+            return segment;
+        }));
+    }
+
+    /**
+     * Wait for the oldest part to finish and copy its output to the target.
+     *
+     * @throws SQLException
+     *             if the part failed with a database problem.
+     * @throws IOException
+     *             - if the part failed to write or the output is not open.
+     */
+    void appendNext() throws SQLException, IOException {
+        File segment = waitFor(pending.removeFirst());
+        try {
+            target.appendSegment(segment);
+        } finally {
+            delete(segment);
+        }
+    }
+
+    /**
+     * Stop the workers and remove any segments left behind.
+     */
+    void close() {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (segments) {
+            for (File segment : segments) {
+                segment.delete();
+            }
+            segments.clear();
+        }
+    }
+
+    /**
+     * Delete a segment that has been used.
+     *
+     * @param segment
+     *            - the temporary file
+     */
+    private void delete(File segment) {
+        synchronized (segments) {
+            segments.remove(segment);
+        }
+        segment.delete();
+    }
+
+    /**
+     * Get the result of a part and unwrap the exception it failed with.
+     *
+     * @param future
+     *            - the submitted part
+     * @return the segment it wrote
+     * @throws SQLException
+     *             if the part failed with a database problem.
+     * @throws IOException
+     *             - if the part failed to write.
+     */
+    private static File waitFor(Future<File> future) throws SQLException, IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for export", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+}
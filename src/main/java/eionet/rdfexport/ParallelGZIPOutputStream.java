@@ -0,0 +1,287 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is RDFExport 1.0
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev or Zero Technologies are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Søren Roug, EEA
+ */
+package eionet.rdfexport;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip compression on several threads. The output is cut into blocks that
+ * are compressed independently, each to a gzip member of its own, and the
+ * members are written in order. A file of several members is a standard
+ * gzip file, which gunzip and GZIPInputStream read as one.
+ * <p>
+ * Since every member starts a new compression, a reader can start at any
+ * member. The offsets of the members can be written to an index of our
+ * own, laid out like a .gzi file. The members are plain gzip members of
+ * up to 1 MiB, not BGZF blocks, so bgzip and htslib can't use the index.
+ */
+class ParallelGZIPOutputStream extends OutputStream {
+
+    /** Default number of uncompressed bytes in a block. */
+    static final int BLOCK_SIZE = 1 << 20;
+
+    /** The stream to write the gzip members to. */
+    private OutputStream out;
+
+    /** The threads doing the compression. */
+    private ExecutorService executor;
+
+    /** Blocks being compressed, in order. */
+    private LinkedList<Future<byte[]>> pending = new LinkedList<Future<byte[]>>();
+
+    /** Number of blocks that can be compressed or waiting at the same time. */
+    private int maxPending;
+
+    /** Number of uncompressed bytes in a block. */
+    private int blockSize;
+
+    /** The block being filled. */
+    private byte[] buf;
+
+    /** Number of bytes in the block being filled. */
+    private int count;
+
+    /** Uncompressed sizes of the blocks in pending. */
+    private LinkedList<Integer> pendingSizes = new LinkedList<Integer>();
+
+    /** Number of compressed bytes written. */
+    private long compressedOffset;
+
+    /** Number of uncompressed bytes in the members written. */
+    private long uncompressedOffset;
+
+    /** Compressed and uncompressed offsets of every member but the first. */
+    private List<long[]> index = new ArrayList<long[]>();
+
+    /** True when the last member has been written. */
+    private boolean finished;
+
+    /**
+     * Constructor.
+     *
+     * @param out
+     *            - the stream to write the compressed output to
+     * @param threads
+     *            - the number of compression threads
+     */
+    ParallelGZIPOutputStream(OutputStream out, int threads) {
+        this(out, threads, BLOCK_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param out
+     *            - the stream to write the compressed output to
+     * @param threads
+     *            - the number of compression threads
+     * @param blockSize
+     *            - the number of uncompressed bytes in a block
+     */
+    ParallelGZIPOutputStream(OutputStream out, int threads, int blockSize) {
+        if (threads < 1 || blockSize < 1) {
+            throw new IllegalArgumentException("There must be at least one thread and one byte per block");
+        }
+        this.out = out;
+        this.blockSize = blockSize;
+        this.maxPending = threads * 2;
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.buf = new byte[blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == blockSize) {
+            submitBlock();
+        }
+        buf[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (count == blockSize) {
+                submitBlock();
+            }
+            int n = Math.min(len, blockSize - count);
+            System.arraycopy(b, off, buf, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Write the blocks that have been compressed. The block being filled is
+     * kept, so flushing doesn't make the members smaller.
+     *
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    @Override
+    public void flush() throws IOException {
+        while (!pending.isEmpty()) {
+            writeNext();
+        }
+        out.flush();
+    }
+
+    /**
+     * Compress the rest of the data and write it, without closing the
+     * underlying stream.
+     *
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        try {
+            if (count > 0 || uncompressedOffset == 0 && pending.isEmpty()) {
+                // An empty output still gets one member, so it is a valid gzip file.
+                submitBlock();
+            }
+            flush();
+            finished = true;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Write the offsets of the members to an index in the layout of .gzi:
+     * the number of entries followed by the compressed and uncompressed offset
+     * of every member but the first, all as little-endian 64-bit numbers.
+     * Only the layout is shared with bgzip; a reader must seek to a member
+     * offset and inflate from there with an ordinary gzip reader.
+     * Must be called after {@link #finish()}.
+     *
+     * @param file
+     *            - the index file
+     * @throws IOException
+     *             - if the file can't be written
+     */
+    void writeIndex(File file) throws IOException {
+        if (!finished) {
+            throw new IllegalStateException("The output isn't finished");
+        }
+        DataOutputStream indexOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            indexOut.writeLong(Long.reverseBytes(index.size()));
+            for (long[] entry : index) {
+                indexOut.writeLong(Long.reverseBytes(entry[0]));
+                indexOut.writeLong(Long.reverseBytes(entry[1]));
+            }
+        } finally {
+            indexOut.close();
+        }
+    }
+
+    /**
+     * Hand the block being filled to a compression thread and start a new
+     * one. If too many blocks are waiting, the oldest is written first.
+     *
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    private void submitBlock() throws IOException {
+        if (finished) {
+            throw new IOException("The output is finished");
+        }
+        if (pending.size() >= maxPending) {
+            writeNext();
+        }
+        final byte[] block = buf;
+        final int length = count;
+        pending.add(executor.submit(() -> compress(block, length)));
+        pendingSizes.add(length);
+        buf = new byte[blockSize];
+        count = 0;
+    }
+
+    /**
+     * Wait for the oldest block to be compressed and write it.
+     *
+     * @throws IOException
+     *             - if the compression failed or the output is not open.
+     */
+    private void writeNext() throws IOException {
+        byte[] member;
+        try {
+            member = pending.removeFirst().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing");
+        } catch (ExecutionException e) {
+            throw new IOException("Compression failed", e.getCause());
+        }
+        if (compressedOffset > 0) {
+            index.add(new long[] {compressedOffset, uncompressedOffset});
+        }
+        out.write(member);
+        compressedOffset += member.length;
+        uncompressedOffset += pendingSizes.removeFirst();
+    }
+
+    /**
+     * Compress a block to a gzip member.
+     *
+     * @param block
+     *            - the bytes
+     * @param length
+     *            - the number of bytes used in the block
+     * @return the member
+     * @throws IOException
+     *             - never, as the output is in memory
+     */
+    private static byte[] compress(byte[] block, int length) throws IOException {
+        ByteArrayOutputStream member = new ByteArrayOutputStream(length / 2 + 64);
+        GZIPOutputStream gz = new GZIPOutputStream(member, 8192);
+        gz.write(block, 0, length);
+        gz.close();
+        return member.toByteArray();
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is RDFExport 1.0
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev or Zero Technologies are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Søren Roug, EEA
+ */
+package eionet.rdfexport;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What a query has done so far: rows read, resources, triples and bytes
+ * written, and where the time went. The time is split into the time to the
+ * first row, which includes running the query, the time waiting for the
+ * next row, and the time writing the rows. The counters can be updated by
+ * several threads, as when a table is exported in key ranges.
+ * <p>
+ * The same class holds the sums of a table, with a null query.
+ */
+public class QueryMetrics {
+
+    /** Name of table in properties file. */
+    private final String table;
+
+    /** Name of the query in properties file, or null for a whole table. */
+    private final String query;
+
+    /** Number of times the query was run. */
+    private final LongAdder executions = new LongAdder();
+
+    /** Number of rows read. */
+    private final LongAdder rows = new LongAdder();
+
+    /** Number of resources started. */
+    private final LongAdder resources = new LongAdder();
+
+    /** Number of triples written. */
+    private final LongAdder triples = new LongAdder();
+
+    /** Number of bytes written. */
+    private final LongAdder bytes = new LongAdder();
+
+    /** Time from running the query to having the first row. */
+    private final LongAdder firstRowNanos = new LongAdder();
+
+    /** Time waiting for rows after the first. */
+    private final LongAdder fetchNanos = new LongAdder();
+
+    /** Time writing rows. */
+    private final LongAdder writeNanos = new LongAdder();
+
+    /**
+     * Measures one run of a query. It is used by one thread only, and adds
+     * to the counters of the query as it goes, so a running query can be
+     * watched.
+     */
+    final class Probe {
+
+        /** When the last measurement ended. */
+        private long mark = System.nanoTime();
+
+        /** True until the first row has been read. */
+        private boolean firstRow = true;
+
+        /** Triples written when the counters were last updated. */
+        private long tripleMark;
+
+        /** Bytes written when the counters were last updated. */
+        private long byteMark;
+
+        /**
+         * Constructor.
+         *
+         * @param triples
+         *            - the triple count of the writer before the query runs
+         * @param bytes
+         *            - the byte count of the writer before the query runs
+         */
+        private Probe(long triples, long bytes) {
+            tripleMark = triples;
+            byteMark = bytes;
+            executions.increment();
+        }
+
+        /**
+         * Start measuring from now.
+         */
+        void mark() {
+            mark = System.nanoTime();
+        }
+
+        /**
+         * Count the time since the last measurement as waiting for a row.
+         *
+         * @param found
+         *            - true if a row was read, false at the end of the rows
+         */
+        void fetched(boolean found) {
+            long now = System.nanoTime();
+            if (firstRow) {
+                firstRowNanos.add(now - mark);
+                firstRow = false;
+            } else {
+                fetchNanos.add(now - mark);
+            }
+            if (found) {
+                rows.increment();
+            }
+            mark = now;
+        }
+
+        /**
+         * Count the time since the last measurement as writing.
+         */
+        void written() {
+            long now = System.nanoTime();
+            writeNanos.add(now - mark);
+            mark = now;
+        }
+
+        /**
+         * Count a resource, and the triples and bytes written since the
+         * last update.
+         *
+         * @param tripleCount
+         *            - the triple count of the writer
+         * @param byteCount
+         *            - the byte count of the writer
+         */
+        void resourceStarted(long tripleCount, long byteCount) {
+            resources.increment();
+            update(tripleCount, byteCount);
+        }
+
+        /**
+         * Count the triples and bytes written since the last update.
+         *
+         * @param tripleCount
+         *            - the triple count of the writer
+         * @param byteCount
+         *            - the byte count of the writer
+         */
+        void update(long tripleCount, long byteCount) {
+            triples.add(tripleCount - tripleMark);
+            bytes.add(byteCount - byteMark);
+            tripleMark = tripleCount;
+            byteMark = byteCount;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param table
+     *            - name of table in properties file
+     * @param query
+     *            - name of the query in properties file, or null for the
+     *            sums of a table
+     */
+    QueryMetrics(String table, String query) {
+        this.table = table;
+        this.query = query;
+    }
+
+    /**
+     * Start measuring a run of the query.
+     *
+     * @param tripleCount
+     *            - the triple count of the writer
+     * @param byteCount
+     *            - the byte count of the writer
+     * @return the probe to report to
+     */
+    Probe start(long tripleCount, long byteCount) {
+        return new Probe(tripleCount, byteCount);
+    }
+
+    /**
+     * Add the counters of another query.
+     *
+     * @param other
+     *            - the query
+     */
+    void add(QueryMetrics other) {
+        executions.add(other.executions.sum());
+        rows.add(other.rows.sum());
+        resources.add(other.resources.sum());
+        triples.add(other.triples.sum());
+        bytes.add(other.bytes.sum());
+        firstRowNanos.add(other.firstRowNanos.sum());
+        fetchNanos.add(other.fetchNanos.sum());
+        writeNanos.add(other.writeNanos.sum());
+    }
+
+    /**
+     * Name of table in properties file.
+     *
+     * @return the name
+     */
+    public String getTable() {
+        return table;
+    }
+
+    /**
+     * Name of the query in properties file.
+     *
+     * @return the name, or null for the sums of a table
+     */
+    public String getQuery() {
+        return query;
+    }
+
+    /**
+     * Number of times the query was run.
+     *
+     * @return the count
+     */
+    public long getExecutions() {
+        return executions.sum();
+    }
+
+    /**
+     * Number of rows read.
+     *
+     * @return the count
+     */
+    public long getRows() {
+        return rows.sum();
+    }
+
+    /**
+     * Number of resources started.
+     *
+     * @return the count
+     */
+    public long getResources() {
+        return resources.sum();
+    }
+
+    /**
+     * Number of triples written.
+     *
+     * @return the count
+     */
+    public long getTriples() {
+        return triples.sum();
+    }
+
+    /**
+     * Number of bytes written. Output to a Writer isn't counted.
+     *
+     * @return the count
+     */
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    /**
+     * Time from running the query to having the first row, added up over
+     * all runs.
+     *
+     * @return milliseconds
+     */
+    public long getFirstRowMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(firstRowNanos.sum());
+    }
+
+    /**
+     * Time waiting for the database for the rows after the first.
+     *
+     * @return milliseconds
+     */
+    public long getFetchMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(fetchNanos.sum());
+    }
+
+    /**
+     * Time writing the rows.
+     *
+     * @return milliseconds
+     */
+    public long getWriteMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(writeNanos.sum());
+    }
+
+    /**
+     * Rows read per second of the time spent on the query.
+     *
+     * @return the rate, or 0 if no time has been measured
+     */
+    public double getRowsPerSecond() {
+        long nanos = firstRowNanos.sum() + fetchNanos.sum() + writeNanos.sum();
+        return nanos == 0 ? 0 : rows.sum() * 1e9 / nanos;
+    }
+}
@@ -20,6 +20,8 @@
  */
 package eionet.rdfexport;
 
+import java.util.Collection;
+
 /**
  * Service interface of the main functionality.
  *
@@ -41,6 +43,25 @@ public interface RDFExportService {
      */
     void exportTable(String table, String identifier) throws Exception;
 
+    /**
+     * Export many records of a table as RDF. The implementations in this
+     * package write them in one document with batched lookups. By default
+     * each record is exported with {@link #exportTable(String, String)}, as
+     * a document of its own.
+     *
+     * @param table
+     *            - name of table in properties
+     * @param identifiers
+     *            - primary keys of the records we want
+     * @throws Exception
+     *            - on failure
+     */
+    default void exportTable(String table, Collection<String> identifiers) throws Exception {
+        for (String identifier : identifiers) {
+            exportTable(table, identifier);
+        }
+    }
+
     /**
      * Exports all tables defined in the properties as RDF.
      *
@@ -22,6 +22,7 @@ package eionet.rdfexport;
 
 import java.io.OutputStream;
 import java.sql.Connection;
+import java.util.Collection;
 import java.util.Properties;
 
 
@@ -38,6 +39,10 @@ public class RDFExportServiceImpl implements RDFExportService {
     private Connection connection;
     /** RDF properties. */
     private Properties properties;
+    /** The properties compiled. Made from the properties when it is first needed. */
+    private ExportPlan plan;
+    /** Connections for exporting tables in parallel. Null for a sequential export. */
+    private ConnectionPool connectionPool;
 
     /**
      * Class constructor.
@@ -55,21 +60,98 @@ public class RDFExportServiceImpl implements RDFExportService {
         this.properties = properties;
     }
 
+    /**
+     * Class constructor for parallel export of all tables.
+     *
+     * @param outputStream
+     *            - The output stream to send output to
+     * @param connection
+     *            - The database connection for the document information
+     * @param properties
+     *            - The properties
+     * @param connectionPool
+     *            - The connections the tables are exported on
+     */
+    public RDFExportServiceImpl(OutputStream outputStream, Connection connection, Properties properties,
+            ConnectionPool connectionPool) {
+        this(outputStream, connection, properties);
+        this.connectionPool = connectionPool;
+    }
+
+    /**
+     * Class constructor with properties that have already been compiled.
+     * The same plan can be given to many services, so the properties are
+     * only scanned once.
+     *
+     * @param outputStream
+     *            - The output stream to send output to
+     * @param connection
+     *            - The database connection
+     * @param plan
+     *            - The compiled properties
+     * @param connectionPool
+     *            - The connections the tables are exported on, or null for
+     *            a sequential export
+     */
+    public RDFExportServiceImpl(OutputStream outputStream, Connection connection, ExportPlan plan,
+            ConnectionPool connectionPool) {
+        this.outputStream = outputStream;
+        this.connection = connection;
+        this.plan = plan;
+        this.connectionPool = connectionPool;
+    }
+
+    /**
+     * The compiled properties.
+     *
+     * @return the plan
+     */
+    private ExportPlan getPlan() {
+        if (plan == null) {
+            plan = new ExportPlan(properties);
+        }
+        return plan;
+    }
+
     @Override
     public void exportTable(String table, String identifier) throws Exception {
-        GenerateRDF generateRDF = new GenerateRDF(outputStream, connection, properties);
-        generateRDF.exportTable(table, identifier);
-        generateRDF.exportDocumentInformation();
-        generateRDF.writeRdfFooter();
+        GenerateRDF generateRDF = new GenerateRDF(outputStream, connection, getPlan());
+        try {
+            generateRDF.exportTable(table, identifier);
+            generateRDF.exportDocumentInformation();
+            generateRDF.writeRdfFooter();
+        } finally {
+            generateRDF.close();
+        }
+    }
+
+    @Override
+    public void exportTable(String table, Collection<String> identifiers) throws Exception {
+        GenerateRDF generateRDF = new GenerateRDF(outputStream, connection, getPlan());
+        try {
+            generateRDF.exportTable(table, identifiers);
+            generateRDF.exportDocumentInformation();
+            generateRDF.writeRdfFooter();
+        } finally {
+            generateRDF.close();
+        }
     }
 
     @Override
     public void exportAllTables() throws Exception {
-        GenerateRDF generateRDF = new GenerateRDF(outputStream, connection, properties);
-        for (String table : generateRDF.getAllTables()) {
-            generateRDF.exportTable(table);
+        GenerateRDF generateRDF = new GenerateRDF(outputStream, connection, getPlan());
+        try {
+            if (connectionPool != null) {
+                generateRDF.exportTables(generateRDF.getAllTables(), null, connectionPool);
+            } else {
+                for (String table : generateRDF.getAllTables()) {
+                    generateRDF.exportTable(table);
+                }
+            }
+            generateRDF.exportDocumentInformation();
+            generateRDF.writeRdfFooter();
+        } finally {
+            generateRDF.close();
         }
-        generateRDF.exportDocumentInformation();
-        generateRDF.writeRdfFooter();
     }
 }
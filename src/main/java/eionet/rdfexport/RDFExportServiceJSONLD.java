@@ -22,6 +22,7 @@ package eionet.rdfexport;
 
 import java.io.OutputStream;
 import java.sql.Connection;
+import java.util.Collection;
 import java.util.Properties;
 
 /**
@@ -46,19 +47,39 @@ public class RDFExportServiceJSONLD implements RDFExportService {
     @Override
     public void exportTable(String table, String identifier) throws Exception {
         GenerateJSONLD generateJSONLD = new GenerateJSONLD(outputStream, connection, properties);
-        generateJSONLD.exportTable(table, identifier);
-        generateJSONLD.exportDocumentInformation();
-        generateJSONLD.writeJsonLDFooter();
+        try {
+            generateJSONLD.exportTable(table, identifier);
+            generateJSONLD.exportDocumentInformation();
+            generateJSONLD.writeJsonLDFooter();
+        } finally {
+            generateJSONLD.close();
+        }
+    }
+
+    @Override
+    public void exportTable(String table, Collection<String> identifiers) throws Exception {
+        GenerateJSONLD generateJSONLD = new GenerateJSONLD(outputStream, connection, properties);
+        try {
+            generateJSONLD.exportTable(table, identifiers);
+            generateJSONLD.exportDocumentInformation();
+            generateJSONLD.writeJsonLDFooter();
+        } finally {
+            generateJSONLD.close();
+        }
     }
 
     @Override
     public void exportAllTables() throws Exception {
         GenerateJSONLD generateJSONLD = new GenerateJSONLD(outputStream, connection, properties);
-        for (String table : generateJSONLD.getAllTables()) {
-            generateJSONLD.exportTable(table);
+        try {
+            for (String table : generateJSONLD.getAllTables()) {
+                generateJSONLD.exportTable(table);
+            }
+            generateJSONLD.exportDocumentInformation();
+            generateJSONLD.writeJsonLDFooter();
+        } finally {
+            generateJSONLD.close();
         }
-        generateJSONLD.exportDocumentInformation();
-        generateJSONLD.writeJsonLDFooter();
     }
     
 }
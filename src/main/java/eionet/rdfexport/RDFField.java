@@ -31,6 +31,12 @@ class RDFField {
     String datatype;
     /** Language code of column. */
     String langcode;
+    /** How to read the column. Set for the columns of a query. */
+    ColumnReader reader;
+    /** The name the cached bytes were encoded from. */
+    private String encodedName;
+    /** UTF-8 encoding of the name. */
+    private byte[] nameBytes;
 
     /**
      * Constructor.
@@ -52,4 +58,18 @@ class RDFField {
         datatype = dt;
         langcode = l;
     }
+
+    /**
+     * Get the name encoded as UTF-8. The encoding is kept until the name
+     * is changed, so a column name is only encoded once per query.
+     *
+     * @return the bytes of the name
+     */
+    byte[] getNameBytes() {
+        if (name != encodedName) {
+            nameBytes = name.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+            encodedName = name;
+        }
+        return nameBytes;
+    }
 }
@@ -0,0 +1,455 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is RDFExport 1.0
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev or Zero Technologies are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Søren Roug, EEA
+ */
+package eionet.rdfexport;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
+
+/**
+ * The digests of the resources written by the previous run, so that only
+ * new and changed resources need to be written again. A resource is known
+ * by its subject.
+ * <p>
+ * The index is a file with a hash table of subject hash, digest and the
+ * position of the subject, followed by the subjects. The file of the
+ * previous run is memory mapped, so it doesn't have to fit in the heap.
+ * The digests of this run are appended to a journal, which is turned into
+ * the new index by {@link #commit(File, boolean)}.
+ */
+class ResourceDigests {
+
+    /** First bytes of an index file. */
+    private static final int MAGIC = 0x52444649;
+
+    /** Format of the index file. */
+    private static final int VERSION = 1;
+
+    /** Size of the header: magic, version, capacity and count. */
+    private static final int HEADER_SIZE = 16;
+
+    /** Size of a slot: subject hash, digest and position of the subject. */
+    private static final int SLOT_SIZE = 24;
+
+    /** Multipliers of the hash function. */
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    /** Reads eight bytes at a time in the hash function. */
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class,
+            ByteOrder.LITTLE_ENDIAN);
+
+    /** The index file. */
+    private File indexFile;
+
+    /** The index of the previous run or null if there was none. */
+    private MappedByteBuffer previous;
+
+    /** Number of slots in the previous index. */
+    private int previousCapacity;
+
+    /** The slots of the previous index whose subject has been seen in this run. */
+    private BitSet seen = new BitSet();
+
+    /** The subjects and digests of this run. */
+    private File journalFile;
+
+    /** Output to the journal. */
+    private DataOutputStream journal;
+
+    /** Number of entries in the journal. */
+    private int count;
+
+    /** Number of bytes the subjects take up in the new index. */
+    private long subjectBytes;
+
+    /**
+     * Constructor. Opens the index of the previous run if there is one.
+     *
+     * @param indexFile
+     *            - the index file
+     * @throws IOException
+     *             - if the index can't be read or the journal created
+     */
+    ResourceDigests(File indexFile) throws IOException {
+        this.indexFile = indexFile.getAbsoluteFile();
+        if (this.indexFile.exists()) {
+            RandomAccessFile raf = new RandomAccessFile(this.indexFile, "r");
+            try {
+                if (raf.length() > Integer.MAX_VALUE) {
+                    throw new IOException("The digest index " + indexFile + " is too large");
+                }
+                previous = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            } finally {
+                raf.close();
+            }
+            if (previous.capacity() < HEADER_SIZE || previous.getInt(0) != MAGIC || previous.getInt(4) != VERSION) {
+                throw new IOException(indexFile + " is not a digest index");
+            }
+            previousCapacity = previous.getInt(8);
+            if (previousCapacity < 16 || Integer.bitCount(previousCapacity) != 1 || HEADER_SIZE + (long) previousCapacity * SLOT_SIZE > previous.capacity()) {
+                throw new IOException("The digest index " + indexFile + " is truncated");
+            }
+        }
+        journalFile = File.createTempFile(this.indexFile.getName(), ".journal", this.indexFile.getParentFile());
+        journalFile.deleteOnExit();
+        journal = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journalFile)));
+    }
+
+    /**
+     * Hash bytes to 64 bits. The mixing steps are those of MurmurHash3.
+     *
+     * @param b
+     *            - the bytes
+     * @param off
+     *            - the first byte
+     * @param len
+     *            - the number of bytes
+     * @return the hash
+     */
+    static long hash(byte[] b, int off, int len) {
+        long h = len * C1;
+        int i = off;
+        int end = off + (len & ~7);
+        for (; i < end; i += 8) {
+            long k = (long) LONGS.get(b, i);
+            k *= C1;
+            k = Long.rotateLeft(k, 31);
+            k *= C2;
+            h ^= k;
+            h = Long.rotateLeft(h, 27) * 5 + 0x52dce729;
+        }
+        long k = 0;
+        for (int shift = 0; i < off + len; i++, shift += 8) {
+            k |= (b[i] & 0xFFL) << shift;
+        }
+        k *= C1;
+        k = Long.rotateLeft(k, 31);
+        k *= C2;
+        h ^= k;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb93fe53a87ffL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Record the digest of a resource and compare it with the previous run.
+     *
+     * @param subject
+     *            - the subject of the resource
+     * @param digest
+     *            - the digest of the serialised resource
+     * @return true if the resource is new or has changed
+     * @throws IOException
+     *             - if the journal can't be written
+     */
+    synchronized boolean changed(String subject, long digest) throws IOException {
+        byte[] key = subject.getBytes(StandardCharsets.UTF_8);
+        long keyHash = hash(key, 0, key.length);
+        journal.writeLong(keyHash);
+        journal.writeLong(digest);
+        journal.writeInt(key.length);
+        journal.write(key);
+        count++;
+        subjectBytes += 4 + key.length;
+
+        if (previous == null) {
+            return true;
+        }
+        int slot = find(previous, previousCapacity, keyHash, key);
+        if (slot < 0) {
+            return true;
+        }
+        seen.set(slot);
+        return previous.getLong(slotPosition(slot) + 8) != digest;
+    }
+
+    /**
+     * Write the subjects that were in the previous run and not in this one,
+     * and replace the index with the one of this run. Must only be called
+     * when an export of everything has completed.
+     *
+     * @param deletions
+     *            - the file to write the deleted subjects to, one per line
+     * @throws IOException
+     *             - if the files can't be written
+     */
+    void commit(File deletions) throws IOException {
+        commit(deletions, true);
+    }
+
+    /**
+     * Write the subjects that were in the previous run and not in this one,
+     * and replace the index with the one of this run. Must only be called
+     * when the export has completed.
+     * <p>
+     * When the run didn't export everything, as with a subset of the tables
+     * or rows, a subject that wasn't seen may still be there. Nothing is
+     * then written as deleted, and the digests of the subjects not seen are
+     * kept in the new index, so the next complete run finds the deletions.
+     *
+     * @param deletions
+     *            - the file to write the deleted subjects to, one per line
+     * @param complete
+     *            - true if all rows of all tables were exported
+     * @throws IOException
+     *             - if the files can't be written
+     */
+    synchronized void commit(File deletions, boolean complete) throws IOException {
+        journal.close();
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(deletions),
+                StandardCharsets.UTF_8));
+        try {
+            if (previous != null && complete) {
+                for (int slot = 0; slot < previousCapacity; slot++) {
+                    long position = previous.getLong(slotPosition(slot) + 16);
+                    if (position != 0 && !seen.get(slot)) {
+                        out.write(readSubject(previous, position));
+                        out.write('\n');
+                    }
+                }
+            }
+        } finally {
+            out.close();
+        }
+
+        File tempFile = File.createTempFile(indexFile.getName(), ".tmp", indexFile.getParentFile());
+        try {
+            writeIndex(tempFile, !complete);
+            previous = null;
+            Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            tempFile.delete();
+            journalFile.delete();
+        }
+    }
+
+    /**
+     * Drop the digests of this run. The index of the previous run is kept.
+     */
+    synchronized void close() {
+        try {
+            journal.close();
+        } catch (IOException e) {
+            // Ignore closing exceptions
+        }
+        journalFile.delete();
+        previous = null;
+    }
+
+    /**
+     * Build the index from the journal.
+     *
+     * @param file
+     *            - the file to write the index to
+     * @param keepUnseen
+     *            - true to also keep the subjects of the previous index
+     *            that weren't seen in this run
+     * @throws IOException
+     *             - if the file can't be written
+     */
+    private void writeIndex(File file, boolean keepUnseen) throws IOException {
+        long total = count;
+        long bytes = subjectBytes;
+        if (keepUnseen && previous != null) {
+            for (int slot = seen.nextClearBit(0); slot < previousCapacity; slot = seen.nextClearBit(slot + 1)) {
+                long position = previous.getLong(slotPosition(slot) + 16);
+                if (position != 0) {
+                    total++;
+                    bytes += 4 + previous.getInt((int) position);
+                }
+            }
+        } else {
+            keepUnseen = false;
+        }
+        int capacity = 16;
+        while (capacity < total * 2L) {
+            capacity <<= 1;
+            if (capacity < 0) {
+                throw new IOException("Too many resources for the digest index");
+            }
+        }
+        long size = HEADER_SIZE + (long) capacity * SLOT_SIZE + bytes;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("The digest index would be too large");
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(size);
+            MappedByteBuffer index = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            index.putInt(0, MAGIC);
+            index.putInt(4, VERSION);
+            index.putInt(8, capacity);
+            int entries = 0;
+            long position = HEADER_SIZE + (long) capacity * SLOT_SIZE;
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)));
+            try {
+                for (int n = 0; n < count; n++) {
+                    long keyHash = in.readLong();
+                    long digest = in.readLong();
+                    byte[] key = new byte[in.readInt()];
+                    in.readFully(key);
+                    int slot = find(index, capacity, keyHash, key);
+                    if (slot >= 0) {
+                        // Written twice in this run. The last one counts.
+                        index.putLong(slotPosition(slot) + 8, digest);
+                        continue;
+                    }
+                    slot = -slot - 1;
+                    index.putLong(slotPosition(slot), keyHash);
+                    index.putLong(slotPosition(slot) + 8, digest);
+                    index.putLong(slotPosition(slot) + 16, position);
+                    index.putInt((int) position, key.length);
+                    index.put((int) position + 4, key);
+                    position += 4 + key.length;
+                    entries++;
+                }
+            } catch (EOFException e) {
+                throw new IOException("The digest journal " + journalFile + " is truncated", e);
+            } finally {
+                in.close();
+            }
+            for (int old = 0; keepUnseen && old < previousCapacity; old++) {
+                long oldPosition = previous.getLong(slotPosition(old) + 16);
+                if (oldPosition == 0 || seen.get(old)) {
+                    continue;
+                }
+                long keyHash = previous.getLong(slotPosition(old));
+                byte[] key = new byte[previous.getInt((int) oldPosition)];
+                previous.get((int) oldPosition + 4, key);
+                int slot = -find(index, capacity, keyHash, key) - 1;
+                index.putLong(slotPosition(slot), keyHash);
+                index.putLong(slotPosition(slot) + 8, previous.getLong(slotPosition(old) + 8));
+                index.putLong(slotPosition(slot) + 16, position);
+                index.putInt((int) position, key.length);
+                index.put((int) position + 4, key);
+                position += 4 + key.length;
+                entries++;
+            }
+            index.putInt(12, entries);
+            index.force();
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Look up a subject in an index.
+     *
+     * @param index
+     *            - the index
+     * @param capacity
+     *            - the number of slots
+     * @param keyHash
+     *            - the hash of the subject
+     * @param key
+     *            - the subject in UTF-8
+     * @return the slot of the subject, or -(free slot + 1) if it isn't there
+     */
+    private static int find(MappedByteBuffer index, int capacity, long keyHash, byte[] key) {
+        int mask = capacity - 1;
+        int slot = (int) keyHash & mask;
+        while (true) {
+            long position = index.getLong(slotPosition(slot) + 16);
+            if (position == 0) {
+                return -slot - 1;
+            }
+            if (index.getLong(slotPosition(slot)) == keyHash && sameKey(index, position, key)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Compare a subject in the index with a key.
+     *
+     * @param index
+     *            - the index
+     * @param position
+     *            - where the subject is
+     * @param key
+     *            - the subject in UTF-8
+     * @return true if they are the same
+     */
+    private static boolean sameKey(MappedByteBuffer index, long position, byte[] key) {
+        int p = (int) position;
+        if (index.getInt(p) != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (index.get(p + 4 + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read a subject from the index.
+     *
+     * @param index
+     *            - the index
+     * @param position
+     *            - where the subject is
+     * @return the subject
+     */
+    private static String readSubject(MappedByteBuffer index, long position) {
+        int p = (int) position;
+        byte[] key = new byte[index.getInt(p)];
+        index.get(p + 4, key);
+        return new String(key, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Where a slot starts in the index.
+     *
+     * @param slot
+     *            - the slot number
+     * @return the position
+     */
+    private static int slotPosition(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+}
@@ -0,0 +1,500 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is RDFExport 1.0
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev or Zero Technologies are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Søren Roug, EEA
+ */
+package eionet.rdfexport;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A small HTTP server that exports resources on request. The path
+ * <code>/table/id</code> gives one record of a table and <code>/table</code>
+ * the whole table, in the format asked for in the Accept header.
+ * <p>
+ * The documents of single records are kept in an {@link ExportCache} and
+ * get an ETag, so a client that has the document already gets 304 Not
+ * Modified. Whole tables are streamed and not cached. The size of the cache
+ * and the time a document is kept are set with the cachesize and cachettl
+ * properties.
+ * <p>
+ * Each request borrows a connection from the pool, and the server handles
+ * as many requests at the same time as there are connections.
+ */
+public class ResourceServer {
+
+    /** Default number of bytes in the cache. */
+    static final String CACHE_SIZE = "16M";
+
+    /** Default number of seconds a document is kept. */
+    static final String CACHE_TTL = "300";
+
+    /** The formats that can be served and their media types, the preferred first. */
+    private static final Map<String, String> FORMATS = new LinkedHashMap<String, String>();
+
+    /** Other media types that are understood, and their formats. */
+    private static final Map<String, String> ALIASES = new LinkedHashMap<String, String>();
+
+    static {
+        FORMATS.put("xml", "application/rdf+xml");
+        FORMATS.put("ttl", "text/turtle");
+        FORMATS.put("nt", "application/n-triples");
+        FORMATS.put("jsonld", "application/ld+json");
+        ALIASES.put("application/xml", "xml");
+        ALIASES.put("application/x-turtle", "ttl");
+        ALIASES.put("application/json", "jsonld");
+    }
+
+    /** The compiled properties, shared by all requests. */
+    private ExportPlan plan;
+
+    /** The connections the requests are served with. */
+    private ConnectionPool pool;
+
+    /** The documents of single records. */
+    private ExportCache cache;
+
+    /** The Cache-Control header of the documents. */
+    private String cacheControl;
+
+    /** The formats this server offers and their media types. */
+    private Map<String, String> offered;
+
+    /** The format used when the client takes anything. */
+    private String defaultFormat;
+
+    /** The server. */
+    private HttpServer server;
+
+    /** The threads handling the requests. */
+    private ExecutorService executor;
+
+    /**
+     * Constructor. The server is started with {@link #start()}.
+     *
+     * @param address
+     *            - the address to listen on. Port 0 picks a free port.
+     * @param plan
+     *            - the compiled properties
+     * @param pool
+     *            - the database connections. The pool is not closed by the
+     *            server.
+     * @throws IOException
+     *             - if the address can't be bound
+     */
+    public ResourceServer(InetSocketAddress address, ExportPlan plan, ConnectionPool pool) throws IOException {
+        if (pool.size() < 1) {
+            throw new IllegalArgumentException("The server needs at least one database connection");
+        }
+        this.plan = plan;
+        this.pool = pool;
+        String ttl = plan.getProperty("cachettl", CACHE_TTL);
+        cache = new ExportCache(parseSize(plan.getProperty("cachesize", CACHE_SIZE)), Long.parseLong(ttl));
+        cacheControl = "max-age=" + ttl;
+        offered = new LinkedHashMap<String, String>(FORMATS);
+        String baseurl = plan.getProperty("baseurl");
+        if (baseurl == null || baseurl.isEmpty()) {
+            // N-Triples can't hold the relative IRIs of a plan without a base URL.
+            offered.remove("nt");
+        }
+        defaultFormat = plan.getProperty("outputformat", "xml");
+        if (!offered.containsKey(defaultFormat)) {
+            defaultFormat = "xml";
+        }
+        server = HttpServer.create(address, 0);
+        server.createContext("/", this::handle);
+    }
+
+    /**
+     * Start accepting requests.
+     */
+    public void start() {
+        executor = Executors.newFixedThreadPool(pool.size());
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Stop accepting requests and wait up to a second for the requests
+     * being handled.
+     */
+    public void stop() {
+        server.stop(1);
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * The port the server listens on.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * The documents of single records.
+     *
+     * @return the cache
+     */
+    ExportCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Handle a request.
+     *
+     * @param exchange
+     *            - the request and response
+     * @throws IOException
+     *             - if the response can't be sent
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            if (!"GET".equals(method) && !"HEAD".equals(method)) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                sendError(exchange, 405, "Only GET and HEAD are allowed");
+                return;
+            }
+            String[] path = exchange.getRequestURI().getPath().substring(1).split("/", 2);
+            String table = path[0];
+            if (table.isEmpty() || plan.getTable(table).queries.isEmpty()) {
+                sendError(exchange, 404, "No such table: " + table);
+                return;
+            }
+            String format = negotiate(exchange.getRequestHeaders().getFirst("Accept"), defaultFormat, offered);
+            if (format == null) {
+                sendError(exchange, 406, "The formats available are " + offered.values());
+                return;
+            }
+            exchange.getResponseHeaders().set("Vary", "Accept");
+            exchange.getResponseHeaders().set("Content-Type", FORMATS.get(format) + "; charset=UTF-8");
+            if (path.length == 1 || path[1].isEmpty()) {
+                sendTable(exchange, table, format);
+            } else {
+                sendResource(exchange, table, path[1], format);
+            }
+        } catch (SQLException e) {
+            // Once the document has started, all that can be done is to cut it short.
+            if (exchange.getResponseCode() == -1) {
+                sendError(exchange, 500, e.getMessage());
+            }
+        } catch (RuntimeException e) {
+            if (exchange.getResponseCode() == -1) {
+                sendError(exchange, 500, String.valueOf(e));
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Send one record, from the cache if it is there.
+     *
+     * @param exchange
+     *            - the request and response
+     * @param table
+     *            - name of table in properties file
+     * @param identifier
+     *            - primary key of the record
+     * @param format
+     *            - the output format
+     * @throws SQLException
+     *             - if there is a database problem
+     * @throws IOException
+     *             - if the response can't be sent
+     */
+    private void sendResource(HttpExchange exchange, String table, String identifier, String format)
+            throws SQLException, IOException {
+        String key = format + " " + table + "/" + identifier;
+        ExportCache.Entry entry = cache.get(key);
+        if (entry == null) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            if (!export(body, table, identifier, format)) {
+                exchange.getResponseHeaders().remove("Content-Type");
+                sendError(exchange, 404, "No such record: " + table + "/" + identifier);
+                return;
+            }
+            entry = cache.put(key, body.toByteArray());
+        }
+        exchange.getResponseHeaders().set("ETag", entry.etag);
+        exchange.getResponseHeaders().set("Cache-Control", cacheControl);
+        if (matches(exchange.getRequestHeaders().getFirst("If-None-Match"), entry.etag)) {
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().set("Content-Length", Integer.toString(entry.body.length));
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(200, entry.body.length);
+        exchange.getResponseBody().write(entry.body);
+    }
+
+    /**
+     * Stream a whole table. The response headers are sent with the first
+     * bytes of the document, so an error in the first queries still gives
+     * an error status.
+     *
+     * @param exchange
+     *            - the request and response
+     * @param table
+     *            - name of table in properties file
+     * @param format
+     *            - the output format
+     * @throws SQLException
+     *             - if there is a database problem
+     * @throws IOException
+     *             - if the response can't be sent
+     */
+    private void sendTable(final HttpExchange exchange, String table, String format)
+            throws SQLException, IOException {
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+        OutputStream body = new FilterOutputStream(exchange.getResponseBody()) {
+            @Override
+            public void write(int b) throws IOException {
+                start();
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                start();
+                out.write(b, off, len);
+            }
+
+            private void start() throws IOException {
+                if (exchange.getResponseCode() == -1) {
+                    exchange.sendResponseHeaders(200, 0);
+                }
+            }
+        };
+        export(body, table, null, format);
+        body.flush();
+    }
+
+    /**
+     * Export a table or one record of it.
+     *
+     * @param out
+     *            - the stream to write the document to
+     * @param table
+     *            - name of table in properties file
+     * @param identifier
+     *            - primary key of the record or null for all records
+     * @param format
+     *            - the output format
+     * @return false if a record was asked for and it wasn't found
+     * @throws SQLException
+     *             - if there is a database problem
+     * @throws IOException
+     *             - if the output is not open
+     */
+    private boolean export(OutputStream out, String table, String identifier, String format)
+            throws SQLException, IOException {
+        Connection con = pool.acquire();
+        try {
+            GenerateRDF generator = new GenerateRDF(out, con, plan, format);
+            try {
+                generator.exportTable(table, identifier);
+                if (identifier != null && generator.getTripleCount() == 0) {
+                    return false;
+                }
+                generator.exportDocumentInformation();
+                generator.writeRdfFooter();
+                return true;
+            } finally {
+                generator.close();
+            }
+        } finally {
+            pool.release(con);
+        }
+    }
+
+    /**
+     * Send a short text explaining an error.
+     *
+     * @param exchange
+     *            - the request and response
+     * @param status
+     *            - the HTTP status
+     * @param message
+     *            - the text
+     * @throws IOException
+     *             - if the response can't be sent
+     */
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    /**
+     * Check an If-None-Match header against the ETag of a document.
+     *
+     * @param header
+     *            - the header or null
+     * @param etag
+     *            - the ETag of the document
+     * @return true if the client has the document
+     */
+    static boolean matches(String header, String etag) {
+        if (header == null) {
+            return false;
+        }
+        for (String tag : header.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if ("*".equals(tag) || etag.equals(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Pick the format to answer with from an Accept header. Every format
+     * gets the quality of the most specific media range that matches it,
+     * and the format with the highest quality wins. On a tie the order of
+     * {@link #FORMATS} decides, with the default format first.
+     *
+     * @param accept
+     *            - the header or null
+     * @param defaultFormat
+     *            - the format to use when the client takes anything
+     * @return the format, or null if none of them is acceptable
+     */
+    static String negotiate(String accept, String defaultFormat) {
+        return negotiate(accept, defaultFormat, FORMATS);
+    }
+
+    /**
+     * Pick the format to answer with from an Accept header, among some of
+     * the formats.
+     *
+     * @param accept
+     *            - the header or null
+     * @param defaultFormat
+     *            - the format to use when the client takes anything
+     * @param formats
+     *            - the formats that can be given and their media types
+     * @return the format, or null if none of them is acceptable
+     */
+    static String negotiate(String accept, String defaultFormat, Map<String, String> formats) {
+        if (accept == null || accept.trim().isEmpty()) {
+            return defaultFormat;
+        }
+        Map<String, Double> ranges = new LinkedHashMap<String, Double>();
+        for (String part : accept.split(",")) {
+            String[] fields = part.split(";");
+            double quality = 1.0;
+            for (int i = 1; i < fields.length; i++) {
+                String param = fields[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            String range = fields[0].trim().toLowerCase();
+            String alias = ALIASES.get(range);
+            if (alias != null) {
+                range = FORMATS.get(alias);
+            }
+            if (!ranges.containsKey(range) || ranges.get(range) < quality) {
+                ranges.put(range, quality);
+            }
+        }
+        String best = null;
+        double bestQuality = 0;
+        for (String format : preferred(defaultFormat, formats)) {
+            String type = formats.get(format);
+            Double quality = ranges.get(type);
+            if (quality == null) {
+                quality = ranges.get(type.substring(0, type.indexOf('/')) + "/*");
+            }
+            if (quality == null) {
+                quality = ranges.get("*/*");
+            }
+            if (quality != null && quality > bestQuality) {
+                best = format;
+                bestQuality = quality;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * The formats in order of preference.
+     *
+     * @param defaultFormat
+     *            - the format to put first
+     * @param formats
+     *            - the formats that can be given
+     * @return the formats
+     */
+    private static Iterable<String> preferred(String defaultFormat, Map<String, String> formats) {
+        Map<String, String> ordered = new LinkedHashMap<String, String>();
+        ordered.put(defaultFormat, formats.get(defaultFormat));
+        ordered.putAll(formats);
+        return ordered.keySet();
+    }
+
+    /**
+     * Parse a number of bytes, optionally followed by K, M or G.
+     *
+     * @param size
+     *            - the text
+     * @return the number of bytes
+     */
+    private static long parseSize(String size) {
+        char unit = Character.toUpperCase(size.charAt(size.length() - 1));
+        int shift = unit == 'K' ? 10 : unit == 'M' ? 20 : unit == 'G' ? 30 : 0;
+        return Long.parseLong(shift == 0 ? size : size.substring(0, size.length() - 1)) << shift;
+    }
+}
@@ -20,9 +20,19 @@
  */
 package eionet.rdfexport;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.sql.Clob;
 import java.sql.SQLException;
+import java.util.Base64;
 import java.util.HashMap;
 
 /**
@@ -35,8 +45,8 @@ abstract class ResourceWriter {
     /** The namespaces to add to the rdf:RDF element. */
     protected HashMap<String, String> namespaces;
 
-    /** The output stream to send output to. */
-    private OutputStreamWriter outputStream;
+    /** The buffer to send output to. */
+    private OutputSink sink;
 
     /** Base of XML file. */
     protected String baseurl;
@@ -47,13 +57,28 @@ abstract class ResourceWriter {
     /** Treat empty strings as NULL. */
     protected boolean emptyStringIsNull = false;
 
+    /** How to write binary values: text, base64 or hex. */
+    protected String blobEncoding = "text";
+
+    /** Number of triples written. */
+    protected long triples;
+
     /**
      * Constructor.
      *
      * @param stream - the stream to write the output to
      */
     public ResourceWriter(OutputStreamWriter stream) {
-        outputStream = stream;
+        this(new OutputSink(stream));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param sink - the buffer to write the output to
+     */
+    ResourceWriter(OutputSink sink) {
+        this.sink = sink;
         namespaces = new HashMap<String, String>();
         namespaces.put("rdf", "http://www.w3.org/1999/02/22-rdf-syntax-ns#");
     }
@@ -88,6 +113,21 @@ abstract class ResourceWriter {
         this.emptyStringIsNull = emptyStringIsNull;
     }
 
+    /**
+     * Set how binary values such as BLOBs are written. "text" reads them as
+     * UTF-8, "base64" and "hex" write the bytes as xsd:base64Binary and
+     * xsd:hexBinary.
+     *
+     * @param blobEncoding
+     *            - text, base64 or hex.
+     */
+    public void setBlobEncoding(final String blobEncoding) {
+        if (!"text".equals(blobEncoding) && !"base64".equals(blobEncoding) && !"hex".equals(blobEncoding)) {
+            throw new IllegalArgumentException("Unknown blob encoding: " + blobEncoding);
+        }
+        this.blobEncoding = blobEncoding;
+    }
+
     /**
      * Add namespace to table.
      *
@@ -101,6 +141,19 @@ abstract class ResourceWriter {
     }
 
 
+    /**
+     * Check if a value should be left out. NULL always is, and the empty
+     * string is if emptyStringIsNull is set.
+     *
+     * @param value
+     *            - value from the database.
+     * @return true if no property should be written
+     */
+    protected boolean isNull(Object value) {
+        return value == null
+                || (emptyStringIsNull && value instanceof CharSequence && ((CharSequence) value).length() == 0);
+    }
+
     /**
      * Generate the RDF header element. You can in principle get the encoding
      * from the output stream, but it returns it as a string that is not
@@ -165,7 +218,209 @@ abstract class ResourceWriter {
      *             - if the output is not open.
      */
     protected void output(String v) throws IOException {
-        outputStream.write(v);
+        sink.write(v);
+    }
+
+    /**
+     * Output text with escapes. The text goes straight into the output
+     * buffer.
+     *
+     * @param v
+     *            - value to print.
+     * @param escapes
+     *            - one of the escape tables in {@link StringEncoder}.
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    protected void outputEscaped(String v, String[] escapes) throws IOException {
+        sink.writeEscaped(v, escapes);
+    }
+
+    /**
+     * Output a value from the database with escapes. Dates and times are
+     * formatted straight into the output buffer.
+     *
+     * @param value
+     *            - value from the database. Not null.
+     * @param escapes
+     *            - one of the escape tables in {@link StringEncoder}.
+     * @throws SQLException
+     *             - if the SQL database is not available
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    protected void outputValue(Object value, String[] escapes) throws SQLException, IOException {
+        if (Datatypes.isTemporal(value)) {
+            sink.writeTemporal(value);
+        } else if (value instanceof CharSequence) {
+            sink.writeEscaped((CharSequence) value, escapes);
+        } else if (value instanceof Clob) {
+            Reader in = ((Clob) value).getCharacterStream();
+            try {
+                sink.writeEscaped(in, escapes);
+            } finally {
+                in.close();
+            }
+        } else if (Datatypes.isBinary(value)) {
+            InputStream in = Datatypes.getBinaryStream(value);
+            try {
+                if ("base64".equals(blobEncoding)) {
+                    OutputStream out = Base64.getEncoder().wrap(sink.asciiStream());
+                    copy(in, out);
+                    out.close();
+                } else if ("hex".equals(blobEncoding)) {
+                    sink.writeHex(in);
+                } else {
+                    sink.writeEscaped(new InputStreamReader(in, StandardCharsets.UTF_8), escapes);
+                }
+            } finally {
+                in.close();
+            }
+        } else {
+            sink.writeEscaped(Datatypes.getFormattedValue(value), escapes);
+        }
+    }
+
+    /**
+     * Format a value from the database as a string. Binary values are
+     * encoded as set by {@link #setBlobEncoding(String)}. For writers that
+     * can't stream the value with {@link #outputValue(Object, String[])},
+     * such as JSON-LD, which keeps the values of a resource. A LOB is read
+     * whole into memory.
+     *
+     * @param value
+     *            - value from the database. Not null.
+     * @return the lexical form
+     * @throws SQLException
+     *             - if the SQL database is not available
+     * @throws IOException
+     *             - if a LOB can't be read.
+     */
+    protected String formatValue(Object value) throws SQLException, IOException {
+        if (!Datatypes.isBinary(value) || "text".equals(blobEncoding)) {
+            return Datatypes.getFormattedValue(value);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        InputStream in = Datatypes.getBinaryStream(value);
+        try {
+            copy(in, bytes);
+        } finally {
+            in.close();
+        }
+        if ("base64".equals(blobEncoding)) {
+            return Base64.getEncoder().encodeToString(bytes.toByteArray());
+        }
+        StringWriter text = new StringWriter();
+        new OutputSink(text).writeHex(new ByteArrayInputStream(bytes.toByteArray()));
+        return text.toString();
+    }
+
+    /**
+     * Copy a stream.
+     *
+     * @param in
+     *            - where to read
+     * @param out
+     *            - where to write
+     * @throws IOException
+     *             - if reading or writing fails
+     */
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            out.write(buf, 0, n);
+        }
+    }
+
+    /**
+     * Output text that has already been encoded to UTF-8, such as markup
+     * made with {@link OutputSink#ascii(String)}.
+     *
+     * @param v
+     *            - bytes to print.
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    protected void output(byte[] v) throws IOException {
+        sink.write(v);
+    }
+
+    /**
+     * Output part of an array of bytes that are already UTF-8 encoded.
+     *
+     * @param v
+     *            - bytes to print.
+     * @param off
+     *            - the first byte to print.
+     * @param len
+     *            - the number of bytes to print.
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    protected void output(byte[] v, int off, int len) throws IOException {
+        sink.write(v, off, len);
+    }
+
+    /**
+     * Copy a resource that this writer wrote to a buffer to the output.
+     * Formats that separate the resources can add the separator here.
+     *
+     * @param v
+     *            - bytes of the resource.
+     * @param off
+     *            - the first byte to print.
+     * @param len
+     *            - the number of bytes to print.
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    void outputResource(byte[] v, int off, int len) throws IOException {
+        output(v, off, len);
+    }
+
+    /**
+     * Send the output somewhere else for a while, such as to a buffer.
+     *
+     * @param to
+     *            - the new sink
+     * @return the sink the output went to until now
+     */
+    OutputSink redirect(OutputSink to) {
+        OutputSink from = sink;
+        sink = to;
+        return from;
+    }
+
+    /**
+     * Copy already serialised output, such as a segment written by another
+     * writer, to the output.
+     *
+     * @param in
+     *            - the UTF-8 bytes to copy.
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    protected void output(InputStream in) throws IOException {
+        sink.write(in);
+    }
+
+    /**
+     * Number of triples written so far.
+     *
+     * @return the count
+     */
+    long getTripleCount() {
+        return triples;
+    }
+
+    /**
+     * Number of bytes written so far to the current output.
+     *
+     * @return the count
+     */
+    long getBytesWritten() {
+        return sink.size();
     }
 
     /**
@@ -175,7 +430,7 @@ abstract class ResourceWriter {
      *             - if the output is not open.
      */
     protected void flush() throws IOException {
-        outputStream.flush();
+        sink.flush();
     }
 
 }
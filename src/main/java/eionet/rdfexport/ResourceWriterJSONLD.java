@@ -23,66 +23,129 @@ package eionet.rdfexport;
 
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStreamWriter;
+import java.io.PushbackInputStream;
+import java.io.Writer;
 import java.sql.SQLException;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
- * Class for writing a resource in JSON-LD. This class does not read properties files.
+ * Class for writing resources in JSON-LD. The document is an object with
+ * the namespaces in @context and the resources in @graph, one resource per
+ * line.
+ * <p>
+ * A property with several values is written as an array. The values of a
+ * resource are collected until the resource ends, so only one resource is
+ * held in memory at a time. Since a value is kept until then, a CLOB or
+ * BLOB is read whole into memory. The other writers stream LOBs to the
+ * output.
+ *
  * @author George Sofianos
  */
-public class ResourceWriterJSONLD {
-
-    /** The namespaces to add to the @context element. */
-    protected HashMap<String, String> namespaces;
-
-    /** The output stream to send output to. */
-    private OutputStreamWriter outputStream;
-
-    /** Base of file. */
-    protected String baseurl;
-
-    /** The URL of the null namespace. */
-    protected String nullNamespace;
-
-    /** Treat empty strings as NULL. */
-    protected boolean emptyStringIsNull = false;
-
-    /** If output has started, then you can't change the nullNamespace. */
-    private Boolean rdfHeaderWritten = false;
+public class ResourceWriterJSONLD extends ResourceWriter {
 
     private static final String JSONLD_CONTEXT = "@context";
     private static final String JSONLD_BASE = "@base";
+    private static final String JSONLD_GRAPH = "@graph";
     private static final String JSONLD_ID = "@id";
     private static final String JSONLD_LANGUAGE = "@language";
     private static final String JSONLD_TYPE = "@type";
     private static final String JSONLD_VALUE = "@value";
     private static final String JSONLD_VOCAB = "@vocab";
 
-    private JsonFactory f;
-    private JsonGenerator json;
+    /** If output has started, then you can't change the nullNamespace. */
+    protected boolean rdfHeaderWritten = false;
+
+    /** Writes the resources. Its buffer is emptied at the end of every resource. */
+    protected JsonGenerator json;
+
+    /** The @id of the resource being written. */
+    private String subject;
+
+    /** The @type of the resource being written, or null for rdf:Description. */
+    private String type;
+
+    /** The values of the resource being written, by property name, in the order they came. */
+    private Map<String, List<Value>> values = new LinkedHashMap<String, List<Value>>();
+
+    /** True when a resource has been written to the output, so the next one needs a separator. */
+    private boolean resourceWritten;
+
+    /** Where the output went before it was redirected, or null. */
+    private OutputSink directSink;
 
     /**
-     * Constructor
+     * One value of a property.
+     */
+    private static class Value {
+        /** The IRI of a reference, or null for a literal. */
+        private String id;
+        /** The lexical form of a literal. */
+        private String value;
+        /** The datatype of a literal, or the empty string. */
+        private String datatype;
+        /** The language of a literal, or the empty string. */
+        private String langcode;
+    }
+
+    /**
+     * Sends the output of the generator through {@link #output(String)}, so
+     * it follows the output when it is redirected.
+     */
+    private class OutputWriter extends Writer {
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            output(new String(cbuf, off, len));
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Constructor.
+     *
      * @param stream - the stream to write the output to
      * @throws IOException - if the output is not open.
      */
     public ResourceWriterJSONLD(OutputStreamWriter stream) throws IOException {
-        outputStream = stream;
-        namespaces = new HashMap<String, String>();
-        namespaces.put("rdf", "http://www.w3.org/1999/02/22-rdf-syntax-ns#");
-        f = new JsonFactory();
-        json = f.createGenerator(outputStream);
-        //TODO find or create a better pretty printer
-        json.useDefaultPrettyPrinter();
+        this(new OutputSink(stream));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param sink - the buffer to write the output to
+     * @throws IOException - if the output is not open.
+     */
+    ResourceWriterJSONLD(OutputSink sink) throws IOException {
+        super(sink);
+        JsonFactory factory = new JsonFactory();
+        factory.setRootValueSeparator(null);
+        factory.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        factory.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+        json = factory.createGenerator(new OutputWriter());
     }
 
     /**
      * Set the JSON-LD vocabulary in case it needs to be different from the properties file.
      * @param url - namespace url.
      */
+    @Override
     public void setVocabulary(final String url) {
         if (!url.equals(nullNamespace) && rdfHeaderWritten) {
             throw new RuntimeException("Can't set vocabulary after output has started!");
@@ -91,170 +154,276 @@ public class ResourceWriterJSONLD {
     }
 
     /**
-     * Generate the JSON-LD header element.
+     * Generate the JSON-LD header: the @context and the start of @graph.
      * @throws IOException - if the output is not open.
      */
-    void writeJsonLDHeader() throws IOException {
+    @Override
+    void writeRdfHeader() throws IOException {
         if (rdfHeaderWritten) {
             return;
         }
-        //start jsonld object
-        json.writeStartObject();
-        //write context field
-        json.writeObjectFieldStart(JSONLD_CONTEXT);
-
-        for (Object key : namespaces.keySet()) {
-            String url = namespaces.get(key.toString());
-            json.writeStringField(key.toString(), url);
+        output("{\n  " + quote(JSONLD_CONTEXT) + " : {");
+        String separator = "\n";
+        for (Map.Entry<String, String> namespace : new TreeMap<String, String>(namespaces).entrySet()) {
+            output(separator + "    " + quote(namespace.getKey()) + " : " + quote(namespace.getValue()));
+            separator = ",\n";
         }
         if (baseurl != null) {
-            json.writeStringField(JSONLD_BASE, baseurl);
+            output(separator + "    " + quote(JSONLD_BASE) + " : " + quote(baseurl));
+            separator = ",\n";
         }
         if (nullNamespace != null) {
-            json.writeStringField(JSONLD_VOCAB, nullNamespace);
+            output(separator + "    " + quote(JSONLD_VOCAB) + " : " + quote(nullNamespace));
         }
-        json.writeEndObject();
-    }
-
-    /**
-     * Set the base URL.
-     * @param url - the base URL
-     */
-    public void setBaseURL(String url) {
-        baseurl = url;
-    }
-
-    /**
-     * Set a flag that tells how to deal with empty strings.
-     * @param emptyStringIsNull - flag. If true then don't output properties for empty strings.
-     */
-    public void setEmptyStringIsNull(boolean emptyStringIsNull) {
-        this.emptyStringIsNull = emptyStringIsNull;
-    }
-
-    /**
-     * Add namespace to table.
-     * @param name - namespace token
-     * @param url - namespace url
-     */
-    public void addNamespace(String name, String url) {
-        namespaces.put(name, url);
+        output("\n  },\n  " + quote(JSONLD_GRAPH) + " : [");
+        rdfHeaderWritten = true;
     }
 
     /**
-     * Generate the JSON-LD footer element.
+     * Write the @context as the fields of an object.
+     *
      * @throws IOException - if the output is not open.
      */
-    public void writeJsonLDFooter() throws IOException {
+    protected void writeContext() throws IOException {
+        json.writeObjectFieldStart(JSONLD_CONTEXT);
+        for (Map.Entry<String, String> namespace : new TreeMap<String, String>(namespaces).entrySet()) {
+            json.writeStringField(namespace.getKey(), namespace.getValue());
+        }
+        if (baseurl != null) {
+            json.writeStringField(JSONLD_BASE, baseurl);
+        }
+        if (nullNamespace != null) {
+            json.writeStringField(JSONLD_VOCAB, nullNamespace);
+        }
         json.writeEndObject();
-        json.close();
     }
 
     /**
-     * Generates a JSON array
-     * @param property - triple consisting of name, datatype and langcode
+     * Generate the JSON-LD footer: the end of @graph and of the document.
      * @throws IOException - if the output is not open.
      */
-    void writeArray(RDFField property) throws IOException {
-        json.writeArrayFieldStart(property.name);
+    @Override
+    void writeRdfFooter() throws IOException {
+        writeRdfHeader();
+        output(" ]\n}\n");
+        flush();
     }
 
     /**
-     * Ends a JSON array
+     * Start a resource. The @id and @type are written when the resource ends.
+     * @param rdfClass - the class to assign
+     * @param segment - the namespace of the table
+     * @param id - the unqualified identifier of the resource
      * @throws IOException - if the output is not open.
      */
-    public void writeEndArray() throws IOException {
-        json.writeEndArray();
+    @Override
+    void writeStartResource(String rdfClass, String segment, String id) throws IOException {
+        StringBuilder about = new StringBuilder();
+        if (baseurl == null) {
+            about.append("#");
+        }
+        about.append(segment);
+        if (id != null) {
+            about.append("/");
+            about.append(StringEncoder.encodeToIRI(id));
+        }
+        subject = about.toString();
+        type = "rdf:Description".equals(rdfClass) ? null : rdfClass;
+        values.clear();
     }
 
     /**
-     * Write the start of a resource - the lines with @id and @type
+     * Write the resource with all the values collected since it started.
      * @param rdfClass - the class to assign
-     * @param segment - the namespace of the table
-     * @param id - the unqualified identifier of the resource
      * @throws IOException - if the output is not open.
      */
-    public void writeStartResource(String rdfClass, String segment, String id) throws IOException {
-        if (rdfHeaderWritten) {
-            return;
-        }
-        String value = "";
-        if (baseurl == null) {
-            value += "#";
+    @Override
+    void writeEndResource(String rdfClass) throws IOException {
+        if (directSink == null) {
+            writeSeparator();
         }
-        if (segment != null) {
-            value += segment;
+        // A buffered resource gets the separator if it is copied to the output.
+        output(lineStart());
+        json.writeStartObject();
+        json.writeStringField(JSONLD_ID, subject);
+        if (type != null) {
+            triples++;
+            json.writeStringField(JSONLD_TYPE, type);
         }
-        if (id != null) {
-            value += "/".concat(StringEncoder.encodeToXml(StringEncoder.encodeToIRI(id)));
+        for (Map.Entry<String, List<Value>> property : values.entrySet()) {
+            List<Value> list = property.getValue();
+            json.writeFieldName(property.getKey());
+            if (list.size() == 1) {
+                writeValue(list.get(0));
+            } else {
+                json.writeStartArray();
+                for (Value value : list) {
+                    writeValue(value);
+                }
+                json.writeEndArray();
+            }
         }
-        json.writeStringField(JSONLD_ID, value);
-        json.writeStringField(JSONLD_TYPE, rdfClass);
-        rdfHeaderWritten = true;
+        json.writeEndObject();
+        json.flush();
+        output(lineEnd());
+        values.clear();
+        subject = null;
     }
 
     /**
-     *
+     * Collect a value of the resource. If the property.datatype is "-&gt;"
+     * then it is a resource reference.
      * @param property - triple consisting of name, datatype and langcode
      * @param value - from database.
-     * @param isArray - if it has a parent array
      * @throws SQLException - if the SQL database is not available
      * @throws IOException - if the output is not open.
      */
-    void writeProperty(RDFField property, Object value, Boolean isArray) throws SQLException, IOException {
-        if (value == null || (emptyStringIsNull && "".equals(value))) {
+    @Override
+    void writeProperty(RDFField property, Object value) throws SQLException, IOException {
+        if (isNull(value)) {
             return;
         }
-        //json.writeStartObject();
+        Value v = new Value();
         if (property.datatype.startsWith("->")) {
             if (property.datatype.length() == 2) {
-                if (!isArray) json.writeObjectFieldStart(property.name);
-                else json.writeStartObject();
-                json.writeStringField(JSONLD_ID, StringEncoder.encodeToXml(StringEncoder.encodeToIRI(Datatypes.getFormattedValue(value))));
-                json.writeEndObject();
+                v.id = StringEncoder.encodeToIRI(Datatypes.getFormattedValue(value));
             } else {
                 // Handle the case of ->countries or ->http://...
-                // If the ref-segment contains a colon then it can't be a fragment
-                // http://www.w3.org/TR/REC-xml-names/#NT-NCName
                 String refSegment = property.datatype.substring(2);
-                if (!isArray) json.writeObjectFieldStart(property.name);
-                else json.writeStartObject();
-                String tmp = "";
+                v.id = StringEncoder.encodeToIRI(refSegment) + "/"
+                        + StringEncoder.encodeToIRI(Datatypes.getFormattedValue(value));
                 if (baseurl == null && refSegment.indexOf(":") == -1) {
-                    tmp = "#";
+                    v.id = "#" + v.id;
                 }
-                json.writeStringField(JSONLD_ID, tmp + StringEncoder.encodeToIRI(refSegment) + "/" + StringEncoder.encodeToXml(StringEncoder.encodeToIRI(Datatypes.getFormattedValue(value))));
-                json.writeEndObject();
             }
-        } else if (!"".equals(property.datatype)) {
-            if (!isArray) json.writeObjectFieldStart(property.name);
-            else json.writeStartObject();
-            json.writeStringField(JSONLD_TYPE, property.datatype);
-            json.writeStringField(JSONLD_VALUE, StringEncoder.encodeToXml(Datatypes.getFormattedValue(value)));
+        } else {
+            v.value = formatValue(value);
+            v.datatype = property.datatype;
+            v.langcode = property.langcode;
+        }
+        List<Value> list = values.get(property.name);
+        if (list == null) {
+            list = new ArrayList<Value>(1);
+            values.put(property.name, list);
+        }
+        list.add(v);
+        triples++;
+    }
+
+    /**
+     * Write a value as a string, a typed or language-tagged value object or
+     * a reference.
+     *
+     * @param v - the value
+     * @throws IOException - if the output is not open.
+     */
+    private void writeValue(Value v) throws IOException {
+        if (v.id != null) {
+            json.writeStartObject();
+            json.writeStringField(JSONLD_ID, v.id);
             json.writeEndObject();
-        } else if (!"".equals(property.langcode)) {
-            json.writeObjectFieldStart(property.name);
-            json.writeStringField(JSONLD_LANGUAGE, property.langcode);
-            json.writeStringField(JSONLD_VALUE, StringEncoder.encodeToXml(Datatypes.getFormattedValue(value)));
+        } else if (!"".equals(v.datatype)) {
+            json.writeStartObject();
+            json.writeStringField(JSONLD_TYPE, v.datatype);
+            json.writeStringField(JSONLD_VALUE, v.value);
+            json.writeEndObject();
+        } else if (!"".equals(v.langcode)) {
+            json.writeStartObject();
+            json.writeStringField(JSONLD_LANGUAGE, v.langcode);
+            json.writeStringField(JSONLD_VALUE, v.value);
             json.writeEndObject();
         } else {
-            json.writeStringField(property.name, StringEncoder.encodeToXml(Datatypes.getFormattedValue(value)));
+            json.writeString(v.value);
         }
     }
 
     /**
-     * Writes the end of a resource.
+     * Write the separator if a resource was written before.
+     *
      * @throws IOException - if the output is not open.
      */
-    public void writeEndResource() throws IOException {
-        json.writeEndObject();
+    private void writeSeparator() throws IOException {
+        if (resourceWritten) {
+            output(resourceSeparator());
+        }
+        resourceWritten = true;
     }
 
     /**
-     * Writes a JSON object start
-     * @throws IOException - if the output is not open.
+     * What goes between two resources.
+     *
+     * @return a comma
      */
-    public void writeStartObject() throws IOException {
-        json.writeStartObject();
+    protected String resourceSeparator() {
+        return ",";
+    }
+
+    /**
+     * What goes before every resource.
+     *
+     * @return a new line and the indentation
+     */
+    protected String lineStart() {
+        return "\n    ";
+    }
+
+    /**
+     * What goes after every resource.
+     *
+     * @return nothing
+     */
+    protected String lineEnd() {
+        return "";
+    }
+
+    /**
+     * A buffered resource is written without the separator, which is added
+     * here if a resource was written before.
+     */
+    @Override
+    void outputResource(byte[] v, int off, int len) throws IOException {
+        if (len == 0) {
+            return;
+        }
+        writeSeparator();
+        super.outputResource(v, off, len);
+    }
+
+    /**
+     * A segment written by another writer for the same format starts
+     * without a separator, so one is added if a resource was written
+     * before.
+     */
+    @Override
+    protected void output(InputStream in) throws IOException {
+        PushbackInputStream segment = new PushbackInputStream(in);
+        int first = segment.read();
+        if (first == -1) {
+            return;
+        }
+        segment.unread(first);
+        writeSeparator();
+        super.output(segment);
+    }
+
+    @Override
+    OutputSink redirect(OutputSink to) {
+        OutputSink from = super.redirect(to);
+        if (directSink == null) {
+            directSink = from;
+        } else if (to == directSink) {
+            directSink = null;
+        }
+        return from;
+    }
+
+    /**
+     * Quote a string for JSON.
+     *
+     * @param s - the string
+     * @return the string in double quotes with the necessary escapes
+     */
+    private static String quote(String s) {
+        return "\"" + new String(JsonStringEncoder.getInstance().quoteAsString(s)) + "\"";
     }
 }
@@ -0,0 +1,96 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is RDFExport 1.0
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev or Zero Technologies are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Søren Roug
+ */
+package eionet.rdfexport;
+
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+
+/**
+ * Class for writing resources as newline delimited JSON-LD. The first line
+ * is an object with the @context, and every other line is a compact node
+ * object for one subject. Each line can be parsed on its own, so the output
+ * can be read as a stream and split anywhere between lines.
+ *
+ * @author Søren Roug
+ */
+public class ResourceWriterNDJSONLD extends ResourceWriterJSONLD {
+
+    /**
+     * Constructor.
+     *
+     * @param stream - the stream to write the output to
+     * @throws IOException - if the output is not open.
+     */
+    public ResourceWriterNDJSONLD(OutputStreamWriter stream) throws IOException {
+        super(stream);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param sink - the buffer to write the output to
+     * @throws IOException - if the output is not open.
+     */
+    ResourceWriterNDJSONLD(OutputSink sink) throws IOException {
+        super(sink);
+    }
+
+    /**
+     * Write the line with the @context.
+     */
+    @Override
+    void writeRdfHeader() throws IOException {
+        if (rdfHeaderWritten) {
+            return;
+        }
+        json.writeStartObject();
+        writeContext();
+        json.writeEndObject();
+        json.flush();
+        output("\n");
+        rdfHeaderWritten = true;
+    }
+
+    /**
+     * There is no footer in newline delimited JSON-LD.
+     */
+    @Override
+    void writeRdfFooter() throws IOException {
+        writeRdfHeader();
+        flush();
+    }
+
+    @Override
+    protected String resourceSeparator() {
+        return "";
+    }
+
+    @Override
+    protected String lineStart() {
+        return "";
+    }
+
+    @Override
+    protected String lineEnd() {
+        return "\n";
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is RDFExport 1.0
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev or Zero Technologies are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Søren Roug
+ */
+package eionet.rdfexport;
+
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+
+/**
+ * Class for writing resources as N-Quads. It is like N-Triples, but every
+ * triple is put in a named graph for the table it came from.
+ */
+public class ResourceWriterNQ extends ResourceWriterNT {
+
+    /** The end of each line with the graph of the current resource. */
+    private String graphEnd = " .\n";
+
+    /**
+     * Constructor.
+     *
+     * @param stream - the stream to write the output to
+     */
+    public ResourceWriterNQ(OutputStreamWriter stream) {
+        super(stream);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param sink - the buffer to write the output to
+     */
+    ResourceWriterNQ(OutputSink sink) {
+        super(sink);
+    }
+
+    @Override
+    public void writeStartResource(String rdfClass, String segment, String id) throws IOException {
+        graphEnd = " <" + baseurl + segment + "> .\n";
+        super.writeStartResource(rdfClass, segment, id);
+    }
+
+    @Override
+    protected String endOfStatement() {
+        return graphEnd;
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is RDFExport 1.0
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev or Zero Technologies are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Søren Roug
+ */
+package eionet.rdfexport;
+
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.sql.SQLException;
+import java.util.HashMap;
+
+/**
+ * Class for writing resources as N-Triples. Every triple is written in full
+ * on its own line, so the output can be split anywhere between lines and
+ * loaded in parallel. N-Triples can only hold absolute IRIs, so the
+ * identifiers are resolved against the base URL, which must be set.
+ */
+public class ResourceWriterNT extends ResourceWriter {
+
+    /** The namespace of the XML Schema datatypes. */
+    private static final String XSD_NAMESPACE = "http://www.w3.org/2001/XMLSchema#";
+
+    /** Expanded IRIs of prefixed names that have been seen. */
+    private HashMap<String, String> expandedNames = new HashMap<String, String>();
+
+    /** The subject of the resource being written, already wrapped in angle brackets. */
+    private String subject;
+
+    /**
+     * Constructor.
+     *
+     * @param stream - the stream to write the output to
+     */
+    public ResourceWriterNT(OutputStreamWriter stream) {
+        super(stream);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param sink - the buffer to write the output to
+     */
+    ResourceWriterNT(OutputSink sink) {
+        super(sink);
+    }
+
+    /**
+     * Set the base URL. N-Triples can't hold relative IRIs, so it is required.
+     *
+     * @param url
+     *            - the base url.
+     * @throws IllegalArgumentException
+     *             - if the base url is not given
+     */
+    @Override
+    public void setBaseURL(final String url) {
+        if (url == null || url.isEmpty()) {
+            throw new IllegalArgumentException("The nt and nq formats need the baseurl property");
+        }
+        super.setBaseURL(url);
+    }
+
+    @Override
+    public void addNamespace(String name, String url) {
+        super.addNamespace(name, url);
+        expandedNames.clear();
+    }
+
+    /**
+     * There is no header in N-Triples.
+     */
+    @Override
+    public void writeRdfHeader() throws IOException {
+    }
+
+    @Override
+    public void writeRdfFooter() throws IOException {
+        flush();
+    }
+
+    @Override
+    public void writeStartResource(String rdfClass, String segment, String id) throws IOException {
+        if (baseurl == null) {
+            throw new IllegalStateException("The nt and nq formats need the baseurl property");
+        }
+        StringBuilder about = new StringBuilder("<");
+        about.append(baseurl).append(segment);
+        if (id != null) {
+            about.append("/");
+            about.append(StringEncoder.encodeToIRI(id));
+        }
+        subject = about.append(">").toString();
+        if (!"rdf:Description".equals(rdfClass)) {
+            writeTriple("<http://www.w3.org/1999/02/22-rdf-syntax-ns#type>", "<" + expandName(rdfClass) + ">");
+        }
+    }
+
+    @Override
+    public void writeEndResource(String rdfClass) throws IOException {
+        subject = null;
+    }
+
+    @Override
+    public void writeProperty(RDFField property, Object value) throws SQLException, IOException {
+        if (isNull(value)) {
+            return;
+        }
+        String predicate = "<" + expandName(property.name) + ">";
+        if (property.datatype.startsWith("->")) {
+            String reference;
+            if (property.datatype.length() == 2) {
+                // Handle the case where the value contains the pointer.
+                reference = resolve(StringEncoder.encodeToIRI(Datatypes.getFormattedValue(value)));
+            } else {
+                // Handle the case of ->countries or ->http://...
+                String refSegment = property.datatype.substring(2);
+                reference = StringEncoder.encodeToIRI(refSegment) + "/"
+                        + StringEncoder.encodeToIRI(Datatypes.getFormattedValue(value));
+                if (!isAbsolute(refSegment)) {
+                    reference = baseurl + reference;
+                }
+            }
+            writeTriple(predicate, "<" + reference + ">");
+            return;
+        }
+        String suffix;
+        if (!"".equals(property.datatype)) {
+            if (property.datatype.startsWith("xsd:")) {
+                suffix = "\"^^<" + XSD_NAMESPACE + property.datatype.substring(4) + ">";
+            } else {
+                suffix = "\"^^<" + expandName(property.datatype) + ">";
+            }
+        } else if (!"".equals(property.langcode)) {
+            suffix = "\"@" + property.langcode;
+        } else {
+            suffix = "\"";
+        }
+        // The value is streamed, so a LOB is never held in memory.
+        triples++;
+        output(subject);
+        output(" ");
+        output(predicate);
+        output(" \"");
+        outputValue(value, StringEncoder.LITERAL_ESCAPES);
+        output(suffix);
+        output(endOfStatement());
+    }
+
+    /**
+     * Write a triple about the current subject.
+     *
+     * @param predicate
+     *            - the predicate in angle brackets
+     * @param object
+     *            - the object as an IRI in angle brackets or a literal
+     * @throws IOException
+     *             - if the output is not open.
+     */
+    protected void writeTriple(String predicate, String object) throws IOException {
+        triples++;
+        output(subject);
+        output(" ");
+        output(predicate);
+        output(" ");
+        output(object);
+        output(endOfStatement());
+    }
+
+    /**
+     * The end of each line. Subclasses can put a graph name in front of the
+     * full stop.
+     *
+     * @return the text to end a statement with
+     */
+    protected String endOfStatement() {
+        return " .\n";
+    }
+
+    /**
+     * Resolve a relative IRI against the base URL. IRIs with a scheme are
+     * returned as they are.
+     *
+     * @param iri
+     *            - the IRI from the database
+     * @return the absolute IRI
+     */
+    protected String resolve(String iri) {
+        return isAbsolute(iri) ? iri : baseurl + iri;
+    }
+
+    /**
+     * Tell if an IRI starts with a scheme. A colon further in, as in the
+     * identifier EU:1 or the path person/EU:1, doesn't make it absolute.
+     *
+     * @param iri
+     *            - the IRI
+     * @return true if the IRI has a scheme
+     */
+    static boolean isAbsolute(String iri) {
+        int colon = iri.indexOf(':');
+        if (colon < 1 || !Character.isLetter(iri.charAt(0))) {
+            return false;
+        }
+        for (int i = 1; i < colon; i++) {
+            char c = iri.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '+' && c != '-' && c != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Expand a property or class name to a full IRI. A name with a known
+     * prefix gets the namespace of the prefix. A name without a prefix is
+     * put in the vocabulary of the table. Anything else is taken to be an
+     * IRI already.
+     *
+     * @param name
+     *            - the name as written in the properties file
+     * @return the IRI
+     */
+    String expandName(String name) {
+        int colon = name.indexOf(":");
+        if (colon == -1) {
+            return (nullNamespace == null ? "" : nullNamespace) + name;
+        }
+        String iri = expandedNames.get(name);
+        if (iri == null) {
+            String url = namespaces.get(name.substring(0, colon));
+            iri = url == null ? name : url + name.substring(colon + 1);
+            expandedNames.put(name, iri);
+        }
+        return iri;
+    }
+}
@@ -44,6 +44,15 @@ public class ResourceWriterTTL extends ResourceWriter {
         super(stream);
     }
 
+    /**
+     * Constructor.
+     *
+     * @param sink - the buffer to write the output to
+     */
+    ResourceWriterTTL(OutputSink sink) {
+        super(sink);
+    }
+
     @Override
     public void setVocabulary(final String url) {
         if (!url.equals(nullNamespace) && rdfHeaderWritten) {
@@ -85,6 +94,7 @@ public class ResourceWriterTTL extends ResourceWriter {
 
     @Override
     public void writeStartResource(String rdfClass, String segment, String id) throws IOException {
+        triples++;
         output("<");
         if (baseurl == null) {
             output("#");
@@ -92,7 +102,7 @@ public class ResourceWriterTTL extends ResourceWriter {
         output(segment);
         if (id != null) {
             output("/");
-            output(StringEncoder.encodeToXml(StringEncoder.encodeToIRI(id.toString())));
+            output(StringEncoder.encodeToXmlIRI(id.toString()));
         }
         output("> a ");
         if (rdfClass.startsWith("http")) {
@@ -115,9 +125,10 @@ public class ResourceWriterTTL extends ResourceWriter {
     @Override
     public void writeProperty(RDFField property, Object value) throws SQLException, IOException {
         String typelangAttr = "";
-        if (value == null || (emptyStringIsNull && "".equals(value))) {
+        if (isNull(value)) {
             return;
         }
+        triples++;
         output(";\n    ");
         if (!property.name.contains(":")) {
             output(":");
@@ -129,7 +140,7 @@ public class ResourceWriterTTL extends ResourceWriter {
             if (property.datatype.length() == 2) {
                 // Handle the case where the value contains the pointer.
                 output("<");
-                output(StringEncoder.encodeToXml(StringEncoder.encodeToIRI(Datatypes.getFormattedValue(value))));
+                output(StringEncoder.encodeToXmlIRI(Datatypes.getFormattedValue(value)));
                 output(">");
             } else {
                 // Handle the case of ->countries or ->http://...
@@ -142,7 +153,7 @@ public class ResourceWriterTTL extends ResourceWriter {
                 }
                 output(StringEncoder.encodeToIRI(refSegment));
                 output("/");
-                output(StringEncoder.encodeToXml(StringEncoder.encodeToIRI(Datatypes.getFormattedValue(value))));
+                output(StringEncoder.encodeToXmlIRI(Datatypes.getFormattedValue(value)));
                 output(">");
             }
             return;
@@ -157,7 +168,7 @@ public class ResourceWriterTTL extends ResourceWriter {
             typelangAttr = "@" + property.langcode;
         }
         output("\"");
-        output(Datatypes.getFormattedValue(value));
+        outputValue(value, StringEncoder.LITERAL_ESCAPES);
         output("\"");
         output(typelangAttr);
     }
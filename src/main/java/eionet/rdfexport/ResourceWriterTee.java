@@ -0,0 +1,193 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is RDFExport 1.0
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev or Zero Technologies are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Søren Roug
+ */
+package eionet.rdfexport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes every resource to several resource writers, so one scan of the
+ * database gives the output in several formats. Each writer has its own
+ * output. Output that is already serialised, such as the segments of a
+ * parallel export, can't be copied to several formats.
+ */
+class ResourceWriterTee extends ResourceWriter {
+
+    /** The writers to send the resources to. */
+    private List<ResourceWriter> writers;
+
+    /**
+     * Constructor. The settings of the first writer are taken over.
+     *
+     * @param writers - the writers to send the resources to
+     */
+    ResourceWriterTee(ResourceWriter... writers) {
+        super((OutputSink) null);
+        this.writers = new ArrayList<ResourceWriter>(Arrays.asList(writers));
+        namespaces.putAll(writers[0].namespaces);
+        nullNamespace = writers[0].nullNamespace;
+        baseurl = writers[0].baseurl;
+        emptyStringIsNull = writers[0].emptyStringIsNull;
+        blobEncoding = writers[0].blobEncoding;
+    }
+
+    /**
+     * Send the resources to one more writer. Must be called before the
+     * output starts.
+     *
+     * @param writer - the writer
+     */
+    void add(ResourceWriter writer) {
+        writers.add(writer);
+    }
+
+    @Override
+    public void setVocabulary(final String url) {
+        super.setVocabulary(url);
+        for (ResourceWriter writer : writers) {
+            writer.setVocabulary(url);
+        }
+    }
+
+    @Override
+    public void setBaseURL(final String url) {
+        super.setBaseURL(url);
+        for (ResourceWriter writer : writers) {
+            writer.setBaseURL(url);
+        }
+    }
+
+    @Override
+    public void setEmptyStringIsNull(final boolean emptyStringIsNull) {
+        super.setEmptyStringIsNull(emptyStringIsNull);
+        for (ResourceWriter writer : writers) {
+            writer.setEmptyStringIsNull(emptyStringIsNull);
+        }
+    }
+
+    @Override
+    public void setBlobEncoding(final String blobEncoding) {
+        super.setBlobEncoding(blobEncoding);
+        for (ResourceWriter writer : writers) {
+            writer.setBlobEncoding(blobEncoding);
+        }
+    }
+
+    @Override
+    public void addNamespace(String name, String url) {
+        super.addNamespace(name, url);
+        for (ResourceWriter writer : writers) {
+            writer.addNamespace(name, url);
+        }
+    }
+
+    @Override
+    public void writeRdfHeader() throws IOException {
+        for (ResourceWriter writer : writers) {
+            writer.writeRdfHeader();
+        }
+    }
+
+    @Override
+    public void writeRdfFooter() throws IOException {
+        for (ResourceWriter writer : writers) {
+            writer.writeRdfFooter();
+        }
+    }
+
+    @Override
+    public void writeStartResource(String rdfClass, String segment, String id) throws IOException {
+        for (ResourceWriter writer : writers) {
+            writer.writeStartResource(rdfClass, segment, id);
+        }
+    }
+
+    @Override
+    public void writeEndResource(String rdfClass) throws IOException {
+        for (ResourceWriter writer : writers) {
+            writer.writeEndResource(rdfClass);
+        }
+    }
+
+    @Override
+    public void writeProperty(RDFField property, Object value) throws SQLException, IOException {
+        for (ResourceWriter writer : writers) {
+            writer.writeProperty(property, value);
+        }
+    }
+
+    /**
+     * Number of triples written. All the writers write the same triples,
+     * so the count of the first is given.
+     *
+     * @return the count
+     */
+    @Override
+    long getTripleCount() {
+        return writers.get(0).getTripleCount();
+    }
+
+    /**
+     * Number of bytes written in the format of the first writer.
+     *
+     * @return the count
+     */
+    @Override
+    long getBytesWritten() {
+        return writers.get(0).getBytesWritten();
+    }
+
+    @Override
+    protected void output(String v) throws IOException {
+        throw new UnsupportedOperationException("Serialised output can't be copied to several formats");
+    }
+
+    @Override
+    protected void output(byte[] v) throws IOException {
+        throw new UnsupportedOperationException("Serialised output can't be copied to several formats");
+    }
+
+    @Override
+    protected void output(byte[] v, int off, int len) throws IOException {
+        throw new UnsupportedOperationException("Serialised output can't be copied to several formats");
+    }
+
+    @Override
+    protected void output(InputStream in) throws IOException {
+        throw new UnsupportedOperationException("Serialised output can't be copied to several formats");
+    }
+
+    @Override
+    OutputSink redirect(OutputSink to) {
+        throw new UnsupportedOperationException("The output of several formats can't be redirected");
+    }
+
+    @Override
+    protected void flush() throws IOException {
+        for (ResourceWriter writer : writers) {
+            writer.flush();
+        }
+    }
+}
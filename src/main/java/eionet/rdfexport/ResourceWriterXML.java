@@ -32,6 +32,27 @@ import java.util.HashMap;
  */
 public class ResourceWriterXML extends ResourceWriter {
 
+    /** Start of the rdf:about attribute. */
+    private static final byte[] ABOUT = OutputSink.ascii(" rdf:about=\"");
+    /** End of the start tag of a resource. */
+    private static final byte[] END_ABOUT = OutputSink.ascii("\">\n");
+    /** Start of a property element. */
+    private static final byte[] START_PROPERTY = OutputSink.ascii(" <");
+    /** Start of the rdf:resource attribute. */
+    private static final byte[] RESOURCE = OutputSink.ascii(" rdf:resource=\"");
+    /** End of a property element with a reference. */
+    private static final byte[] END_RESOURCE = OutputSink.ascii("\"/>\n");
+    /** Start of an end tag. */
+    private static final byte[] START_END_TAG = OutputSink.ascii("</");
+    /** End of a tag and the line. */
+    private static final byte[] END_TAG = OutputSink.ascii(">\n");
+    /** End of a start tag. */
+    private static final byte[] GT = OutputSink.ascii(">");
+    /** Fragment marker for relative references. */
+    private static final byte[] HASH = OutputSink.ascii("#");
+    /** Separator between segment and id. */
+    private static final byte[] SLASH = OutputSink.ascii("/");
+
     /** If output has started, then you can't change the nullNamespace. */
     private Boolean rdfHeaderWritten = false;
 
@@ -44,6 +65,15 @@ public class ResourceWriterXML extends ResourceWriter {
         super(stream);
     }
 
+    /**
+     * Constructor.
+     *
+     * @param sink - the buffer to write the output to
+     */
+    ResourceWriterXML(OutputSink sink) {
+        super(sink);
+    }
+
     @Override
     public void setVocabulary(final String url) {
         if (!url.equals(nullNamespace) && rdfHeaderWritten) {
@@ -90,70 +120,77 @@ public class ResourceWriterXML extends ResourceWriter {
 
     @Override
     public void writeStartResource(String rdfClass, String segment, String id) throws IOException {
+        if (!"rdf:Description".equals(rdfClass)) {
+            triples++;
+        }
         output("<");
         output(rdfClass);
-        output(" rdf:about=\"");
+        output(ABOUT);
         if (baseurl == null) {
-            output("#");
+            output(HASH);
         }
         output(segment);
         if (id != null) {
-            output("/");
-            output(StringEncoder.encodeToXml(StringEncoder.encodeToIRI(id.toString())));
+            output(SLASH);
+            outputEscaped(id, StringEncoder.XML_IRI_ESCAPES);
         }
-        output("\">\n");
+        output(END_ABOUT);
     }
 
     @Override
     public void writeEndResource(String rdfClass) throws IOException {
-        output("</");
+        output(START_END_TAG);
         output(rdfClass);
-        output(">\n");
+        output(END_TAG);
     }
 
     @Override
     public void writeProperty(RDFField property, Object value) throws SQLException, IOException {
         String typelangAttr = "";
-        if (value == null || (emptyStringIsNull && "".equals(value))) {
+        if (isNull(value)) {
             return;
         }
-        output(" <");
-        output(property.name);
+        triples++;
+        byte[] name = property.getNameBytes();
+        output(START_PROPERTY);
+        output(name);
         if (property.datatype.startsWith("->")) {
             // Handle pointers
             if (property.datatype.length() == 2) {
                 // Handle the case where the value contains the pointer.
-                output(" rdf:resource=\"");
-                output(StringEncoder.encodeToXml(StringEncoder.encodeToIRI(Datatypes.getFormattedValue(value))));
-                output("\"/>\n");
+                output(RESOURCE);
+                outputEscaped(Datatypes.getFormattedValue(value), StringEncoder.XML_IRI_ESCAPES);
+                output(END_RESOURCE);
             } else {
                 // Handle the case of ->countries or ->http://...
                 // If the ref-segment contains a colon then it can't be a fragment
                 // http://www.w3.org/TR/REC-xml-names/#NT-NCName
                 String refSegment = property.datatype.substring(2);
-                output(" rdf:resource=\"");
+                output(RESOURCE);
                 if (baseurl == null && refSegment.indexOf(":") == -1) {
-                    output("#");
+                    output(HASH);
                 }
-                output(StringEncoder.encodeToIRI(refSegment));
-                output("/");
-                output(StringEncoder.encodeToXml(StringEncoder.encodeToIRI(Datatypes.getFormattedValue(value))));
-                output("\"/>\n");
+                outputEscaped(refSegment, StringEncoder.IRI_ESCAPES);
+                output(SLASH);
+                outputEscaped(Datatypes.getFormattedValue(value), StringEncoder.XML_IRI_ESCAPES);
+                output(END_RESOURCE);
             }
             return;
         } else if (!"".equals(property.datatype)) {
-            if (property.datatype.startsWith("xsd:")) {
-                property.datatype = "http://www.w3.org/2001/XMLSchema#" + property.datatype.substring(4);
+            // The field is left alone, as the same property can go to writers of other formats.
+            String datatype = property.datatype;
+            if (datatype.startsWith("xsd:")) {
+                datatype = "http://www.w3.org/2001/XMLSchema#" + datatype.substring(4);
             }
-            typelangAttr = " rdf:datatype=\"" + property.datatype + "\"";
+            typelangAttr = " rdf:datatype=\"" + datatype + "\"";
         } else if (!"".equals(property.langcode)) {
             typelangAttr = " xml:lang=\"" + property.langcode + "\"";
         }
         output(typelangAttr);
-        output(">");
-        output(StringEncoder.encodeToXml(Datatypes.getFormattedValue(value)));
-        output("</");
-        output(property.name);
-        output(">\n");
+        output(GT);
+        outputValue(value, StringEncoder.XML_ESCAPES);
+        output(START_END_TAG);
+        output(name);
+        output(END_TAG);
     }
 }
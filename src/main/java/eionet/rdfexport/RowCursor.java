@@ -0,0 +1,109 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is RDFExport 1.0
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev or Zero Technologies are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Søren Roug, EEA
+ */
+package eionet.rdfexport;
+
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * The rows of a query as {@link GenerateRDF#runQuery} reads them. The first
+ * column is the id. The other columns are read with the column readers of
+ * the query.
+ */
+interface RowCursor {
+
+    /**
+     * Move to the next row.
+     *
+     * @return false if there are no more rows
+     * @throws SQLException
+     *             - if the SQL database is not available
+     */
+    boolean next() throws SQLException;
+
+    /**
+     * Get the id of the current row.
+     *
+     * @return the value of the first column
+     * @throws SQLException
+     *             - if the SQL database is not available
+     */
+    String getId() throws SQLException;
+
+    /**
+     * Get a value of the current row.
+     *
+     * @param column
+     *            - the column number, starting at 2
+     * @return the value as returned by the column reader
+     * @throws SQLException
+     *             - if the SQL database is not available
+     */
+    Object getValue(int column) throws SQLException;
+
+    /**
+     * Stop reading. The result set is left open.
+     */
+    void close();
+
+    /**
+     * Reads the rows straight from the result set.
+     */
+    class Direct implements RowCursor {
+        /** The result set. */
+        private ResultSet rs;
+        /** The columns of the query. */
+        private RDFField[] names;
+
+        /**
+         * Constructor.
+         *
+         * @param rs
+         *            - the result set
+         * @param names
+         *            - the columns with their readers
+         */
+        Direct(ResultSet rs, RDFField[] names) {
+            this.rs = rs;
+            this.names = names;
+        }
+
+        @Override
+        public boolean next() throws SQLException {
+            return rs.next();
+        }
+
+        @Override
+        public String getId() throws SQLException {
+            return rs.getString(1);
+        }
+
+        @Override
+        public Object getValue(int column) throws SQLException {
+            return names[column].reader.read(rs, column);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
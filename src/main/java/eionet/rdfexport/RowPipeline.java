@@ -0,0 +1,321 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is RDFExport 1.0
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev or Zero Technologies are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Søren Roug, EEA
+ */
+package eionet.rdfexport;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the rows of a query in a thread of its own, so fetching from the
+ * database overlaps with writing the output. The rows are handed over in
+ * batches. A fixed number of batches is made at the start and used again
+ * and again, so when the writer falls behind, the reader waits for a free
+ * batch and the memory stays bounded.
+ * <p>
+ * The values are copied out of the result set, since they can't be read
+ * after the result set has moved on. A LOB would have to be read whole
+ * into memory, and then the memory would not be bounded by the batches, so
+ * queries with LOB columns are not pipelined; see {@link #hasLobs}. A LOB
+ * that still turns up, from a column of another type, is read as text or as
+ * a byte array.
+ */
+class RowPipeline implements RowCursor {
+
+    /**
+     * A number of rows.
+     */
+    private static class Batch {
+        /** The ids of the rows. */
+        String[] ids;
+        /** The values of the rows, indexed by row and column. */
+        Object[][] rows;
+        /** Number of rows in use. */
+        int size;
+
+        /**
+         * Constructor.
+         *
+         * @param capacity - number of rows
+         * @param numcols - number of columns
+         */
+        Batch(int capacity, int numcols) {
+            ids = new String[capacity];
+            rows = new Object[capacity][numcols + 1];
+        }
+    }
+
+    /** Marks the end of the rows. */
+    private static final Batch END = new Batch(0, 0);
+
+    /** The result set. */
+    private ResultSet rs;
+
+    /** The columns of the query. */
+    private RDFField[] names;
+
+    /** Batches ready to be filled. */
+    private BlockingQueue<Batch> free;
+
+    /** Batches filled by the reader, in order. */
+    private BlockingQueue<Batch> filled;
+
+    /** The batch being read by the writer. */
+    private Batch current;
+
+    /** Position in the current batch. */
+    private int position;
+
+    /** The reader thread. */
+    private Thread reader;
+
+    /** Set when the reader has failed. */
+    private volatile Throwable failure;
+
+    /** Set when the writer doesn't want more rows. */
+    private volatile boolean stopped;
+
+    /** Name of table in properties file, for the flight recorder. */
+    private String table;
+
+    /** Name of the query in properties file, for the flight recorder. */
+    private String query;
+
+    /**
+     * Constructor. Starts reading right away.
+     *
+     * @param rs
+     *            - the result set
+     * @param names
+     *            - the columns with their readers
+     * @param batchSize
+     *            - number of rows in a batch
+     * @param depth
+     *            - number of batches
+     * @param table
+     *            - name of table in properties file
+     * @param query
+     *            - name of the query in properties file
+     */
+    RowPipeline(ResultSet rs, RDFField[] names, final int batchSize, int depth, String table, String query) {
+        if (batchSize < 1 || depth < 1) {
+            throw new IllegalArgumentException("The pipeline batch size and depth must be at least 1");
+        }
+        this.rs = rs;
+        this.names = names;
+        this.table = table;
+        this.query = query;
+        free = new ArrayBlockingQueue<Batch>(depth);
+        // Room for the end marker as well as all the batches.
+        filled = new ArrayBlockingQueue<Batch>(depth + 1);
+        for (int i = 0; i < depth; i++) {
+            free.add(new Batch(batchSize, names.length - 1));
+        }
+        reader = new Thread(() -> fill(batchSize), "rdfexport-fetch");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Tell if a query has LOB columns. Their values are streamed to the
+     * output when the rows are read directly, but would have to be read
+     * whole into the batches of a pipeline.
+     *
+     * @param rsmd
+     *            - the columns of the query
+     * @return true if a column other than the id is a CLOB, NCLOB or BLOB
+     * @throws SQLException
+     *             - if the SQL database is not available
+     */
+    static boolean hasLobs(ResultSetMetaData rsmd) throws SQLException {
+        for (int i = 2; i <= rsmd.getColumnCount(); i++) {
+            switch (rsmd.getColumnType(i)) {
+            case Types.CLOB:
+            case Types.NCLOB:
+            case Types.BLOB:
+                return true;
+            default:
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The reader thread. Fills batches until the rows run out.
+     *
+     * @param batchSize
+     *            - number of rows in a batch
+     */
+    private void fill(int batchSize) {
+        try {
+            int numcols = names.length - 1;
+            boolean more = true;
+            long number = 0;
+            while (more && !stopped) {
+                Batch batch = free.take();
+                batch.size = 0;
+                ExportEvents.FetchBatch event = new ExportEvents.FetchBatch(table, query, ++number);
+                while (batch.size < batchSize && !stopped && (more = rs.next())) {
+                    batch.ids[batch.size] = rs.getString(1);
+                    Object[] row = batch.rows[batch.size];
+                    for (int i = 2; i <= numcols; i++) {
+                        row[i] = detach(names[i].reader.read(rs, i));
+                    }
+                    batch.size++;
+                }
+                event.done(batch.size);
+                if (batch.size > 0) {
+                    filled.put(batch);
+                }
+            }
+        } catch (Throwable e) {
+            failure = e;
+        } finally {
+            filled.offer(END);
+        }
+    }
+
+    /**
+     * Make a copy of a value that stays valid after the result set moves on.
+     *
+     * @param value
+     *            - value from a column reader
+     * @return the value to keep
+     * @throws SQLException
+     *             - if the SQL database is not available
+     * @throws IOException
+     *             - if a LOB can't be read
+     */
+    private static Object detach(Object value) throws SQLException, IOException {
+        if (value instanceof CharSequence && !(value instanceof String)) {
+            return value.toString();
+        } else if (value instanceof Clob) {
+            return Datatypes.getFormattedValue(value);
+        } else if (value instanceof Blob) {
+            ExportEvents.Lob event = new ExportEvents.Lob("BLOB");
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            InputStream in = ((Blob) value).getBinaryStream();
+            try {
+                byte[] buf = new byte[8192];
+                int n;
+                while ((n = in.read(buf)) != -1) {
+                    bytes.write(buf, 0, n);
+                }
+            } finally {
+                in.close();
+            }
+            event.done(bytes.size());
+            return bytes.toByteArray();
+        }
+        return value;
+    }
+
+    @Override
+    public boolean next() throws SQLException {
+        if (current == END) {
+            return false;
+        }
+        if (current != null) {
+            if (++position < current.size) {
+                return true;
+            }
+            free.offer(current);
+        }
+        try {
+            current = filled.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for rows", e);
+        }
+        position = 0;
+        if (current == END) {
+            rethrow();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Throw the exception the reader failed with.
+     *
+     * @throws SQLException
+     *             - if the reader failed with a database problem
+     */
+    private void rethrow() throws SQLException {
+        Throwable e = failure;
+        if (e == null) {
+            return;
+        } else if (e instanceof SQLException) {
+            throw (SQLException) e;
+        } else if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        } else if (e instanceof Error) {
+            throw (Error) e;
+        }
+        throw new SQLException("Failed to read rows", e);
+    }
+
+    @Override
+    public String getId() {
+        return current.ids[position];
+    }
+
+    @Override
+    public Object getValue(int column) {
+        return current.rows[position][column];
+    }
+
+    /**
+     * Stop the reader and wait for it, so the result set can be closed.
+     * The reader is not interrupted, as some drivers close the connection
+     * on an interrupt. Instead the filled batches are handed back, so the
+     * reader is never left waiting for a free one.
+     */
+    @Override
+    public void close() {
+        stopped = true;
+        if (current != null && current != END) {
+            free.offer(current);
+        }
+        current = END;
+        try {
+            while (reader.isAlive()) {
+                Batch batch = filled.poll(10, TimeUnit.MILLISECONDS);
+                if (batch != null && batch != END) {
+                    free.offer(batch);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is RDFExport 1.0
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev or Zero Technologies are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Søren Roug, EEA
+ */
+package eionet.rdfexport;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An export split into many files, called shards, in a directory. Every
+ * table gets its own shards, and a table can be rolled over to a new shard
+ * after a number of resources or bytes. Each shard is a complete document.
+ * The shards are listed in a manifest with their counts.
+ * <p>
+ * The shards of different tables can be written by different threads.
+ */
+class ShardedOutput {
+
+    /** Name of the manifest in the directory. */
+    static final String MANIFEST = "manifest.tsv";
+
+    /** The directory the shards are written to. */
+    private File directory;
+
+    /** File extension of the shards, including the dot. */
+    private String extension;
+
+    /** True to gzip each shard. */
+    private boolean zip;
+
+    /** Resources per shard before rolling over, or 0 for no limit. */
+    private long maxResources;
+
+    /** Bytes per shard before rolling over, or 0 for no limit. */
+    private long maxBytes;
+
+    /** Number of shards opened so far, by name. */
+    private Map<String, Integer> sequences = new HashMap<String, Integer>();
+
+    /** Lines of the manifest, by file name. */
+    private Map<String, String> manifest = new TreeMap<String, String>();
+
+    /**
+     * One file of the export.
+     */
+    class Shard {
+
+        /** The file. */
+        private File file;
+
+        /** The table in the shard, or null for the document information. */
+        private String table;
+
+        /** Counts the bytes before they are compressed. */
+        private CountingOutputStream counter;
+
+        /** The stream to write to. */
+        private OutputStream stream;
+
+        /** Number of resources started in the shard. */
+        private long resources;
+
+        /**
+         * Constructor.
+         *
+         * @param file
+         *            - the file to create
+         * @param table
+         *            - the table in the shard
+         * @throws IOException
+         *             - if the file can't be created
+         */
+        private Shard(File file, String table) throws IOException {
+            this.file = file;
+            this.table = table;
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+            if (zip) {
+                out = new GZIPOutputStream(out, OutputSink.BUFFER_SIZE);
+            }
+            counter = new CountingOutputStream(out);
+            stream = counter;
+        }
+
+        /**
+         * The stream to write the shard to.
+         *
+         * @return the stream
+         */
+        OutputStream getStream() {
+            return stream;
+        }
+
+        /**
+         * Count a resource.
+         */
+        void resourceStarted() {
+            resources++;
+        }
+
+        /**
+         * Check if the shard has reached one of the limits.
+         *
+         * @param buffered
+         *            - bytes written but not yet passed to the stream
+         * @return true if the next resource must go in a new shard
+         */
+        boolean isFull(long buffered) {
+            return maxResources > 0 && resources >= maxResources
+                    || maxBytes > 0 && counter.count + buffered >= maxBytes;
+        }
+    }
+
+    /**
+     * Counts the bytes written through it.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        /** Number of bytes written. */
+        private long count;
+
+        /**
+         * Constructor.
+         *
+         * @param out
+         *            - the stream to write to
+         */
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param directory
+     *            - where to write the shards. It is created if it doesn't
+     *            exist.
+     * @param format
+     *            - the output format, which gives the file extension
+     * @param limit
+     *            - "table" for one shard per table, a number of resources,
+     *            or a number of bytes followed by K, M or G.
+     * @param zip
+     *            - true to gzip each shard
+     * @throws IOException
+     *             - if the directory can't be created
+     */
+    ShardedOutput(File directory, String format, String limit, boolean zip) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create the directory " + directory);
+        }
+        this.directory = directory;
+        this.zip = zip;
+        extension = ("xml".equals(format) ? ".rdf" : "." + format) + (zip ? ".gz" : "");
+        if (!"table".equals(limit)) {
+            char unit = Character.toUpperCase(limit.charAt(limit.length() - 1));
+            int shift = unit == 'K' ? 10 : unit == 'M' ? 20 : unit == 'G' ? 30 : -1;
+            if (shift == -1) {
+                maxResources = Long.parseLong(limit);
+            } else {
+                maxBytes = Long.parseLong(limit.substring(0, limit.length() - 1)) << shift;
+            }
+            if (maxResources < 0 || maxBytes < 0 || maxResources == 0 && maxBytes == 0) {
+                throw new IllegalArgumentException("Invalid shard size: " + limit);
+            }
+        }
+    }
+
+    /**
+     * Create the next shard of a name. When there are limits, the shards
+     * are numbered.
+     *
+     * @param table
+     *            - the table to write, or null for the document information
+     * @param name
+     *            - the start of the file name
+     * @return the shard
+     * @throws IOException
+     *             - if the file can't be created
+     */
+    Shard open(String table, String name) throws IOException {
+        String fileName;
+        synchronized (this) {
+            Integer sequence = sequences.get(name);
+            sequence = sequence == null ? 1 : sequence + 1;
+            sequences.put(name, sequence);
+            if (maxResources == 0 && maxBytes == 0) {
+                if (sequence > 1) {
+                    throw new IllegalArgumentException("The table " + name + " is exported twice");
+                }
+                fileName = name + extension;
+            } else {
+                fileName = String.format("%s-%05d%s", name, sequence, extension);
+            }
+        }
+        return new Shard(new File(directory, fileName), table);
+    }
+
+    /**
+     * Close a shard and add it to the manifest.
+     *
+     * @param shard
+     *            - the shard, with the footer written
+     * @param triples
+     *            - the number of triples in the shard
+     * @throws IOException
+     *             - if the file can't be written
+     */
+    void close(Shard shard, long triples) throws IOException {
+        shard.stream.close();
+        String line = shard.file.getName() + "\t" + (shard.table == null ? "" : shard.table) + "\t"
+                + shard.resources + "\t" + triples + "\t" + shard.file.length();
+        synchronized (this) {
+            manifest.put(shard.file.getName(), line);
+        }
+    }
+
+    /**
+     * Write the manifest. It is a tab separated file with a line for each
+     * shard: file name, table, resources, triples and bytes.
+     *
+     * @throws IOException
+     *             - if the file can't be written
+     */
+    synchronized void writeManifest() throws IOException {
+        Writer out = new OutputStreamWriter(new FileOutputStream(new File(directory, MANIFEST)),
+                StandardCharsets.UTF_8);
+        try {
+            out.write("file\ttable\tresources\ttriples\tbytes\n");
+            for (String line : manifest.values()) {
+                out.write(line);
+                out.write('\n');
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -51,6 +51,47 @@ public final class StringEncoder {
     private static final String[] BAD_CMP_CHARS_ESCAPES = {"%3B", "%2F", "%3F", "%3A", "%40", "%26", "%3D",
         "%2B", "%24", "%2C", "%5B", "%5D", "%3C", "%3E",
         "%23", "%25", "%22", "%7B", "%7D", "%0A", "%09", "%20"};
+
+    /** Escapes for XML, indexed by ASCII character. Null means no escape. */
+    static final String[] XML_ESCAPES = table(BAD_XML_CHARS, BAD_XML_CHARS_ESCAPES);
+
+    /** Escapes for IRIs, indexed by ASCII character. Null means no escape. */
+    static final String[] IRI_ESCAPES = table(BAD_IRI_CHARS, BAD_IRI_CHARS_ESCAPES);
+
+    /** Escapes for URI components, indexed by ASCII character. Null means no escape. */
+    static final String[] CMP_ESCAPES = table(BAD_CMP_CHARS, BAD_CMP_CHARS_ESCAPES);
+
+    /**
+     * Escapes for an IRI put in an XML attribute. Same as escaping for IRI and
+     * then for XML. The percent escapes don't contain XML characters, so the
+     * XML escapes are only needed for characters the IRI escaping leaves.
+     */
+    static final String[] XML_IRI_ESCAPES = table(BAD_IRI_CHARS, BAD_IRI_CHARS_ESCAPES);
+
+    /** Characters that must be escaped in a quoted N-Triples or Turtle literal. */
+    private static final char[] BAD_LITERAL_CHARS = {'\\', '"', '\n', '\r', '\t'};
+    /** Replacements for characters that must be escaped in a literal. */
+    private static final String[] BAD_LITERAL_CHARS_ESCAPES = {"\\\\", "\\\"", "\\n", "\\r", "\\t"};
+
+    /**
+     * Escapes for the text of a quoted N-Triples or Turtle literal, indexed
+     * by ASCII character. The other control characters are escaped by number.
+     */
+    static final String[] LITERAL_ESCAPES = table(BAD_LITERAL_CHARS, BAD_LITERAL_CHARS_ESCAPES);
+
+    static {
+        for (int c = 0; c < XML_ESCAPES.length; c++) {
+            if (XML_IRI_ESCAPES[c] == null) {
+                XML_IRI_ESCAPES[c] = XML_ESCAPES[c];
+            }
+        }
+        for (int c = 0; c < 0x20; c++) {
+            if (LITERAL_ESCAPES[c] == null) {
+                LITERAL_ESCAPES[c] = String.format("\\u%04X", c);
+            }
+        }
+    }
+
     /**
      * Constructor. Since all methods are static we don't want instantiations of the class.
      */
@@ -66,7 +107,7 @@ public final class StringEncoder {
      * @return escaped string.
      */
     public static String encodeToXml(String s) {
-        return escapeString(s, BAD_XML_CHARS, BAD_XML_CHARS_ESCAPES);
+        return escapeString(s, XML_ESCAPES);
     }
 
     /**
@@ -77,7 +118,19 @@ public final class StringEncoder {
      * @return escaped URI
      */
     public static String encodeToIRI(String url) {
-        return escapeString(url, BAD_IRI_CHARS, BAD_IRI_CHARS_ESCAPES);
+        return escapeString(url, IRI_ESCAPES);
+    }
+
+    /**
+     * Escapes IRI's reserved characters and then characters that have special
+     * meaning in XML. Gives the same as encodeToXml(encodeToIRI(url)) in one pass.
+     *
+     * @param url
+     *            is a string.
+     * @return escaped URI for use in XML
+     */
+    public static String encodeToXmlIRI(String url) {
+        return escapeString(url, XML_IRI_ESCAPES);
     }
 
     /**
@@ -89,43 +142,37 @@ public final class StringEncoder {
      * @return The escaped string.
      */
     public static String encodeURIComponent(String s) {
-        return escapeString(s, BAD_CMP_CHARS, BAD_CMP_CHARS_ESCAPES);
+        return escapeString(s, CMP_ESCAPES);
     }
 
     /**
-     * Escape characters that have special meaning.
+     * Escape characters that have special meaning. The string is returned
+     * as it is if there is nothing to escape.
      *
      * @param s
      *            - The string to escape.
-     * @param badChars
-     *            - A list of the characters that are not allowed.
-     * @param escapeStrings
-     *            - A list of the strings to escape to.
+     * @param escapes
+     *            - The escape of each ASCII character, or null if it is allowed.
      * @return escaped string.
      */
-    private static String escapeString(String s, char[] badChars, String[] escapeStrings) {
+    private static String escapeString(String s, String[] escapes) {
         if (s == null) {
             return s;
         }
         int orgLength = s.length();
-        int newLength = calculateNewLength(s, badChars, escapeStrings);
-        if (orgLength == newLength) {
+        int first = indexOfEscape(s, 0, orgLength, escapes);
+        if (first == orgLength) {
             // nothing to escape in the string
             return s;
         }
-        StringBuffer sb = new StringBuffer(newLength);
-        boolean found;
-        for (int i = 0; i < orgLength; i++) {
+        StringBuilder sb = new StringBuilder(orgLength + 16);
+        sb.append(s, 0, first);
+        for (int i = first; i < orgLength; i++) {
             char c = s.charAt(i);
-            found = false;
-            for (int badInx = 0; badInx < badChars.length; badInx++) {
-                if (c == badChars[badInx]) {
-                    sb.append(escapeStrings[badInx]);
-                    found = true;
-                    break;
-                }
-            }
-            if (!found) {
+            String escape = c < escapes.length ? escapes[c] : null;
+            if (escape != null) {
+                sb.append(escape);
+            } else {
                 sb.append(c);
             }
         }
@@ -133,30 +180,43 @@ public final class StringEncoder {
     }
 
     /**
-     * Calculate how long an escaped string would be. Check for characters that might
-     * be dangerous and calculate a length of the string that has escapes.
+     * Find the first character that must be escaped.
      *
      * @param s
-     *            - The string to escape.
+     *            - The string to search.
+     * @param start
+     *            - Where to start.
+     * @param end
+     *            - Where to stop.
+     * @param escapes
+     *            - The escape of each ASCII character, or null if it is allowed.
+     * @return position of the character or end if there is none.
+     */
+    static int indexOfEscape(CharSequence s, int start, int end, String[] escapes) {
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c < escapes.length && escapes[c] != null) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Make a lookup table from a list of characters and their escapes.
+     *
      * @param badChars
      *            - A list of the characters that are not allowed.
      * @param escapeStrings
      *            - A list of the strings to escape to.
-     * @return length of new string
+     * @return array of 128 escapes indexed by character.
      */
-    private static int calculateNewLength(String s, char[] badChars, String[] escapeStrings) {
-        int orgLength = s.length();
-        int newLength = orgLength;
-        for (int i = 0; i < orgLength; i++) {
-            char c = s.charAt(i);
-            for (int badInx = 0; badInx < badChars.length; badInx++) {
-                if (c == badChars[badInx]) {
-                    newLength += escapeStrings[badInx].length() - 1;
-                    break;
-                }
-            }
+    private static String[] table(char[] badChars, String[] escapeStrings) {
+        String[] escapes = new String[128];
+        for (int i = 0; i < badChars.length; i++) {
+            escapes[badChars[i]] = escapeStrings[i];
         }
-        return newLength;
+        return escapes;
     }
 
 }
@@ -1,16 +1,29 @@
 package eionet.rdfexport;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 //import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.OutputStreamWriter;
+import java.lang.management.ManagementFactory;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
+import javax.management.ObjectName;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.log4j.PropertyConfigurator;
 import org.dbunit.dataset.IDataSet;
@@ -193,6 +206,887 @@ public class DatabaseTest {
         assertEquals(expected, actual);
     }
 
+    /**
+     * Tables exported in parallel must come out in the same order and with
+     * the same content as a sequential export.
+     */
+    @Test
+    public void parallelExportMatchesSequential() throws Exception {
+        props.setProperty("person.query", "SELECT ID, name AS \"name\", last_name AS \"last_name\","
+                + " born AS \"born\", org as \"inorg\" FROM PERSON ORDER BY ID");
+        props.setProperty("orgs.attributetable1", "SELECT DISTINCT '@' AS id"
+            + ",'rdf:type','http://ontology/Org','->',NULL "
+            + ",'skos:notation',ORG,'','' FROM PERSON ORDER BY ORG");
+        props.setProperty("pollutant.vocabulary", "http://voc");
+        props.setProperty("pollutant.query", "SELECT 'ICHLOROETHANE-1,2 (DCE)' AS ID, 'ICHLOROETHANE-1,2 (DCE)' AS CODE");
+        props.setProperty("objectproperty.inorg", "orgs");
+        String[] tables = {"pollutant", "person", "orgs"};
+
+        classToTest = new GenerateRDF(testWriter, dbConn, props);
+        for (String table : tables) {
+            classToTest.exportTable(table);
+        }
+        classToTest.writeRdfFooter();
+        String expected = testOutput.toString(UTF8_ENCODING);
+
+        ByteArrayOutputStream parallelOutput = new ByteArrayOutputStream();
+        ConnectionPool pool = new ConnectionPool();
+        pool.add(DriverManager.getConnection(JDBC_URL, USER, PASSWORD));
+        pool.add(DriverManager.getConnection(JDBC_URL, USER, PASSWORD));
+        try {
+            classToTest = new GenerateRDF(parallelOutput, dbConn, props);
+            classToTest.exportTables(tables, null, pool);
+            classToTest.writeRdfFooter();
+        } finally {
+            pool.close();
+        }
+        assertEquals(expected, parallelOutput.toString(UTF8_ENCODING));
+    }
+
+    /**
+     * A table split into key ranges must come out as if it was exported
+     * with one query.
+     */
+    @Test
+    public void partitionedExportMatchesSequential() throws Exception {
+        props.setProperty("person.query", "SELECT ID, name AS \"name\", last_name AS \"last_name\","
+                + " born AS \"born\", org as \"inorg\" FROM PERSON ORDER BY ID");
+        props.setProperty("person.key", "ID");
+        props.setProperty("objectproperty.inorg", "orgs");
+
+        classToTest = new GenerateRDF(testWriter, dbConn, props);
+        classToTest.exportTable("person");
+        classToTest.writeRdfFooter();
+        String expected = testOutput.toString(UTF8_ENCODING);
+
+        props.setProperty("person.partitions", "3");
+        ByteArrayOutputStream parallelOutput = new ByteArrayOutputStream();
+        ConnectionPool pool = new ConnectionPool();
+        pool.add(DriverManager.getConnection(JDBC_URL, USER, PASSWORD));
+        pool.add(DriverManager.getConnection(JDBC_URL, USER, PASSWORD));
+        try {
+            classToTest = new GenerateRDF(parallelOutput, dbConn, props);
+            classToTest.exportTables(new String[] {"person"}, null, pool);
+            classToTest.writeRdfFooter();
+        } finally {
+            pool.close();
+        }
+        assertEquals(expected, parallelOutput.toString(UTF8_ENCODING));
+    }
+
+    /**
+     * The ranges of a partitioned table use the vocabulary of the table,
+     * also when the workers have exported another table before.
+     */
+    @Test
+    public void partitionedExportWithTableVocabulary() throws Exception {
+        props.setProperty("outputformat", "nt");
+        props.setProperty("baseurl", "http://base/");
+        props.setProperty("people.query", "SELECT ID, last_name AS \"lastName\" FROM PERSON ORDER BY ID");
+        props.setProperty("person.query", "SELECT ID, name AS \"name\" FROM PERSON ORDER BY ID");
+        props.setProperty("person.vocabulary", "http://person/");
+        props.setProperty("person.key", "ID");
+
+        classToTest = new GenerateRDF(testOutput, dbConn, props);
+        classToTest.exportTable("people");
+        classToTest.exportTable("person");
+        classToTest.writeRdfFooter();
+        String expected = testOutput.toString(UTF8_ENCODING);
+        assertTrue(expected.contains("<http://base/person/533922> <http://person/name> \"Alice\" .\n"));
+
+        props.setProperty("person.partitions", "3");
+        ByteArrayOutputStream parallelOutput = new ByteArrayOutputStream();
+        ConnectionPool pool = new ConnectionPool();
+        pool.add(DriverManager.getConnection(JDBC_URL, USER, PASSWORD));
+        pool.add(DriverManager.getConnection(JDBC_URL, USER, PASSWORD));
+        try {
+            classToTest = new GenerateRDF(parallelOutput, dbConn, props);
+            classToTest.exportTables(new String[] {"people", "person"}, null, pool);
+            classToTest.writeRdfFooter();
+        } finally {
+            pool.close();
+        }
+        assertEquals(expected, parallelOutput.toString(UTF8_ENCODING));
+    }
+
+    /**
+     * Reading the rows in a separate thread must not change the output,
+     * also when the batches are smaller than the result.
+     */
+    @Test
+    public void pipelinedExportMatchesSequential() throws Exception {
+        props.setProperty("person.query", "SELECT ID, name AS \"name\", last_name AS \"last_name\","
+                + " born AS \"born\", org as \"inorg\", CAST(name AS CLOB) AS \"note\" FROM PERSON ORDER BY ID");
+        props.setProperty("objectproperty.inorg", "orgs");
+
+        classToTest = new GenerateRDF(testWriter, dbConn, props);
+        classToTest.exportTable("person");
+        classToTest.writeRdfFooter();
+        String expected = testOutput.toString(UTF8_ENCODING);
+
+        props.setProperty("pipeline", "true");
+        props.setProperty("pipelinebatch", "2");
+        props.setProperty("pipelinedepth", "1");
+        ByteArrayOutputStream pipelinedOutput = new ByteArrayOutputStream();
+        classToTest = new GenerateRDF(pipelinedOutput, dbConn, props);
+        classToTest.exportTable("person");
+        classToTest.writeRdfFooter();
+        assertEquals(expected, pipelinedOutput.toString(UTF8_ENCODING));
+    }
+
+    /**
+     * An error in the reader thread comes out of the export.
+     */
+    @Test
+    public void pipelineReportsErrors() throws Exception {
+        props.setProperty("person.query", "SELECT ID, CAST(name AS INT) AS \"n\" FROM PERSON ORDER BY ID");
+        props.setProperty("pipeline", "true");
+        classToTest = new GenerateRDF(testWriter, dbConn, props);
+        try {
+            classToTest.exportTable("person");
+            fail("Expected SQLException");
+        } catch (java.sql.SQLException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Merged queries must write each person once, as if all columns came
+     * from one query.
+     */
+    @Test
+    public void mergedQueriesMatchSingleQuery() throws Exception {
+        props.setProperty("person.query", "SELECT ID, name AS \"name\", last_name AS \"last_name\","
+                + " born AS \"born\", org as \"inorg\" FROM PERSON ORDER BY ID");
+        props.setProperty("objectproperty.inorg", "orgs");
+
+        classToTest = new GenerateRDF(testWriter, dbConn, props);
+        classToTest.exportTable("person");
+        classToTest.writeRdfFooter();
+        String expected = testOutput.toString(UTF8_ENCODING);
+
+        props.remove("person.query");
+        props.setProperty("person.query1", "SELECT ID, name AS \"name\", last_name AS \"last_name\""
+                + " FROM PERSON ORDER BY ID");
+        props.setProperty("person.query2", "SELECT ID, born AS \"born\", org as \"inorg\""
+                + " FROM PERSON ORDER BY ID");
+        props.setProperty("person.merge", "true");
+        ByteArrayOutputStream mergedOutput = new ByteArrayOutputStream();
+        classToTest = new GenerateRDF(mergedOutput, dbConn, props);
+        classToTest.exportTable("person");
+        classToTest.writeRdfFooter();
+        assertEquals(expected, mergedOutput.toString(UTF8_ENCODING));
+    }
+
+    /**
+     * Each column type is read with its own accessor. NULL must still give no property.
+     */
+    @Test
+    public void typedColumns() throws Exception {
+        props.setProperty("values.query", "SELECT 1 AS ID, CAST(12 AS INT) AS \"i\", CAST(NULL AS BIGINT) AS \"n\","
+                + " CAST(1.5 AS REAL) AS \"r\", CAST(2.25 AS DOUBLE) AS \"d\", CAST(3.10 AS DECIMAL(5,2)) AS \"m\","
+                + " CAST('13:45:09' AS TIME) AS \"t\", 'x & y' AS \"s\"");
+        classToTest = new GenerateRDF(testWriter, dbConn, props);
+        classToTest.exportTable("values");
+        classToTest.writeRdfFooter();
+        String actual = testOutput.toString(UTF8_ENCODING);
+        String expected = "<Values rdf:about=\"#values/1\">\n"
+                + " <i rdf:datatype=\"http://www.w3.org/2001/XMLSchema#integer\">12</i>\n"
+                + " <r rdf:datatype=\"http://www.w3.org/2001/XMLSchema#decimal\">1.5</r>\n"
+                + " <d rdf:datatype=\"http://www.w3.org/2001/XMLSchema#double\">2.25</d>\n"
+                + " <m rdf:datatype=\"http://www.w3.org/2001/XMLSchema#decimal\">3.10</m>\n"
+                + " <t rdf:datatype=\"http://www.w3.org/2001/XMLSchema#time\">13:45:09</t>\n"
+                + " <s>x &amp; y</s>\n"
+                + "</Values>\n";
+        assertTrue(actual.contains(expected));
+    }
+
+    /**
+     * LOBs are streamed. BLOBs are read as UTF-8 text unless another encoding is chosen.
+     */
+    @Test
+    public void lobColumns() throws Exception {
+        props.setProperty("values.query", "SELECT 1 AS ID, CAST('Fruit & vegetables' AS CLOB) AS \"c\","
+                + " CAST(X'48C3A96C6C6F' AS BLOB) AS \"b\", X'48C3A96C6C6F' AS \"v\"");
+        classToTest = new GenerateRDF(testWriter, dbConn, props);
+        classToTest.exportTable("values");
+        classToTest.writeRdfFooter();
+        String actual = testOutput.toString(UTF8_ENCODING);
+        assertTrue(actual.contains(" <c>Fruit &amp; vegetables</c>\n <b>Héllo</b>\n <v>Héllo</v>\n"));
+    }
+
+    /**
+     * N-Triples and Turtle stream the LOBs with the literal escapes, and
+     * don't read them into memory.
+     */
+    @Test
+    public void lobColumnsStreamedInNTriplesAndTurtle() throws Exception {
+        props.setProperty("values.query", "SELECT 1 AS ID,"
+                + " CAST('say \"hi\"' || CHAR(10) || 'back\\slash' AS CLOB) AS \"c\","
+                + " CAST(X'48C3A96C6C6F' AS BLOB) AS \"b\"");
+        props.setProperty("baseurl", "http://base/");
+        File file = File.createTempFile("export", ".jfr");
+        Recording recording = new Recording();
+        try {
+            recording.enable("eionet.rdfexport.Lob");
+            recording.start();
+            props.setProperty("outputformat", "nt");
+            classToTest = new GenerateRDF(testOutput, dbConn, props);
+            classToTest.exportTable("values");
+            classToTest.writeRdfFooter();
+            String actual = testOutput.toString(UTF8_ENCODING);
+            assertTrue(actual, actual.contains(
+                    "<http://base/values/1> <http://vocc> \"say \\\"hi\\\"\\nback\\\\slash\" .\n"));
+            assertTrue(actual, actual.contains("<http://base/values/1> <http://vocb> \"Héllo\" .\n"));
+
+            testOutput.reset();
+            props.setProperty("outputformat", "ttl");
+            classToTest = new GenerateRDF(testOutput, dbConn, props);
+            classToTest.exportTable("values");
+            classToTest.writeRdfFooter();
+            actual = testOutput.toString(UTF8_ENCODING);
+            assertTrue(actual, actual.contains(":c \"say \\\"hi\\\"\\nback\\\\slash\""));
+            assertTrue(actual, actual.contains(":b \"Héllo\""));
+            recording.stop();
+            recording.dump(file.toPath());
+            for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+                String name = event.getEventType().getName();
+                assertFalse(name, name.equals("eionet.rdfexport.Lob"));
+            }
+        } finally {
+            recording.close();
+            file.delete();
+        }
+    }
+
+    @Test
+    public void blobAsBase64() throws Exception {
+        props.setProperty("values.query", "SELECT 1 AS ID, CAST(X'48C3A96C6C6F' AS BLOB) AS \"b\"");
+        props.setProperty("blobencoding", "base64");
+        classToTest = new GenerateRDF(testWriter, dbConn, props);
+        classToTest.exportTable("values");
+        classToTest.writeRdfFooter();
+        String actual = testOutput.toString(UTF8_ENCODING);
+        assertTrue(actual.contains(" <b rdf:datatype=\"http://www.w3.org/2001/XMLSchema#base64Binary\">SMOpbGxv</b>\n"));
+    }
+
+    @Test
+    public void blobAsHex() throws Exception {
+        props.setProperty("values.query", "SELECT 1 AS ID, X'48C3A96C6C6F' AS \"v\"");
+        props.setProperty("blobencoding", "hex");
+        props.setProperty("outputformat", "nt");
+        props.setProperty("baseurl", "http://base/");
+        classToTest = new GenerateRDF(testWriter, dbConn, props);
+        classToTest.exportTable("values");
+        classToTest.writeRdfFooter();
+        String actual = testOutput.toString(UTF8_ENCODING);
+        assertTrue(actual.contains(" \"48C3A96C6C6F\"^^<http://www.w3.org/2001/XMLSchema#hexBinary> .\n"));
+    }
+
+    @Test
+    public void nTriplesExport() throws Exception {
+        props.setProperty("person.query", "SELECT ID, name AS \"name\", org as \"inorg\""
+                + " FROM PERSON WHERE ID = 533922");
+        props.setProperty("objectproperty.inorg", "orgs");
+        props.setProperty("baseurl", "http://base/");
+        props.setProperty("vocabulary", "http://voc/");
+        props.setProperty("outputformat", "nt");
+        classToTest = new GenerateRDF(testWriter, dbConn, props);
+        classToTest.exportTable("person");
+        classToTest.writeRdfFooter();
+        String expected = "<http://base/person/533922> <http://www.w3.org/1999/02/22-rdf-syntax-ns#type> <http://voc/Person> .\n"
+                + "<http://base/person/533922> <http://voc/name> \"Alice\" .\n"
+                + "<http://base/person/533922> <http://voc/inorg> <http://base/orgs/yakuza> .\n";
+        assertEquals(expected, testOutput.toString(UTF8_ENCODING));
+    }
+
+    /**
+     * N-Triples and N-Quads can't hold relative IRIs, so an export without
+     * a base URL is refused before anything is written.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void nQuadsNeedBaseURL() throws Exception {
+        props.setProperty("outputformat", "nq");
+        new GenerateRDF(testOutput, dbConn, props);
+    }
+
+    /**
+     * Text ids are merged in the order of a binary collation, also when
+     * some of them look like numbers.
+     */
+    @Test
+    public void mergeOfTextIds() throws Exception {
+        String ids = "(VALUES ('007', 'x'), ('1', 'y'), ('10', 'z'), ('2', 'w'), ('a', 'v')) AS T(ID, N)";
+        props.setProperty("code.query1", "SELECT ID, N AS \"name\" FROM " + ids + " ORDER BY ID");
+        props.setProperty("code.query2", "SELECT ID, N AS \"label\" FROM " + ids + " ORDER BY ID");
+        props.setProperty("code.merge", "true");
+        props.setProperty("outputformat", "nt");
+        props.setProperty("baseurl", "http://base/");
+        classToTest = new GenerateRDF(testOutput, dbConn, props);
+        classToTest.exportTable("code");
+        classToTest.writeRdfFooter();
+        String actual = testOutput.toString(UTF8_ENCODING);
+        assertTrue(actual.startsWith("<http://base/code/007> "));
+        assertTrue(actual.contains("<http://base/code/10> <http://vocname> \"z\" .\n"
+                + "<http://base/code/10> <http://voclabel> \"z\" .\n"));
+    }
+
+    /**
+     * The datatype mappings belong to the plan, so a generator with other
+     * mappings doesn't change them for the rest.
+     */
+    @Test
+    public void datatypeMappingsPerPlan() throws Exception {
+        props.setProperty("person.query", "SELECT ID, ID AS \"number\" FROM PERSON WHERE ID = 533922");
+        props.setProperty("outputformat", "nt");
+        props.setProperty("baseurl", "http://base/");
+        props.remove("datatype.integer");
+        ExportPlan plan = new ExportPlan(props);
+        Properties other = (Properties) props.clone();
+        other.setProperty("datatype.integer", "xsd:long");
+        new GenerateRDF(new ByteArrayOutputStream(), dbConn, other).close();
+        classToTest = new GenerateRDF(testOutput, dbConn, plan);
+        classToTest.exportTable("person");
+        classToTest.writeRdfFooter();
+        assertTrue(testOutput.toString(UTF8_ENCODING).contains(
+                "\"533922\"^^<http://www.w3.org/2001/XMLSchema#integer>"));
+    }
+
+    /**
+     * Merging needs the queries sorted on the id.
+     */
+    @Test
+    public void mergeOfUnsortedQueriesFails() throws Exception {
+        props.setProperty("person.query1", "SELECT ID, name AS \"name\" FROM PERSON ORDER BY ID");
+        props.setProperty("person.query2", "SELECT ID, born AS \"born\" FROM PERSON ORDER BY ID DESC");
+        props.setProperty("person.merge", "true");
+        classToTest = new GenerateRDF(testWriter, dbConn, props);
+        try {
+            classToTest.exportTable("person");
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Single records are looked up with a prepared statement that is reused
+     * for the next identifier, both with a key hint and with HAVING.
+     */
+    @Test
+    public void singleRecordLookups() throws Exception {
+        props.setProperty("person.query1", "SELECT ID, name AS \"name\" FROM PERSON ORDER BY ID");
+        props.setProperty("person.key1", "ID");
+        props.setProperty("person.query2", "SELECT ID, MAX(last_name) AS \"last_name\" FROM PERSON GROUP BY ID");
+        props.setProperty("outputformat", "nt");
+        props.setProperty("baseurl", "http://base/");
+        classToTest = new GenerateRDF(testOutput, dbConn, props);
+        classToTest.exportTable("person", "533922");
+        classToTest.flush();
+        String first = testOutput.toString(UTF8_ENCODING);
+        assertTrue(first.contains("\"Alice\""));
+        assertTrue(first.contains("\"Foo\""));
+        assertFalse(first.contains("Charlie"));
+
+        testOutput.reset();
+        classToTest.exportTable("person", "882911");
+        classToTest.exportTable("person", "999");
+        classToTest.flush();
+        classToTest.close();
+        String second = testOutput.toString(UTF8_ENCODING);
+        assertTrue(second.contains("\"Charlie\""));
+        assertTrue(second.contains("\"Brown\""));
+        assertFalse(second.contains("Alice"));
+    }
+
+    /**
+     * Many records are exported in groups. The groups must give the same
+     * resources as a full export.
+     */
+    @Test
+    public void manyRecordLookups() throws Exception {
+        props.setProperty("person.query", "SELECT ID, name AS \"name\" FROM PERSON ORDER BY ID");
+        props.setProperty("person.key", "ID");
+        classToTest = new GenerateRDF(testWriter, dbConn, props);
+        classToTest.exportTable("person");
+        classToTest.writeRdfFooter();
+        String expected = testOutput.toString(UTF8_ENCODING);
+
+        List<String> ids = new ArrayList<String>();
+        for (int i = 1; i <= 1000; i++) {
+            ids.add(Integer.toString(i));
+        }
+        ids.add("882911");
+        ids.add("182208");
+        ids.add("533922");
+        ByteArrayOutputStream manyOutput = new ByteArrayOutputStream();
+        classToTest = new GenerateRDF(manyOutput, dbConn, props);
+        classToTest.exportTable("person", ids);
+        classToTest.writeRdfFooter();
+        classToTest.close();
+        assertEquals(expected, manyOutput.toString(UTF8_ENCODING));
+    }
+
+    /**
+     * An identifier given twice is exported once, also when the two fall
+     * in different groups.
+     */
+    @Test
+    public void duplicateRecordLookups() throws Exception {
+        props.setProperty("person.query", "SELECT ID, name AS \"name\" FROM PERSON ORDER BY ID");
+        props.setProperty("person.key", "ID");
+        classToTest = new GenerateRDF(testWriter, dbConn, props);
+        classToTest.exportTable("person", Arrays.asList("533922", "882911"));
+        classToTest.writeRdfFooter();
+        classToTest.close();
+        String expected = testOutput.toString(UTF8_ENCODING);
+
+        List<String> ids = new ArrayList<String>();
+        ids.add("533922");
+        for (int i = 1; i <= 600; i++) {
+            ids.add(Integer.toString(i));
+        }
+        ids.add("533922");
+        ids.add("882911");
+        ByteArrayOutputStream manyOutput = new ByteArrayOutputStream();
+        classToTest = new GenerateRDF(manyOutput, dbConn, props);
+        classToTest.exportTable("person", ids);
+        classToTest.writeRdfFooter();
+        classToTest.close();
+        assertEquals(expected, manyOutput.toString(UTF8_ENCODING));
+    }
+
+    /**
+     * The second run only exports the rows changed after the first run.
+     */
+    @Test
+    public void incrementalExport() throws Exception {
+        props.setProperty("person.query", "SELECT ID, name AS \"name\" FROM PERSON ORDER BY ID");
+        props.setProperty("person.changedcolumn", "BORN");
+        props.setProperty("outputformat", "nt");
+        props.setProperty("baseurl", "http://base/");
+        classToTest = new GenerateRDF(testOutput, dbConn, props);
+        classToTest.setWatermarks(new Properties());
+        classToTest.exportTable("person");
+        classToTest.flush();
+        assertTrue(testOutput.toString(UTF8_ENCODING).contains("Charlie"));
+        Properties watermarks = classToTest.getWatermarks();
+        assertEquals("1984-03-18 20:55:31.0", watermarks.getProperty("person"));
+        assertEquals("timestamp", watermarks.getProperty("person.type"));
+
+        Statement statement = dbConn.createStatement();
+        statement.executeUpdate("UPDATE PERSON SET BORN = '1990-01-01 00:00:00' WHERE ID = 533922");
+        statement.close();
+        testOutput.reset();
+        classToTest = new GenerateRDF(testOutput, dbConn, props);
+        classToTest.setWatermarks(watermarks);
+        classToTest.exportTable("person");
+        classToTest.flush();
+        String actual = testOutput.toString(UTF8_ENCODING);
+        assertTrue(actual.contains("Alice"));
+        assertFalse(actual.contains("Charlie"));
+        assertEquals("1990-01-01 00:00:00.0", classToTest.getWatermarks().getProperty("person"));
+    }
+
+    /**
+     * The changed column of the table only applies to the first query. An
+     * attribute table without the column is exported in full, and one with
+     * a changed column of its own has a watermark of its own.
+     */
+    @Test
+    public void incrementalExportWithAttributeTables() throws Exception {
+        props.setProperty("person.query", "SELECT ID, name AS \"name\" FROM PERSON ORDER BY ID");
+        props.setProperty("person.changedcolumn", "BORN");
+        props.setProperty("person.attributetable1", "SELECT ID, 'lastName', LAST_NAME, '', ''"
+                + " FROM (SELECT ID, LAST_NAME FROM PERSON) P ORDER BY ID");
+        props.setProperty("person.attributetable2", "SELECT ID, 'born', BORN, '', '' FROM PERSON ORDER BY ID");
+        props.setProperty("person.attributechangedcolumn2", "BORN");
+        props.setProperty("outputformat", "nt");
+        props.setProperty("baseurl", "http://base/");
+        classToTest = new GenerateRDF(testOutput, dbConn, props);
+        classToTest.setWatermarks(new Properties());
+        classToTest.exportTable("person");
+        classToTest.flush();
+        Properties watermarks = classToTest.getWatermarks();
+        assertEquals("1984-03-18 20:55:31.0", watermarks.getProperty("person"));
+        assertEquals("1984-03-18 20:55:31.0", watermarks.getProperty("person.attributetable2"));
+
+        Statement statement = dbConn.createStatement();
+        statement.executeUpdate("UPDATE PERSON SET BORN = '1990-01-01 00:00:00' WHERE ID = 533922");
+        statement.close();
+        testOutput.reset();
+        classToTest = new GenerateRDF(testOutput, dbConn, props);
+        classToTest.setWatermarks(watermarks);
+        classToTest.exportTable("person");
+        classToTest.flush();
+        String actual = testOutput.toString(UTF8_ENCODING);
+        assertTrue(actual, actual.contains("<http://base/person/533922> <http://vocname> \"Alice\" ."));
+        assertFalse(actual, actual.contains("Charlie"));
+        assertTrue(actual, actual.contains("<http://base/person/882911> <http://voclastName> \"Brown\" ."));
+        assertTrue(actual, actual.contains("<http://base/person/533922> <http://vocborn> \"1990-01-01"));
+        assertFalse(actual, actual.contains("<http://base/person/882911> <http://vocborn>"));
+        assertEquals("1990-01-01 00:00:00.0", classToTest.getWatermarks().getProperty("person"));
+        assertEquals("1990-01-01 00:00:00.0", classToTest.getWatermarks().getProperty("person.attributetable2"));
+    }
+
+    /**
+     * With a digest index, the second run only writes the changed resources
+     * and lists the ones that have gone.
+     */
+    @Test
+    public void changedResourcesOnly() throws Exception {
+        props.setProperty("person.query", "SELECT ID, name AS \"name\" FROM PERSON ORDER BY ID");
+        props.setProperty("outputformat", "nt");
+        props.setProperty("baseurl", "http://base/");
+        File index = File.createTempFile("digests", ".idx");
+        index.delete();
+        File deletions = new File(index.getPath() + ".deleted");
+        try {
+            classToTest = new GenerateRDF(testOutput, dbConn, props);
+            classToTest.setDigestIndex(index);
+            classToTest.exportTable("person");
+            classToTest.flush();
+            classToTest.commitDigests(deletions);
+            assertTrue(testOutput.toString(UTF8_ENCODING).contains("Charlie"));
+
+            Statement statement = dbConn.createStatement();
+            statement.executeUpdate("UPDATE PERSON SET NAME = 'Alicia' WHERE ID = 533922");
+            statement.executeUpdate("DELETE FROM PERSON WHERE ID = 882911");
+            statement.close();
+            testOutput.reset();
+            classToTest = new GenerateRDF(testOutput, dbConn, props);
+            classToTest.setDigestIndex(index);
+            classToTest.exportTable("person");
+            classToTest.flush();
+            classToTest.commitDigests(deletions);
+            String actual = testOutput.toString(UTF8_ENCODING);
+            assertEquals("<http://base/person/533922> <http://vocname> \"Alicia\" .\n"
+                    + "<http://base/person/533922> <http://www.w3.org/1999/02/22-rdf-syntax-ns#type> <http://vocPerson> .\n",
+                    sortedLines(actual));
+            assertEquals("http://base/person/882911\n", IOUtils.toString(deletions.toURI(), UTF8_ENCODING));
+        } finally {
+            index.delete();
+            deletions.delete();
+        }
+    }
+
+    /**
+     * A run of only some of the tables doesn't list the resources of the
+     * other tables as deleted, and keeps their digests for the next run.
+     */
+    @Test
+    public void partialRunAfterFullRun() throws Exception {
+        props.setProperty("person.query", "SELECT ID, name AS \"name\" FROM PERSON ORDER BY ID");
+        props.setProperty("people.query", "SELECT ID, last_name AS \"lastName\" FROM PERSON ORDER BY ID");
+        props.setProperty("outputformat", "nt");
+        props.setProperty("baseurl", "http://base/");
+        File index = File.createTempFile("digests", ".idx");
+        index.delete();
+        File deletions = new File(index.getPath() + ".deleted");
+        try {
+            classToTest = new GenerateRDF(testOutput, dbConn, props);
+            classToTest.setDigestIndex(index);
+            classToTest.exportTable("person");
+            classToTest.exportTable("people");
+            classToTest.flush();
+            classToTest.commitDigests(deletions, true);
+
+            Statement statement = dbConn.createStatement();
+            statement.executeUpdate("DELETE FROM PERSON WHERE ID = 882911");
+            statement.close();
+            testOutput.reset();
+            classToTest = new GenerateRDF(testOutput, dbConn, props);
+            classToTest.setDigestIndex(index);
+            classToTest.exportTable("person");
+            classToTest.flush();
+            classToTest.commitDigests(deletions, false);
+            assertEquals("", testOutput.toString(UTF8_ENCODING));
+            assertEquals(0, deletions.length());
+
+            testOutput.reset();
+            classToTest = new GenerateRDF(testOutput, dbConn, props);
+            classToTest.setDigestIndex(index);
+            classToTest.exportTable("person");
+            classToTest.exportTable("people");
+            classToTest.flush();
+            classToTest.commitDigests(deletions, true);
+            assertEquals("", testOutput.toString(UTF8_ENCODING));
+            assertEquals("http://base/people/882911\nhttp://base/person/882911\n",
+                    sortedLines(IOUtils.toString(deletions.toURI(), UTF8_ENCODING)));
+        } finally {
+            index.delete();
+            deletions.delete();
+        }
+    }
+
+    /**
+     * An export that was stopped in the middle of a table is resumed. The
+     * finished table is kept, the partial one is cut off and exported again,
+     * and the document has one header and one footer.
+     */
+    @Test
+    public void resumeExport() throws Exception {
+        props.setProperty("person.query", "SELECT ID, name AS \"name\" FROM PERSON ORDER BY ID");
+        props.setProperty("people.query", "SELECT ID, last_name AS \"lastName\" FROM PERSON ORDER BY ID");
+        classToTest = new GenerateRDF(testOutput, dbConn, props);
+        classToTest.exportTable("person");
+        classToTest.exportTable("people");
+        classToTest.writeRdfFooter();
+        classToTest.flush();
+        String expected = testOutput.toString(UTF8_ENCODING);
+
+        File output = File.createTempFile("export", ".rdf");
+        File journal = new File(output.getPath() + ".checkpoint");
+        try {
+            Checkpoint checkpoint = new Checkpoint(output, false);
+            classToTest = new GenerateRDF(checkpoint.getOutput(), dbConn, props);
+            classToTest.setCheckpoint(checkpoint);
+            classToTest.exportTable("person");
+            checkpoint.getOutput().write("<People rdf:about=\"#people/182208\">".getBytes(UTF8_ENCODING));
+            checkpoint.close();
+            checkpoint.getOutput().close();
+            assertTrue(journal.exists());
+
+            checkpoint = new Checkpoint(output, true);
+            assertTrue(checkpoint.isResumed());
+            assertTrue(checkpoint.isDone("person"));
+            classToTest = new GenerateRDF(checkpoint.getOutput(), dbConn, props);
+            classToTest.setCheckpoint(checkpoint);
+            classToTest.exportTable("person");
+            classToTest.exportTable("people");
+            classToTest.writeRdfFooter();
+            classToTest.flush();
+            checkpoint.finish();
+            checkpoint.getOutput().close();
+            assertFalse(journal.exists());
+            assertEquals(expected, IOUtils.toString(output.toURI(), UTF8_ENCODING));
+        } finally {
+            output.delete();
+            journal.delete();
+        }
+    }
+
+    /**
+     * A parallel export that finished some key ranges of a table is resumed
+     * without threads. The ranges are cut off, as the table is exported
+     * whole.
+     */
+    @Test
+    public void resumeRangesSequentially() throws Exception {
+        props.setProperty("person.query", "SELECT ID, name AS \"name\" FROM PERSON ORDER BY ID");
+        props.setProperty("people.query", "SELECT ID, last_name AS \"lastName\" FROM PERSON ORDER BY ID");
+        classToTest = new GenerateRDF(testOutput, dbConn, props);
+        classToTest.exportTable("person");
+        classToTest.exportTable("people");
+        classToTest.writeRdfFooter();
+        classToTest.flush();
+        String expected = testOutput.toString(UTF8_ENCODING);
+
+        File output = File.createTempFile("export", ".rdf");
+        File journal = new File(output.getPath() + ".checkpoint");
+        try {
+            Checkpoint checkpoint = new Checkpoint(output, false);
+            classToTest = new GenerateRDF(checkpoint.getOutput(), dbConn, props);
+            classToTest.setCheckpoint(checkpoint);
+            classToTest.exportTable("person");
+            checkpoint.getOutput().write("<People rdf:about=\"#people/182208\"/>\n".getBytes(UTF8_ENCODING));
+            checkpoint.rangeDone("people", new KeyRange(null, 200000L));
+            checkpoint.close();
+            checkpoint.getOutput().close();
+
+            checkpoint = new Checkpoint(output, true);
+            assertEquals(1, checkpoint.getRanges("people").size());
+            classToTest = new GenerateRDF(checkpoint.getOutput(), dbConn, props);
+            classToTest.setCheckpoint(checkpoint);
+            classToTest.exportTable("person");
+            classToTest.exportTable("people");
+            classToTest.writeRdfFooter();
+            classToTest.flush();
+            checkpoint.finish();
+            checkpoint.getOutput().close();
+            assertEquals(expected, IOUtils.toString(output.toURI(), UTF8_ENCODING));
+        } finally {
+            output.delete();
+            journal.delete();
+        }
+    }
+
+    /**
+     * A table is split into shards of two resources, and the document
+     * information gets a shard of its own. The manifest has the counts.
+     */
+    @Test
+    public void shardedExport() throws Exception {
+        props.setProperty("person.query", "SELECT ID, name AS \"name\" FROM PERSON ORDER BY ID");
+        props.setProperty("query", "SELECT NULL AS id, 'Persons' AS \"label\"");
+        props.setProperty("outputformat", "nt");
+        props.setProperty("baseurl", "http://base/");
+        File dir = File.createTempFile("shards", "");
+        dir.delete();
+        try {
+            ShardedOutput shards = new ShardedOutput(dir, "nt", "2", false);
+            classToTest = new GenerateRDF(testOutput, dbConn, props);
+            classToTest.setShards(shards);
+            classToTest.exportTable("person");
+            classToTest.exportDocumentInformation();
+            classToTest.writeRdfFooter();
+            shards.writeManifest();
+            assertEquals(0, testOutput.size());
+
+            File first = new File(dir, "person-00001.nt");
+            File second = new File(dir, "person-00002.nt");
+            File document = new File(dir, "_document-00001.nt");
+            assertEquals("<http://base/person/882911> <http://www.w3.org/1999/02/22-rdf-syntax-ns#type> <http://vocPerson> .\n"
+                    + "<http://base/person/882911> <http://vocname> \"Charlie\" .\n",
+                    IOUtils.toString(second.toURI(), UTF8_ENCODING));
+            assertEquals("file\ttable\tresources\ttriples\tbytes\n"
+                    + "_document-00001.nt\t\t1\t1\t" + document.length() + "\n"
+                    + "person-00001.nt\tperson\t2\t4\t" + first.length() + "\n"
+                    + "person-00002.nt\tperson\t1\t2\t" + second.length() + "\n",
+                    IOUtils.toString(new File(dir, ShardedOutput.MANIFEST).toURI(), UTF8_ENCODING));
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    /**
+     * With one shard per table, a parallel export writes the same documents
+     * as exporting each table on its own.
+     */
+    @Test
+    public void parallelShardsPerTable() throws Exception {
+        props.setProperty("person.query", "SELECT ID, name AS \"name\" FROM PERSON ORDER BY ID");
+        props.setProperty("people.query", "SELECT ID, last_name AS \"lastName\" FROM PERSON ORDER BY ID");
+        File dir = File.createTempFile("shards", "");
+        dir.delete();
+        ConnectionPool pool = new ConnectionPool();
+        pool.add(DriverManager.getConnection(JDBC_URL, USER, PASSWORD));
+        pool.add(DriverManager.getConnection(JDBC_URL, USER, PASSWORD));
+        try {
+            ShardedOutput shards = new ShardedOutput(dir, "xml", "table", false);
+            classToTest = new GenerateRDF(testOutput, dbConn, props);
+            classToTest.setShards(shards);
+            classToTest.exportTables(new String[] {"person", "people"}, null, pool);
+            classToTest.exportDocumentInformation();
+            classToTest.writeRdfFooter();
+            shards.writeManifest();
+
+            for (String table : new String[] {"person", "people"}) {
+                ByteArrayOutputStream expected = new ByteArrayOutputStream();
+                classToTest = new GenerateRDF(expected, dbConn, props);
+                classToTest.exportTable(table);
+                classToTest.writeRdfFooter();
+                assertEquals(expected.toString(UTF8_ENCODING),
+                        IOUtils.toString(new File(dir, table + ".rdf").toURI(), UTF8_ENCODING));
+            }
+            assertFalse(new File(dir, GenerateRDF.DOCUMENT_SHARD + ".rdf").exists());
+            assertEquals(3, IOUtils.toString(new File(dir, ShardedOutput.MANIFEST).toURI(), UTF8_ENCODING)
+                    .split("\n").length);
+        } finally {
+            pool.close();
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    /**
+     * One scan writes several formats, each the same as exporting in that
+     * format on its own.
+     */
+    @Test
+    public void severalFormatsInOneScan() throws Exception {
+        props.setProperty("person.query", "SELECT ID, name AS \"name\", born AS \"born\" FROM PERSON ORDER BY ID");
+        props.setProperty("baseurl", "http://base/");
+        ByteArrayOutputStream nt = new ByteArrayOutputStream();
+        ByteArrayOutputStream ttl = new ByteArrayOutputStream();
+        classToTest = new GenerateRDF(testOutput, dbConn, props);
+        classToTest.addOutput(nt, "nt");
+        classToTest.addOutput(ttl, "ttl");
+        classToTest.exportTable("person");
+        classToTest.writeRdfFooter();
+
+        for (String format : new String[] {"xml", "nt", "ttl"}) {
+            props.setProperty("outputformat", format);
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            classToTest = new GenerateRDF(expected, dbConn, props);
+            classToTest.exportTable("person");
+            classToTest.writeRdfFooter();
+            ByteArrayOutputStream actual = "xml".equals(format) ? testOutput : "nt".equals(format) ? nt : ttl;
+            assertEquals(expected.toString(UTF8_ENCODING), actual.toString(UTF8_ENCODING));
+        }
+    }
+
+    /**
+     * JSON-LD groups the values of a subject that span several rows into
+     * arrays.
+     */
+    @Test
+    public void jsonLDExport() throws Exception {
+        props.setProperty("outputformat", "jsonld");
+        props.setProperty("person.query", "SELECT P.ID, Q.ID AS \"knows->person\" FROM PERSON P, PERSON Q"
+                + " WHERE P.ID <> Q.ID ORDER BY P.ID, Q.ID");
+        classToTest = new GenerateRDF(testOutput, dbConn, props);
+        classToTest.exportTable("person");
+        classToTest.writeRdfFooter();
+        assertEquals("{\n  \"@context\" : {\n    \"rdf\" : \"http://www.w3.org/1999/02/22-rdf-syntax-ns#\",\n"
+                + "    \"@vocab\" : \"http://voc\"\n  },\n  \"@graph\" : [\n"
+                + "    {\"@id\":\"#person/182208\",\"@type\":\"Person\","
+                + "\"knows\":[{\"@id\":\"#person/533922\"},{\"@id\":\"#person/882911\"}]},\n"
+                + "    {\"@id\":\"#person/533922\",\"@type\":\"Person\","
+                + "\"knows\":[{\"@id\":\"#person/182208\"},{\"@id\":\"#person/882911\"}]},\n"
+                + "    {\"@id\":\"#person/882911\",\"@type\":\"Person\","
+                + "\"knows\":[{\"@id\":\"#person/182208\"},{\"@id\":\"#person/533922\"}]} ]\n}\n",
+                testOutput.toString(UTF8_ENCODING));
+    }
+
+    /**
+     * Newline delimited JSON-LD has the context on the first line and a
+     * node on every other line.
+     */
+    @Test
+    public void ndjsonLDExport() throws Exception {
+        props.setProperty("outputformat", "ndjsonld");
+        props.setProperty("person.query", "SELECT ID, name AS \"name\" FROM PERSON WHERE ID > 182208 ORDER BY ID");
+        classToTest = new GenerateRDF(testOutput, dbConn, props);
+        classToTest.exportTable("person");
+        classToTest.writeRdfFooter();
+        assertEquals("{\"@context\":{\"rdf\":\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\",\"@vocab\":\"http://voc\"}}\n"
+                + "{\"@id\":\"#person/533922\",\"@type\":\"Person\",\"name\":\"Alice\"}\n"
+                + "{\"@id\":\"#person/882911\",\"@type\":\"Person\",\"name\":\"Charlie\"}\n",
+                testOutput.toString(UTF8_ENCODING));
+    }
+
+    /**
+     * A parallel JSON-LD export puts commas between the segments.
+     */
+    @Test
+    public void parallelJsonLDExport() throws Exception {
+        props.setProperty("outputformat", "jsonld");
+        props.setProperty("person.query", "SELECT ID, name AS \"name\" FROM PERSON ORDER BY ID");
+        props.setProperty("people.query", "SELECT ID, last_name AS \"lastName\" FROM PERSON ORDER BY ID");
+        ConnectionPool pool = new ConnectionPool();
+        pool.add(DriverManager.getConnection(JDBC_URL, USER, PASSWORD));
+        pool.add(DriverManager.getConnection(JDBC_URL, USER, PASSWORD));
+        try {
+            classToTest = new GenerateRDF(testOutput, dbConn, props);
+            classToTest.exportTables(new String[] {"person", "people"}, null, pool);
+            classToTest.writeRdfFooter();
+        } finally {
+            pool.close();
+        }
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        classToTest = new GenerateRDF(expected, dbConn, props);
+        classToTest.exportTable("person");
+        classToTest.exportTable("people");
+        classToTest.writeRdfFooter();
+        assertEquals(expected.toString(UTF8_ENCODING), testOutput.toString(UTF8_ENCODING));
+    }
+
+    private static String sortedLines(String lines) {
+        String[] split = lines.split("\n");
+        java.util.Arrays.sort(split);
+        return String.join("\n", split) + "\n";
+    }
+
     @Test
     public void basePersonExport() throws Exception {
         props.setProperty("person.query", "SELECT ID, NAME, LAST_NAME, BORN, ORG AS INORG FROM PERSON ORDER BY ID");
@@ -479,4 +1373,157 @@ public class DatabaseTest {
                 + " \"NAME\" AS \"name@\",\n    \"LAST_NAME\" AS \"last_name@\",\n    \"BORN\" AS \"born^^xsd:integer\",\n   "
                 + " \"ORG\" AS \"org@\" FROM \"PUBLIC\".\"PERSON\"", props.getProperty("person.query"));
     }
+
+    /**
+     * The metrics count the rows and resources of each query, and the
+     * triples they wrote.
+     */
+    @Test
+    public void metricsOfExport() throws Exception {
+        props.setProperty("person.query1", "SELECT ID, name AS \"name\" FROM PERSON ORDER BY ID");
+        props.setProperty("person.attributetable1", "SELECT ID, 'lastName', LAST_NAME, '', '' FROM PERSON ORDER BY ID");
+        ExportMetrics metrics = new ExportMetrics();
+        classToTest = new GenerateRDF(testOutput, dbConn, props);
+        classToTest.setMetrics(metrics);
+        classToTest.exportTable("person");
+        classToTest.writeRdfFooter();
+        List<QueryMetrics> queries = metrics.getQueries();
+        assertEquals(2, queries.size());
+        assertEquals("person.query1", queries.get(0).getQuery());
+        assertEquals(3, queries.get(0).getRows());
+        assertEquals(3, queries.get(0).getResources());
+        assertEquals(1, queries.get(0).getExecutions());
+        assertEquals("person.attributetable1", queries.get(1).getQuery());
+        assertEquals(3, queries.get(1).getRows());
+        assertEquals(classToTest.getTripleCount(), metrics.getTriples());
+        assertEquals(1, metrics.getTables().size());
+        assertEquals("person", metrics.getTables().get(0).getTable());
+        assertEquals(6, metrics.getTables().get(0).getRows());
+        assertTrue(metrics.toJson().contains("\"query\" : \"person.attributetable1\""));
+    }
+
+    /**
+     * Bytes are counted when the output is a stream, also across shards.
+     * N-Triples has no header or footer, so all the bytes are written by
+     * the query.
+     */
+    @Test
+    public void metricsOfShards() throws Exception {
+        props.setProperty("outputformat", "nt");
+        props.setProperty("baseurl", "http://base/");
+        props.setProperty("person.query", "SELECT ID, name AS \"name\" FROM PERSON ORDER BY ID");
+        File dir = new File(System.getProperty("java.io.tmpdir"), "metrics" + System.nanoTime());
+        ExportMetrics metrics = new ExportMetrics();
+        try {
+            classToTest = new GenerateRDF(new ByteArrayOutputStream(), dbConn, props);
+            classToTest.setShards(new ShardedOutput(dir, "nt", "1", false));
+            classToTest.setMetrics(metrics);
+            classToTest.exportTable("person");
+            classToTest.writeRdfFooter();
+            long bytes = 0;
+            for (File shard : dir.listFiles()) {
+                if (!ShardedOutput.MANIFEST.equals(shard.getName())) {
+                    bytes += shard.length();
+                }
+            }
+            assertEquals(3, metrics.getQueries().get(0).getResources());
+            assertEquals(bytes, classToTest.getBytesWritten());
+            assertEquals(bytes, metrics.getBytes());
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    /**
+     * The workers of a parallel export add to the same metrics, which can
+     * be read through JMX.
+     */
+    @Test
+    public void metricsOfParallelExport() throws Exception {
+        props.setProperty("person.query", "SELECT ID, name AS \"name\" FROM PERSON ORDER BY ID");
+        props.setProperty("people.query", "SELECT ID, last_name AS \"lastName\" FROM PERSON ORDER BY ID");
+        ExportMetrics metrics = new ExportMetrics();
+        metrics.register();
+        ConnectionPool pool = new ConnectionPool();
+        pool.add(DriverManager.getConnection(JDBC_URL, USER, PASSWORD));
+        pool.add(DriverManager.getConnection(JDBC_URL, USER, PASSWORD));
+        try {
+            classToTest = new GenerateRDF(testOutput, dbConn, props);
+            classToTest.setMetrics(metrics);
+            classToTest.exportTables(new String[] {"person", "people"}, null, pool);
+            classToTest.writeRdfFooter();
+            Object rows = ManagementFactory.getPlatformMBeanServer().getAttribute(
+                    new ObjectName(ExportMetrics.OBJECT_NAME), "Rows");
+            assertEquals(6L, rows);
+        } finally {
+            pool.close();
+            metrics.unregister();
+        }
+        assertEquals(2, metrics.getTables().size());
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName(ExportMetrics.OBJECT_NAME)));
+    }
+
+    /**
+     * A flight recording shows the queries, their batches, the LOBs read and
+     * the output written. The query with the LOB is not pipelined, so its
+     * batches are of the fetch size. JSON-LD collects the values of a
+     * resource, so the LOBs are read into memory.
+     */
+    @Test
+    public void flightRecorderEvents() throws Exception {
+        props.setProperty("outputformat", "jsonld");
+        props.setProperty("pipeline", "true");
+        props.setProperty("pipelinebatch", "2");
+        props.setProperty("person.query1", "SELECT ID, name AS \"name\" FROM PERSON ORDER BY ID");
+        props.setProperty("person.query2", "SELECT ID, CAST(name AS CLOB) AS \"note\" FROM PERSON ORDER BY ID");
+        File file = File.createTempFile("export", ".jfr");
+        Recording recording = new Recording();
+        try {
+            for (String name : new String[] {"Query", "FetchBatch", "Flush", "Lob"}) {
+                recording.enable("eionet.rdfexport." + name);
+            }
+            recording.start();
+            classToTest = new GenerateRDF(new ByteArrayOutputStream(), dbConn, props);
+            classToTest.exportTable("person");
+            classToTest.writeRdfFooter();
+            recording.stop();
+            recording.dump(file.toPath());
+            List<RecordedEvent> queries = new ArrayList<RecordedEvent>();
+            List<RecordedEvent> batches = new ArrayList<RecordedEvent>();
+            int lobs = 0;
+            long flushed = 0;
+            for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+                String name = event.getEventType().getName();
+                if (name.equals("eionet.rdfexport.Query")) {
+                    queries.add(event);
+                } else if (name.equals("eionet.rdfexport.FetchBatch")) {
+                    batches.add(event);
+                } else if (name.equals("eionet.rdfexport.Lob")) {
+                    assertEquals("CLOB", event.getString("type"));
+                    lobs++;
+                } else if (name.equals("eionet.rdfexport.Flush")) {
+                    flushed += event.getLong("bytes");
+                }
+            }
+            assertEquals(2, queries.size());
+            assertEquals("person", queries.get(0).getString("table"));
+            assertEquals("person.query1", queries.get(0).getString("query"));
+            assertEquals(3, queries.get(0).getLong("rows"));
+            assertEquals(3, queries.get(1).getLong("rows"));
+            assertEquals(3, batches.size());
+            long rows = 0;
+            for (RecordedEvent batch : batches) {
+                if ("person.query2".equals(batch.getString("query"))) {
+                    assertEquals(3, batch.getLong("rows"));
+                }
+                rows += batch.getLong("rows");
+            }
+            assertEquals(6, rows);
+            assertEquals(3, lobs);
+            assertEquals(classToTest.getBytesWritten(), flushed);
+        } finally {
+            recording.close();
+            file.delete();
+        }
+    }
 }
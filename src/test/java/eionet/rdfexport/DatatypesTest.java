@@ -2,6 +2,7 @@ package eionet.rdfexport;
 
 import static junit.framework.Assert.assertEquals;
 import java.sql.Date;
+import java.sql.Time;
 import java.sql.Timestamp;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -58,6 +59,54 @@ public class DatatypesTest {
         }
     }
     
+    /**
+     * A time is an xsd:time, not a full dateTime.
+     */
+    @Test
+    public void sqlTime() throws Exception {
+        assertEquals("13:45:09", Datatypes.getFormattedValue(Time.valueOf("13:45:09")));
+        assertEquals("00:00:00", Datatypes.getFormattedValue(Time.valueOf("00:00:00")));
+    }
+
+    @Test
+    public void oldAndFutureDates() throws Exception {
+        String[] dates = new String[] {"1969-12-31", "1900-02-28", "2000-02-29", "2400-12-31", "0999-01-01"};
+        for (String date : dates) {
+            assertEquals(date, Datatypes.getFormattedValue(Date.valueOf(date)));
+        }
+        assertEquals("1955-11-05T06:15:59", Datatypes.getFormattedValue(Timestamp.valueOf("1955-11-05 06:15:59.999")));
+    }
+
+    /**
+     * The formatting must give the same result from several threads at once.
+     */
+    @Test
+    public void formatFromThreads() throws Exception {
+        final String[] failure = new String[1];
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 2000; i++) {
+                        String expected = String.format("20%02d-0%d-1%d", (i + offset) % 100, i % 9 + 1, i % 10);
+                        String actual = Datatypes.getFormattedValue(Date.valueOf(expected));
+                        if (!expected.equals(actual)) {
+                            failure[0] = expected + " became " + actual;
+                        }
+                    }
+                } catch (Exception e) {
+                    failure[0] = e.toString();
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(null, failure[0]);
+    }
+
     private Date stringDatetimeToSqlDate(String datetime) throws ParseException {
         return new Date(this.stringDatetimeToTimestamp(datetime));
     }
@@ -0,0 +1,76 @@
+package eionet.rdfexport;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+
+import org.junit.Test;
+
+public class ExportCacheTest {
+
+    @Test
+    public void getWhatWasPut() {
+        ExportCache cache = new ExportCache(100, 60);
+        ExportCache.Entry entry = cache.put("a", new byte[] {1, 2, 3});
+        assertSame(entry, cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(3, cache.getBytes());
+    }
+
+    /**
+     * The same bytes get the same ETag, different bytes another.
+     */
+    @Test
+    public void etags() {
+        ExportCache cache = new ExportCache(100, 60);
+        String etag = cache.put("a", new byte[] {1, 2, 3}).etag;
+        assertEquals(etag, cache.put("b", new byte[] {1, 2, 3}).etag);
+        assertFalse(etag.equals(cache.put("c", new byte[] {1, 2, 4}).etag));
+        assertEquals('"', etag.charAt(0));
+        assertEquals('"', etag.charAt(etag.length() - 1));
+    }
+
+    /**
+     * The documents used least recently are dropped when the cache is full.
+     */
+    @Test
+    public void leastRecentlyUsedIsDropped() {
+        ExportCache cache = new ExportCache(10, 60);
+        cache.put("a", new byte[4]);
+        cache.put("b", new byte[4]);
+        cache.get("a");
+        cache.put("c", new byte[4]);
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertEquals(8, cache.getBytes());
+    }
+
+    @Test
+    public void replacingCountsOnce() {
+        ExportCache cache = new ExportCache(10, 60);
+        cache.put("a", new byte[4]);
+        cache.put("a", new byte[6]);
+        assertEquals(1, cache.size());
+        assertEquals(6, cache.getBytes());
+    }
+
+    @Test
+    public void tooLargeIsNotKept() {
+        ExportCache cache = new ExportCache(10, 60);
+        cache.put("a", new byte[4]);
+        assertEquals(11, cache.put("b", new byte[11]).body.length);
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+    }
+
+    @Test
+    public void expired() {
+        ExportCache cache = new ExportCache(10, 0);
+        assertNotNull(cache.put("a", new byte[4]));
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.getBytes());
+    }
+}
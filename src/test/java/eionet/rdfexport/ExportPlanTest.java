@@ -0,0 +1,74 @@
+package eionet.rdfexport;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Properties;
+import org.junit.Test;
+
+public class ExportPlanTest {
+
+    private static Properties properties() {
+        Properties props = new Properties();
+        props.setProperty("tables", "person");
+        props.setProperty("xmlns.foaf", "http://xmlns.com/foaf/0.1/");
+        props.setProperty("objectproperty.org", "orgs");
+        props.setProperty("person.query2", "SELECT ID, B FROM PERSON");
+        props.setProperty("person.query1", "SELECT ID, A FROM PERSON");
+        props.setProperty("person.key1", "PERSON.ID");
+        props.setProperty("person.attributetable", "SELECT ID, 'c', C, '', '' FROM PERSON");
+        props.setProperty("person.attributekey", "ID");
+        props.setProperty("person.class", "foaf:Person");
+        props.setProperty("persons.query", "SELECT ID FROM PERSONS");
+        return props;
+    }
+
+    /**
+     * The queries come before the attribute tables, each sorted on the
+     * name, with their key hints.
+     */
+    @Test
+    public void queriesOfTable() {
+        ExportPlan plan = new ExportPlan(properties());
+        ExportPlan.Table table = plan.getTable("person");
+        assertEquals("foaf:Person", table.rdfClass);
+        assertEquals(3, table.queries.size());
+        assertEquals("person.query1", table.queries.get(0).key);
+        assertEquals("PERSON.ID", table.queries.get(0).keyHint);
+        assertEquals("person.query2", table.queries.get(1).key);
+        assertNull(table.queries.get(1).keyHint);
+        assertTrue(table.queries.get(2).attributes);
+        assertEquals("ID", table.queries.get(2).keyHint);
+        assertSame(table.queries.get(0), table.getFirstQuery());
+        assertSame(table, plan.getTable("person"));
+        assertEquals("->orgs", plan.getObjectProperties().get("org"));
+        assertEquals("http://xmlns.com/foaf/0.1/", plan.getNamespaces().get("foaf"));
+    }
+
+    @Test
+    public void tableNotInTablesProperty() {
+        ExportPlan plan = new ExportPlan(properties());
+        assertEquals(1, plan.getTable("persons").queries.size());
+        assertEquals("Persons", plan.getTable("persons").rdfClass);
+        assertTrue(plan.getTable("nothing").queries.isEmpty());
+        assertFalse(plan.getTable("nothing") == plan.getTable("nothing"));
+    }
+
+    @Test
+    public void writeAndRead() throws Exception {
+        File file = File.createTempFile("plan", ".ser");
+        try {
+            new ExportPlan(properties()).write(file);
+            ExportPlan plan = ExportPlan.read(file);
+            assertEquals("person", plan.getAllTables()[0]);
+            assertEquals("SELECT ID, B FROM PERSON", plan.getTable("person").queries.get(1).sql);
+            assertEquals("foaf:Person", plan.getProperty("person.class"));
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package eionet.rdfexport;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
 
 import java.io.ByteArrayOutputStream;
 import java.io.OutputStreamWriter;
@@ -125,6 +126,66 @@ public class GenerateRDFTest {
                 "SELECT X AS id, count(*) FROM Y WHERE X='819' GROUP BY id HAVING Z=1 ORDER BY ID");
     }
 
+    @Test
+    public void testInjectKeyBounds() throws Exception {
+        assertEquals("SELECT MIN(X), MAX(X) FROM Y",
+                classToTest.injectKeyBounds("SELECT X AS id, * FROM Y", "X"));
+        assertEquals("SELECT MIN(X), MAX(X) FROM Y WHERE YEAR=2000",
+                classToTest.injectKeyBounds("SELECT X AS id, * FROM Y WHERE YEAR=2000 ORDER BY X", "X"));
+        assertEquals("SELECT MIN(X), MAX(X) FROM Y",
+                classToTest.injectKeyBounds("SELECT X AS id, count(*) FROM Y GROUP BY id HAVING Z=1 ORDER BY ID", "X"));
+    }
+
+    @Test
+    public void testPaddedSize() {
+        assertEquals(1, GenerateRDF.paddedSize(1));
+        assertEquals(2, GenerateRDF.paddedSize(2));
+        assertEquals(4, GenerateRDF.paddedSize(3));
+        assertEquals(64, GenerateRDF.paddedSize(33));
+        assertEquals(512, GenerateRDF.paddedSize(491));
+        assertEquals(512, GenerateRDF.paddedSize(512));
+    }
+
+    @Test
+    public void testCompareIds() {
+        assertTrue(GenerateRDF.compareIds("9", "10", true) < 0);
+        assertTrue(GenerateRDF.compareIds("-5", "3", true) < 0);
+        assertTrue(GenerateRDF.compareIds("abc", "abd", false) < 0);
+        assertTrue(GenerateRDF.compareIds(null, "1", true) < 0);
+        assertTrue(GenerateRDF.compareIds("99999999999999999999", "100000000000000000000", true) < 0);
+        assertEquals(0, GenerateRDF.compareIds("42", "42", true));
+        assertTrue(GenerateRDF.compareIds("2.5", "10", true) < 0);
+        assertTrue(GenerateRDF.compareIds("10", "9", false) < 0);
+        assertTrue(GenerateRDF.compareIds("007", "1", false) < 0);
+    }
+
+    @Test
+    public void testWatermarkLiteral() {
+        Properties marks = new Properties();
+        marks.setProperty("a", "2020-01-02 03:04:05.0");
+        marks.setProperty("a.type", "timestamp");
+        marks.setProperty("b", "12");
+        marks.setProperty("b.type", "number");
+        marks.setProperty("c", "it's");
+        assertEquals("TIMESTAMP '2020-01-02 03:04:05.0'", GenerateRDF.watermarkLiteral(marks, "a"));
+        assertEquals("12", GenerateRDF.watermarkLiteral(marks, "b"));
+        assertEquals("'it''s'", GenerateRDF.watermarkLiteral(marks, "c"));
+    }
+
+    @Test
+    public void testKeyCondition() {
+        assertEquals("X = ?", GenerateRDF.keyCondition("X", 1));
+        assertEquals("X IN (?, ?, ?)", GenerateRDF.keyCondition("X", 3));
+    }
+
+    @Test
+    public void testInjectCondition() throws Exception {
+        assertEquals("SELECT X AS id, * FROM Y WHERE X >= 10 AND X < 20 ORDER BY X",
+                classToTest.injectCondition("SELECT X AS id, * FROM Y ORDER BY X", "X >= 10 AND X < 20"));
+        assertEquals("SELECT X AS id, * FROM Y WHERE X >= 10 AND YEAR=2000",
+                classToTest.injectCondition("SELECT X AS id, * FROM Y WHERE YEAR=2000", "X >= 10"));
+    }
+
     @Test
     public void testGetAllTables() throws Exception {
         String[] t = classToTest.getAllTables();
@@ -0,0 +1,46 @@
+package eionet.rdfexport;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+
+import java.util.List;
+import org.junit.Test;
+
+public class KeyRangeTest {
+
+    @Test
+    public void evenSplit() {
+        List<KeyRange> ranges = KeyRange.split(1, 100, 4);
+        assertEquals(4, ranges.size());
+        assertEquals("(ID < 26 OR ID IS NULL)", ranges.get(0).condition("ID"));
+        assertEquals("ID >= 26 AND ID < 51", ranges.get(1).condition("ID"));
+        assertEquals("ID >= 51 AND ID < 76", ranges.get(2).condition("ID"));
+        assertEquals("ID >= 76", ranges.get(3).condition("ID"));
+    }
+
+    /**
+     * There can't be more ranges than there are keys.
+     */
+    @Test
+    public void narrowSpan() {
+        List<KeyRange> ranges = KeyRange.split(5, 6, 4);
+        assertEquals(2, ranges.size());
+        assertEquals("(ID < 6 OR ID IS NULL)", ranges.get(0).condition("ID"));
+        assertEquals("ID >= 6", ranges.get(1).condition("ID"));
+    }
+
+    @Test
+    public void singleKey() {
+        List<KeyRange> ranges = KeyRange.split(7, 7, 4);
+        assertEquals(1, ranges.size());
+        assertNull(ranges.get(0).condition("ID"));
+    }
+
+    @Test
+    public void extremeBounds() {
+        List<KeyRange> ranges = KeyRange.split(Long.MIN_VALUE, Long.MAX_VALUE, 2);
+        assertEquals(2, ranges.size());
+        assertEquals("(ID < 0 OR ID IS NULL)", ranges.get(0).condition("ID"));
+        assertEquals("ID >= 0", ranges.get(1).condition("ID"));
+    }
+}
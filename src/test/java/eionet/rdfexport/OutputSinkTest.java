@@ -0,0 +1,143 @@
+package eionet.rdfexport;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the UTF-8 encoding of the output buffer.
+ */
+public class OutputSinkTest {
+
+    private ByteArrayOutputStream testOutput;
+    private OutputSink classToTest;
+
+    @Before
+    public void setUp() throws Exception {
+        testOutput = new ByteArrayOutputStream();
+        classToTest = new OutputSink(testOutput);
+    }
+
+    private void assertEncoded(String s) throws Exception {
+        classToTest.write(s);
+        classToTest.flush();
+        assertTrue(Arrays.equals(s.getBytes(StandardCharsets.UTF_8), testOutput.toByteArray()));
+    }
+
+    @Test
+    public void writeAscii() throws Exception {
+        assertEncoded("<Person rdf:about=\"#person/1\">\n");
+    }
+
+    @Test
+    public void writeTwoAndThreeBytes() throws Exception {
+        assertEncoded("Ηλέκτρα, Søren, €10");
+    }
+
+    @Test
+    public void writeSurrogatePair() throws Exception {
+        assertEncoded("clef 𝄞 end");
+    }
+
+    /**
+     * A lone surrogate can't be encoded and comes out as a question mark.
+     */
+    @Test
+    public void writeLoneSurrogate() throws Exception {
+        classToTest.write("a\uD834b");
+        classToTest.flush();
+        assertEquals("a?b", testOutput.toString("UTF-8"));
+    }
+
+    /**
+     * Text longer than the buffer is written in several blocks.
+     */
+    @Test
+    public void writeMoreThanBuffer() throws Exception {
+        StringBuilder buf = new StringBuilder();
+        while (buf.length() < OutputSink.BUFFER_SIZE * 2) {
+            buf.append("abcdefghijklmnopqrstuvwxyzæøå𝄞");
+        }
+        assertEncoded(buf.toString());
+    }
+
+    @Test
+    public void writeBytesAndCopy() throws Exception {
+        byte[] big = new byte[OutputSink.BUFFER_SIZE + 10];
+        Arrays.fill(big, (byte) 'x');
+        classToTest.write(OutputSink.ascii("<"));
+        classToTest.write(big);
+        classToTest.write(new ByteArrayInputStream(OutputSink.ascii(">")));
+        classToTest.flush();
+        assertEquals(big.length + 2, testOutput.size());
+        assertEquals('>', testOutput.toByteArray()[big.length + 1]);
+    }
+
+    @Test
+    public void writeEscaped() throws Exception {
+        classToTest.writeEscaped("Fruit & 'grøntsager' <ok>", StringEncoder.XML_ESCAPES);
+        classToTest.write(" ");
+        classToTest.writeEscaped("mafia +", StringEncoder.XML_IRI_ESCAPES);
+        classToTest.flush();
+        assertEquals("Fruit &amp; &#39;grøntsager&#39; &lt;ok&gt; mafia%20%2B", testOutput.toString("UTF-8"));
+    }
+
+    /**
+     * Escaped text longer than the buffer must come out as from StringEncoder.
+     */
+    @Test
+    public void writeEscapedMoreThanBuffer() throws Exception {
+        StringBuilder buf = new StringBuilder();
+        while (buf.length() < OutputSink.BUFFER_SIZE * 2) {
+            buf.append("Søren's CO2 & NOx < 10% 𝄞 ");
+        }
+        String s = buf.toString();
+        classToTest.writeEscaped(s, StringEncoder.XML_IRI_ESCAPES);
+        classToTest.flush();
+        assertEquals(StringEncoder.encodeToXmlIRI(s), testOutput.toString("UTF-8"));
+    }
+
+    /**
+     * A surrogate pair split between two chunks of a Reader must be kept together.
+     */
+    @Test
+    public void writeEscapedReader() throws Exception {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 8191; i++) {
+            buf.append(i % 50 == 0 ? '&' : 'a');
+        }
+        buf.append("𝄞 end");
+        String s = buf.toString();
+        classToTest.writeEscaped(new java.io.StringReader(s), StringEncoder.XML_ESCAPES);
+        classToTest.flush();
+        assertEquals(StringEncoder.encodeToXml(s), testOutput.toString("UTF-8"));
+    }
+
+    @Test
+    public void writeHex() throws Exception {
+        classToTest.writeHex(new ByteArrayInputStream(new byte[] {0, 15, (byte) 0xAB, 127}));
+        classToTest.flush();
+        assertEquals("000FAB7F", testOutput.toString("UTF-8"));
+    }
+
+    /**
+     * When writing to a Writer, bytes are decoded again.
+     */
+    @Test
+    public void writeToWriter() throws Exception {
+        OutputStreamWriter writer = new OutputStreamWriter(testOutput, "UTF-8");
+        OutputSink sink = new OutputSink(writer);
+        sink.write("æ");
+        sink.write("ø".getBytes(StandardCharsets.UTF_8));
+        sink.write(new ByteArrayInputStream("å".getBytes(StandardCharsets.UTF_8)));
+        sink.flush();
+        assertEquals("æøå", testOutput.toString("UTF-8"));
+    }
+}
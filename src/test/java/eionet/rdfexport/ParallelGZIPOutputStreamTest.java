@@ -0,0 +1,83 @@
+package eionet.rdfexport;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class ParallelGZIPOutputStreamTest {
+
+    private static byte[] sample() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            text.append("<#person/").append(i).append("> <http://vocname> \"Person ").append(i * 7919).append("\" .\n");
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The blocks come out in order as one gzip stream.
+     */
+    @Test
+    public void readsAsOneStream() throws Exception {
+        byte[] data = sample();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        ParallelGZIPOutputStream out = new ParallelGZIPOutputStream(compressed, 4, 1000);
+        out.write(data, 0, 10);
+        out.write(data[10]);
+        out.flush();
+        out.write(data, 11, data.length - 11);
+        out.close();
+        byte[] actual = IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray())));
+        assertEquals(new String(data, StandardCharsets.UTF_8), new String(actual, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void emptyOutputIsValid() throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        new ParallelGZIPOutputStream(compressed, 2).close();
+        assertTrue(compressed.size() > 0);
+        assertEquals(0, IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray())))
+                .length);
+    }
+
+    /**
+     * Reading from an offset in the index gives the data from the
+     * uncompressed offset on.
+     */
+    @Test
+    public void indexPointsAtMembers() throws Exception {
+        byte[] data = sample();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        ParallelGZIPOutputStream out = new ParallelGZIPOutputStream(compressed, 3, 4096);
+        out.write(data);
+        out.finish();
+        File index = File.createTempFile("rdfexport", ".gzi");
+        try {
+            out.writeIndex(index);
+            byte[] gz = compressed.toByteArray();
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(FileUtils.readFileToByteArray(index)));
+            long entries = Long.reverseBytes(in.readLong());
+            assertEquals((data.length - 1) / 4096, entries);
+            for (int i = 0; i < entries; i++) {
+                int compressedOffset = (int) Long.reverseBytes(in.readLong());
+                int uncompressedOffset = (int) Long.reverseBytes(in.readLong());
+                assertEquals(4096 * (i + 1), uncompressedOffset);
+                byte[] rest = IOUtils.toByteArray(new GZIPInputStream(
+                        new ByteArrayInputStream(gz, compressedOffset, gz.length - compressedOffset)));
+                assertEquals(data.length - uncompressedOffset, rest.length);
+                assertEquals(data[uncompressedOffset], rest[0]);
+            }
+        } finally {
+            index.delete();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package eionet.rdfexport;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+public class ResourceDigestsTest {
+
+    @Test
+    public void hashUsesEveryByte() {
+        byte[] a = "http://example.com/person/1234567".getBytes(StandardCharsets.UTF_8);
+        byte[] b = "http://example.com/person/1234568".getBytes(StandardCharsets.UTF_8);
+        byte[] c = "http://example.com/qerson/1234567".getBytes(StandardCharsets.UTF_8);
+        long hash = ResourceDigests.hash(a, 0, a.length);
+        assertEquals(hash, ResourceDigests.hash(a.clone(), 0, a.length));
+        assertTrue(hash != ResourceDigests.hash(b, 0, b.length));
+        assertTrue(hash != ResourceDigests.hash(c, 0, c.length));
+        assertTrue(hash != ResourceDigests.hash(a, 0, a.length - 1));
+    }
+
+    /**
+     * The second run sees which resources are new, changed, unchanged and gone.
+     */
+    @Test
+    public void secondRun() throws Exception {
+        File index = File.createTempFile("digests", ".idx");
+        index.delete();
+        File deletions = new File(index.getPath() + ".deleted");
+        try {
+            ResourceDigests digests = new ResourceDigests(index);
+            for (int i = 0; i < 100; i++) {
+                assertTrue(digests.changed("#person/" + i, i));
+            }
+            digests.commit(deletions);
+            assertEquals(0, deletions.length());
+
+            digests = new ResourceDigests(index);
+            assertFalse(digests.changed("#person/1", 1));
+            assertTrue(digests.changed("#person/2", 3));
+            assertTrue(digests.changed("#person/100", 100));
+            for (int i = 3; i < 100; i++) {
+                if (i != 50) {
+                    assertFalse(digests.changed("#person/" + i, i));
+                }
+            }
+            digests.commit(deletions);
+            assertEquals("#person/0\n#person/50\n", sorted(FileUtils.readFileToString(deletions, "UTF-8")));
+
+            digests = new ResourceDigests(index);
+            assertTrue(digests.changed("#person/50", 50));
+            assertFalse(digests.changed("#person/2", 3));
+            assertFalse(digests.changed("#person/100", 100));
+            digests.close();
+        } finally {
+            index.delete();
+            deletions.delete();
+        }
+    }
+
+    private static String sorted(String lines) {
+        String[] split = lines.split("\n");
+        java.util.Arrays.sort(split);
+        return String.join("\n", split) + "\n";
+    }
+}
@@ -0,0 +1,177 @@
+package eionet.rdfexport;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.Properties;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ResourceServerTest {
+
+    private static final String JDBC_URL = "jdbc:h2:mem:server;DB_CLOSE_DELAY=-1";
+
+    private ConnectionPool pool;
+    private ResourceServer server;
+
+    @Before
+    public void startServer() throws Exception {
+        Connection con = DriverManager.getConnection(JDBC_URL, "sa", "");
+        Statement statement = con.createStatement();
+        statement.executeUpdate("CREATE TABLE IF NOT EXISTS PERSON (ID INT PRIMARY KEY, NAME VARCHAR(100))");
+        statement.executeUpdate("MERGE INTO PERSON VALUES (1, 'Alice'), (2, 'Charlie')");
+        statement.close();
+        pool = new ConnectionPool();
+        pool.add(con);
+        pool.add(DriverManager.getConnection(JDBC_URL, "sa", ""));
+
+        Properties props = new Properties();
+        props.setProperty("tables", "person");
+        props.setProperty("vocabulary", "http://voc/");
+        props.setProperty("baseurl", "http://base/");
+        props.setProperty("person.query", "SELECT ID, NAME FROM PERSON");
+        props.setProperty("person.key", "ID");
+        server = new ResourceServer(new InetSocketAddress("127.0.0.1", 0), new ExportPlan(props), pool);
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop();
+        pool.close();
+    }
+
+    private HttpURLConnection get(String path, String accept) throws Exception {
+        URL url = new URL("http://127.0.0.1:" + server.getPort() + path);
+        HttpURLConnection con = (HttpURLConnection) url.openConnection();
+        if (accept != null) {
+            con.setRequestProperty("Accept", accept);
+        }
+        return con;
+    }
+
+    private static String body(HttpURLConnection con) throws Exception {
+        InputStream in = con.getInputStream();
+        try {
+            return IOUtils.toString(in, "UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void negotiate() {
+        assertEquals("xml", ResourceServer.negotiate(null, "xml"));
+        assertEquals("ttl", ResourceServer.negotiate("*/*", "ttl"));
+        assertEquals("ttl", ResourceServer.negotiate("text/turtle", "xml"));
+        assertEquals("jsonld", ResourceServer.negotiate("application/json", "xml"));
+        assertEquals("jsonld", ResourceServer.negotiate("text/turtle;q=0.5, application/ld+json", "xml"));
+        assertEquals("ttl", ResourceServer.negotiate("text/*, application/rdf+xml;q=0.9", "xml"));
+        assertEquals("nt", ResourceServer.negotiate("*/*;q=0.1, application/rdf+xml;q=0, application/n-triples",
+                "xml"));
+        assertNull(ResourceServer.negotiate("image/png", "xml"));
+        assertNull(ResourceServer.negotiate("text/turtle;q=0", "xml"));
+    }
+
+    /**
+     * Without a base URL N-Triples isn't offered, since it can't hold
+     * relative IRIs.
+     */
+    @Test
+    public void noNTriplesWithoutBaseURL() throws Exception {
+        Properties props = new Properties();
+        props.setProperty("tables", "person");
+        props.setProperty("vocabulary", "http://voc/");
+        props.setProperty("outputformat", "nt");
+        props.setProperty("person.query", "SELECT ID, NAME FROM PERSON");
+        props.setProperty("person.key", "ID");
+        server.stop();
+        server = new ResourceServer(new InetSocketAddress("127.0.0.1", 0), new ExportPlan(props), pool);
+        server.start();
+        assertEquals(406, get("/person/1", "application/n-triples").getResponseCode());
+        HttpURLConnection con = get("/person/1", "application/n-triples, */*;q=0.1");
+        assertEquals(200, con.getResponseCode());
+        assertEquals("application/rdf+xml; charset=UTF-8", con.getContentType());
+    }
+
+    @Test
+    public void matches() {
+        assertTrue(ResourceServer.matches("\"a1\"", "\"a1\""));
+        assertTrue(ResourceServer.matches("\"b2\", W/\"a1\"", "\"a1\""));
+        assertTrue(ResourceServer.matches("*", "\"a1\""));
+        assertEquals(false, ResourceServer.matches("\"b2\"", "\"a1\""));
+        assertEquals(false, ResourceServer.matches(null, "\"a1\""));
+    }
+
+    @Test
+    public void resourceInTurtle() throws Exception {
+        HttpURLConnection con = get("/person/1", "text/turtle");
+        assertEquals(200, con.getResponseCode());
+        assertEquals("text/turtle; charset=UTF-8", con.getContentType());
+        String body = body(con);
+        assertTrue(body, body.contains("<person/1>"));
+        assertTrue(body, body.contains("\"Alice\""));
+        assertEquals(-1, body.indexOf("Charlie"));
+    }
+
+    /**
+     * The second request is answered from the cache, and a client with the
+     * ETag gets 304.
+     */
+    @Test
+    public void cachedWithETag() throws Exception {
+        HttpURLConnection first = get("/person/2", null);
+        assertEquals(200, first.getResponseCode());
+        assertEquals("application/rdf+xml; charset=UTF-8", first.getContentType());
+        String body = body(first);
+        String etag = first.getHeaderField("ETag");
+        assertEquals(1, server.getCache().size());
+
+        HttpURLConnection second = get("/person/2", "application/rdf+xml");
+        assertEquals(body, body(second));
+        assertEquals(etag, second.getHeaderField("ETag"));
+        assertEquals(1, server.getCache().size());
+
+        HttpURLConnection third = get("/person/2", null);
+        third.setRequestProperty("If-None-Match", etag);
+        assertEquals(304, third.getResponseCode());
+
+        HttpURLConnection other = get("/person/2", "application/ld+json");
+        assertEquals(200, other.getResponseCode());
+        assertTrue(body(other).contains("\"@id\":\"person/2\""));
+        assertEquals(2, server.getCache().size());
+    }
+
+    @Test
+    public void wholeTable() throws Exception {
+        HttpURLConnection con = get("/person", "application/n-triples");
+        assertEquals(200, con.getResponseCode());
+        assertEquals(null, con.getHeaderField("ETag"));
+        String body = body(con);
+        assertTrue(body, body.contains("<http://base/person/1> <http://voc/NAME> \"Alice\" ."));
+        assertTrue(body, body.contains("<http://base/person/2> <http://voc/NAME> \"Charlie\" ."));
+        assertEquals(0, server.getCache().size());
+    }
+
+    @Test
+    public void errors() throws Exception {
+        assertEquals(404, get("/person/3", null).getResponseCode());
+        assertEquals(404, get("/nothing/1", null).getResponseCode());
+        assertEquals(404, get("/", null).getResponseCode());
+        assertEquals(406, get("/person/1", "image/png").getResponseCode());
+        HttpURLConnection post = get("/person/1", null);
+        post.setRequestMethod("DELETE");
+        assertEquals(405, post.getResponseCode());
+        assertEquals(0, server.getCache().size());
+    }
+}
@@ -1,6 +1,7 @@
 package eionet.rdfexport;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
 
 import java.io.ByteArrayOutputStream;
 import java.io.OutputStreamWriter;
@@ -53,11 +54,12 @@ public class ResourceWriterJSONLDTest {
         f.name = "rdfs:label";
         f.datatype = "";
         f.langcode = "";
-        classToTest.writeStartObject();
-        classToTest.writeProperty(f, null, false);
-        classToTest.writeJsonLDFooter();
+        classToTest.writeStartResource("rdf:Description", "person", "1");
+        classToTest.writeProperty(f, null);
+        classToTest.writeEndResource("rdf:Description");
+        classToTest.flush();
         testWriter.close();
-        assertEquals("{ }", testOutput.toString());
+        assertEquals("\n    {\"@id\":\"#person/1\"}", testOutput.toString());
     }
 
     /**
@@ -69,16 +71,16 @@ public class ResourceWriterJSONLDTest {
         f.name = "rdfs:label";
         f.datatype = "";
         f.langcode = "";
-        classToTest.writeStartObject();
-        classToTest.writeProperty(f, "", false);
-        classToTest.writeJsonLDFooter();
+        classToTest.writeStartResource("rdf:Description", "person", "1");
+        classToTest.writeProperty(f, "");
+        classToTest.writeEndResource("rdf:Description");
+        classToTest.flush();
         testWriter.close();        
-        assertEquals("{\n  \"rdfs:label\" : \"\"\n}", testOutput.toString());
+        assertEquals("\n    {\"@id\":\"#person/1\",\"rdfs:label\":\"\"}", testOutput.toString());
     }
     
     /**
-     * An empty array shall create output.
-     * @throws Exception 
+     * A property with several values in a resource becomes an array.
      */
     @Test
     public void writeArray() throws Exception {
@@ -86,12 +88,13 @@ public class ResourceWriterJSONLDTest {
         f.name = "rdfs:label";
         f.datatype = "";
         f.langcode = "";
-        classToTest.writeStartObject();
-        classToTest.writeArray(f);
-        classToTest.writeEndArray();
-        classToTest.writeJsonLDFooter();
-        testWriter.close();        
-        assertEquals("{\n  \"rdfs:label\" : [ ]\n}", testOutput.toString());
+        classToTest.writeStartResource("rdf:Description", "person", "1");
+        classToTest.writeProperty(f, "First");
+        classToTest.writeProperty(f, "Second");
+        classToTest.writeEndResource("rdf:Description");
+        classToTest.flush();
+        testWriter.close();
+        assertEquals("\n    {\"@id\":\"#person/1\",\"rdfs:label\":[\"First\",\"Second\"]}", testOutput.toString());
     }
     @Test
     public void writeLiteral1() throws Exception {
@@ -99,21 +102,23 @@ public class ResourceWriterJSONLDTest {
         f.name = "rdfs:label";
         f.datatype = "";
         f.langcode = "";
-        classToTest.writeStartObject();
-        classToTest.writeProperty(f, "This is a label",false);
-        classToTest.writeJsonLDFooter();
+        classToTest.writeStartResource("rdf:Description", "person", "1");
+        classToTest.writeProperty(f, "This is a label");
+        classToTest.writeEndResource("rdf:Description");
+        classToTest.flush();
         testWriter.close();
-        assertEquals("{\n  \"rdfs:label\" : \"This is a label\"\n}", testOutput.toString());
+        assertEquals("\n    {\"@id\":\"#person/1\",\"rdfs:label\":\"This is a label\"}", testOutput.toString());
     }
 
     @Test
     public void writeLiteral2() throws Exception {
         RDFField f = new RDFField("rdfs:label", "", "");
-        classToTest.writeStartObject();
-        classToTest.writeProperty(f, "This is a label",false);
-        classToTest.writeJsonLDFooter();
+        classToTest.writeStartResource("rdf:Description", "person", "1");
+        classToTest.writeProperty(f, "This is a label");
+        classToTest.writeEndResource("rdf:Description");
+        classToTest.flush();
         testWriter.close();
-        assertEquals("{\n  \"rdfs:label\" : \"This is a label\"\n}", testOutput.toString());
+        assertEquals("\n    {\"@id\":\"#person/1\",\"rdfs:label\":\"This is a label\"}", testOutput.toString());
     }
 
     /**
@@ -122,11 +127,12 @@ public class ResourceWriterJSONLDTest {
     @Test
     public void writeReference1() throws Exception {
         RDFField f = new RDFField("foaf:page", "->", "");
-        classToTest.writeStartObject();
-        classToTest.writeProperty(f, "http://mypage.org/index.html",false);
-        classToTest.writeJsonLDFooter();
+        classToTest.writeStartResource("rdf:Description", "person", "1");
+        classToTest.writeProperty(f, "http://mypage.org/index.html");
+        classToTest.writeEndResource("rdf:Description");
+        classToTest.flush();
         testWriter.close();        
-        assertEquals("{\n  \"foaf:page\" : {\n    \"@id\" : \"http://mypage.org/index.html\"\n  }\n}", testOutput.toString());
+        assertEquals("\n    {\"@id\":\"#person/1\",\"foaf:page\":{\"@id\":\"http://mypage.org/index.html\"}}", testOutput.toString());
     }
 
     /**
@@ -135,11 +141,12 @@ public class ResourceWriterJSONLDTest {
     @Test
     public void writeReferenceComplex() throws Exception {
         RDFField f = new RDFField("foaf:page", "->", "");
-        classToTest.writeStartObject();
-        classToTest.writeProperty(f, "http://mypage.org/green spider/index.html#here",false);
-        classToTest.writeJsonLDFooter();
+        classToTest.writeStartResource("rdf:Description", "person", "1");
+        classToTest.writeProperty(f, "http://mypage.org/green spider/index.html#here");
+        classToTest.writeEndResource("rdf:Description");
+        classToTest.flush();
         testWriter.close();
-        assertEquals("{\n  \"foaf:page\" : {\n    \"@id\" : \"http://mypage.org/green%20spider/index.html#here\"\n  }\n}", testOutput.toString());
+        assertEquals("\n    {\"@id\":\"#person/1\",\"foaf:page\":{\"@id\":\"http://mypage.org/green%20spider/index.html#here\"}}", testOutput.toString());
     }
 
     /**
@@ -148,11 +155,12 @@ public class ResourceWriterJSONLDTest {
     @Test
     public void writeReferenceQS() throws Exception {
         RDFField f = new RDFField("foaf:page", "->", "");
-        classToTest.writeStartObject();
-        classToTest.writeProperty(f, "http://mypage.org/greenspider/page.php?type=species&id=9288#x",false);
-        classToTest.writeJsonLDFooter();
+        classToTest.writeStartResource("rdf:Description", "person", "1");
+        classToTest.writeProperty(f, "http://mypage.org/greenspider/page.php?type=species&id=9288#x");
+        classToTest.writeEndResource("rdf:Description");
+        classToTest.flush();
         testWriter.close();
-        assertEquals("{\n  \"foaf:page\" : {\n    \"@id\" : \"http://mypage.org/greenspider/page.php?type=species&amp;id=9288#x\"\n  }\n}", testOutput.toString());
+        assertEquals("\n    {\"@id\":\"#person/1\",\"foaf:page\":{\"@id\":\"http://mypage.org/greenspider/page.php?type=species&id=9288#x\"}}", testOutput.toString());
     }
 
     /**
@@ -161,11 +169,12 @@ public class ResourceWriterJSONLDTest {
     @Test
     public void writeReference2() throws Exception {
         RDFField f = new RDFField("foaf:page", "->http://mypage.org/index.html", "");
-        classToTest.writeStartObject();
-        classToTest.writeProperty(f, "",false);
-        classToTest.writeJsonLDFooter();
+        classToTest.writeStartResource("rdf:Description", "person", "1");
+        classToTest.writeProperty(f, "");
+        classToTest.writeEndResource("rdf:Description");
+        classToTest.flush();
         testWriter.close();
-        assertEquals("{\n  \"foaf:page\" : {\n    \"@id\" : \"http://mypage.org/index.html/\"\n  }\n}", testOutput.toString());
+        assertEquals("\n    {\"@id\":\"#person/1\",\"foaf:page\":{\"@id\":\"http://mypage.org/index.html/\"}}", testOutput.toString());
     }
 
     /**
@@ -174,12 +183,13 @@ public class ResourceWriterJSONLDTest {
     @Test
     public void writeReference3() throws Exception {
         RDFField f = new RDFField("hasSpecies", "->http://eunis.eea.europa.eu/species", "");
-        classToTest.writeStartObject();
-        classToTest.writeProperty(f, "canis lupus/linnaeus",false);
-        classToTest.writeJsonLDFooter();
+        classToTest.writeStartResource("rdf:Description", "person", "1");
+        classToTest.writeProperty(f, "canis lupus/linnaeus");
+        classToTest.writeEndResource("rdf:Description");
+        classToTest.flush();
         //System.out.println(testOutput.toString());
         testWriter.close();
-        assertEquals("{\n  \"hasSpecies\" : {\n    \"@id\" : \"http://eunis.eea.europa.eu/species/canis%20lupus/linnaeus\"\n  }\n}", testOutput.toString());
+        assertEquals("\n    {\"@id\":\"#person/1\",\"hasSpecies\":{\"@id\":\"http://eunis.eea.europa.eu/species/canis%20lupus/linnaeus\"}}", testOutput.toString());
     }
 
     /**
@@ -188,65 +198,119 @@ public class ResourceWriterJSONLDTest {
     @Test
     public void writeReferencePrtr() throws Exception {
         RDFField f = new RDFField("prtr:Pollutant", "->http://prtr.ec.europa.eu/pollutant", "");
-        classToTest.writeStartObject();
-        classToTest.writeProperty(f, "ICHLOROETHANE-1,2 (DCE)", false);
-        classToTest.writeJsonLDFooter();
+        classToTest.writeStartResource("rdf:Description", "person", "1");
+        classToTest.writeProperty(f, "ICHLOROETHANE-1,2 (DCE)");
+        classToTest.writeEndResource("rdf:Description");
+        classToTest.flush();
         //System.out.println(testOutput.toString());
         testWriter.close();
-        assertEquals("{\n  \"prtr:Pollutant\" : {\n    \"@id\" : \"http://prtr.ec.europa.eu/pollutant/ICHLOROETHANE-1,2%20(DCE)\"\n  }\n}", testOutput.toString());
+        assertEquals("\n    {\"@id\":\"#person/1\",\"prtr:Pollutant\":{\"@id\":\"http://prtr.ec.europa.eu/pollutant/ICHLOROETHANE-1,2%20(DCE)\"}}", testOutput.toString());
     }
 
     @Test
     public void writeReference4() throws Exception {
         RDFField f = new RDFField("hasSpecies", "->species", "");
-        classToTest.writeStartObject();
-        classToTest.writeProperty(f, "1366", false);
-        classToTest.writeJsonLDFooter();
+        classToTest.writeStartResource("rdf:Description", "person", "1");
+        classToTest.writeProperty(f, "1366");
+        classToTest.writeEndResource("rdf:Description");
+        classToTest.flush();
         //System.out.println(testOutput.toString());
         testWriter.close();
-        assertEquals("{\n  \"hasSpecies\" : {\n    \"@id\" : \"#species/1366\"\n  }\n}", testOutput.toString());
+        assertEquals("\n    {\"@id\":\"#person/1\",\"hasSpecies\":{\"@id\":\"#species/1366\"}}", testOutput.toString());
     }
 
     @Test
     public void writeInt() throws Exception {
         RDFField f = new RDFField("hasNumber", "xsd:int", "");
-        classToTest.writeStartObject();
-        classToTest.writeProperty(f, "1366", false);
-        classToTest.writeJsonLDFooter();
+        classToTest.writeStartResource("rdf:Description", "person", "1");
+        classToTest.writeProperty(f, "1366");
+        classToTest.writeEndResource("rdf:Description");
+        classToTest.flush();
         //System.out.println(testOutput.toString());
         testWriter.close();
-        assertEquals("{\n  \"hasNumber\" : {\n    \"@type\" : \"xsd:int\",\n    \"@value\" : \"1366\"\n  }\n}", testOutput.toString());
+        assertEquals("\n    {\"@id\":\"#person/1\",\"hasNumber\":{\"@type\":\"xsd:int\",\"@value\":\"1366\"}}", testOutput.toString());
     }
 
     @Test
     public void writeOwnType() throws Exception {
         RDFField f = new RDFField("hasDistance", "http://buzz#lightyear", "");
-        classToTest.writeStartObject();
-        classToTest.writeProperty(f, "20", false);
-        classToTest.writeJsonLDFooter();
+        classToTest.writeStartResource("rdf:Description", "person", "1");
+        classToTest.writeProperty(f, "20");
+        classToTest.writeEndResource("rdf:Description");
+        classToTest.flush();
         testWriter.close();
-        assertEquals("{\n  \"hasDistance\" : {\n    \"@type\" : \"http://buzz#lightyear\",\n    \"@value\" : \"20\"\n  }\n}", testOutput.toString());
+        assertEquals("\n    {\"@id\":\"#person/1\",\"hasDistance\":{\"@type\":\"http://buzz#lightyear\",\"@value\":\"20\"}}", testOutput.toString());
     }
 
     @Test
     public void writeLitWithLang() throws Exception {
         RDFField f = new RDFField("hello", "", "de");
-        classToTest.writeStartObject();
-        classToTest.writeProperty(f, "Welt", false);
-        classToTest.writeJsonLDFooter();
+        classToTest.writeStartResource("rdf:Description", "person", "1");
+        classToTest.writeProperty(f, "Welt");
+        classToTest.writeEndResource("rdf:Description");
+        classToTest.flush();
         //System.out.println(testOutput.toString());
         testWriter.close();
-        assertEquals("{\n  \"hello\" : {\n    \"@language\" : \"de\",\n    \"@value\" : \"Welt\"\n  }\n}", testOutput.toString());
+        assertEquals("\n    {\"@id\":\"#person/1\",\"hello\":{\"@language\":\"de\",\"@value\":\"Welt\"}}", testOutput.toString());
     }
 
     @Test
     public void writeIntWithLang() throws Exception {
         RDFField f = new RDFField("hello", "xsd:int", "de");
-        classToTest.writeStartObject();
-        classToTest.writeProperty(f, "20", false);
-        classToTest.writeJsonLDFooter();
+        classToTest.writeStartResource("rdf:Description", "person", "1");
+        classToTest.writeProperty(f, "20");
+        classToTest.writeEndResource("rdf:Description");
+        classToTest.flush();
+        testWriter.close();
+        assertEquals("\n    {\"@id\":\"#person/1\",\"hello\":{\"@type\":\"xsd:int\",\"@value\":\"20\"}}", testOutput.toString());        
+    }
+
+    /**
+     * The resources are in @graph, separated by commas.
+     */
+    @Test
+    public void writeDocument() throws Exception {
+        classToTest.setBaseURL("http://base/");
+        RDFField f = new RDFField("name", "", "");
+        classToTest.writeRdfHeader();
+        classToTest.writeStartResource("Person", "person", "1");
+        classToTest.writeProperty(f, "Alice \"A\"");
+        classToTest.writeEndResource("Person");
+        classToTest.writeStartResource("Person", "person", "2");
+        classToTest.writeEndResource("Person");
+        classToTest.writeRdfFooter();
+        testWriter.close();
+        assertEquals("{\n  \"@context\" : {\n    \"rdf\" : \"http://www.w3.org/1999/02/22-rdf-syntax-ns#\",\n"
+                + "    \"@base\" : \"http://base/\",\n    \"@vocab\" : \"http://voc\"\n  },\n  \"@graph\" : [\n"
+                + "    {\"@id\":\"person/1\",\"@type\":\"Person\",\"name\":\"Alice \\\"A\\\"\"},\n"
+                + "    {\"@id\":\"person/2\",\"@type\":\"Person\"} ]\n}\n", testOutput.toString());
+        assertEquals(3, classToTest.getTripleCount());
+    }
+
+    /**
+     * A resource written to a buffer only gets a comma in front when it is
+     * copied to the output after another resource.
+     */
+    @Test
+    public void writeBufferedResources() throws Exception {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        OutputSink bufferSink = new OutputSink(buffer);
+        classToTest.writeRdfHeader();
+        for (int i = 1; i <= 3; i++) {
+            buffer.reset();
+            OutputSink direct = classToTest.redirect(bufferSink);
+            classToTest.writeStartResource("rdf:Description", "person", Integer.toString(i));
+            classToTest.writeEndResource("rdf:Description");
+            classToTest.redirect(direct);
+            bufferSink.flush();
+            if (i != 1) {
+                byte[] bytes = buffer.toByteArray();
+                classToTest.outputResource(bytes, 0, bytes.length);
+            }
+        }
+        classToTest.writeRdfFooter();
         testWriter.close();
-        assertEquals("{\n  \"hello\" : {\n    \"@type\" : \"xsd:int\",\n    \"@value\" : \"20\"\n  }\n}", testOutput.toString());        
+        assertTrue(testOutput.toString().endsWith("[\n    {\"@id\":\"#person/2\"},\n    {\"@id\":\"#person/3\"} ]\n}\n"));
     }
 
     /**
@@ -262,11 +326,12 @@ public class ResourceWriterJSONLDTest {
         f.name = "rdfs:label";
         f.datatype = "";
         f.langcode = "";
-        testClass.writeStartObject();
-        testClass.writeProperty(f, "", false);
-        testClass.writeJsonLDFooter();
+        testClass.writeStartResource("rdf:Description", "person", "1");
+        testClass.writeProperty(f, "");
+        testClass.writeEndResource("rdf:Description");
+        testClass.flush();
         testWriter.close();
-        assertEquals("{ }", testOutput.toString());
+        assertEquals("\n    {\"@id\":\"#person/1\"}", testOutput.toString());
     }
 
 }
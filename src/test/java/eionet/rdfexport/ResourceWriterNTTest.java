@@ -0,0 +1,132 @@
+package eionet.rdfexport;
+
+import static junit.framework.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the N-Triples and N-Quads writers.
+ */
+public class ResourceWriterNTTest {
+
+    private ResourceWriterNT classToTest;
+    private ByteArrayOutputStream testOutput;
+    private OutputStreamWriter testWriter;
+
+    @Before
+    public void setUp() throws Exception {
+        testOutput = new ByteArrayOutputStream();
+        testWriter = new OutputStreamWriter(testOutput, "UTF-8");
+
+        classToTest = new ResourceWriterNT(testWriter);
+        classToTest.setVocabulary("http://voc/");
+        classToTest.setBaseURL("http://base/");
+        classToTest.addNamespace("rdfs", "http://www.w3.org/2000/01/rdf-schema#");
+        classToTest.addNamespace("foaf", "http://xmlns.com/foaf/0.1/");
+    }
+
+    @Test
+    public void writeTypedResource() throws Exception {
+        classToTest.writeStartResource("Person", "person", "1");
+        classToTest.writeProperty(new RDFField("rdfs:label", "", "en"), "Alice");
+        classToTest.writeEndResource("Person");
+        testWriter.close();
+        assertEquals("<http://base/person/1> <http://www.w3.org/1999/02/22-rdf-syntax-ns#type> <http://voc/Person> .\n"
+                + "<http://base/person/1> <http://www.w3.org/2000/01/rdf-schema#label> \"Alice\"@en .\n",
+                testOutput.toString());
+    }
+
+    /**
+     * rdf:Description doesn't give a type.
+     */
+    @Test
+    public void writeDescription() throws Exception {
+        classToTest.writeStartResource("rdf:Description", "person", "1");
+        classToTest.writeProperty(new RDFField("age", "xsd:int", ""), "20");
+        testWriter.close();
+        assertEquals("<http://base/person/1> <http://voc/age> \"20\"^^<http://www.w3.org/2001/XMLSchema#int> .\n",
+                testOutput.toString());
+    }
+
+    @Test
+    public void writeNull() throws Exception {
+        classToTest.writeStartResource("rdf:Description", "person", "1");
+        classToTest.writeProperty(new RDFField("rdfs:label", "", ""), null);
+        testWriter.close();
+        assertEquals("", testOutput.toString());
+    }
+
+    @Test
+    public void writeEscapedLiteral() throws Exception {
+        classToTest.writeStartResource("rdf:Description", "person", "1");
+        classToTest.writeProperty(new RDFField("rdfs:comment", "", ""), "say \"hi\"\nback\\slash");
+        testWriter.close();
+        assertEquals("<http://base/person/1> <http://www.w3.org/2000/01/rdf-schema#comment>"
+                + " \"say \\\"hi\\\"\\nback\\\\slash\" .\n", testOutput.toString());
+    }
+
+    @Test
+    public void writeReferences() throws Exception {
+        classToTest.writeStartResource("rdf:Description", "person", "a b");
+        classToTest.writeProperty(new RDFField("foaf:page", "->", ""), "http://mypage.org/green spider");
+        classToTest.writeProperty(new RDFField("inorg", "->orgs", ""), "mafia +");
+        classToTest.writeProperty(new RDFField("hasSpecies", "->http://eunis.eea.europa.eu/species", ""), "1366");
+        testWriter.close();
+        assertEquals("<http://base/person/a%20b> <http://xmlns.com/foaf/0.1/page> <http://mypage.org/green%20spider> .\n"
+                + "<http://base/person/a%20b> <http://voc/inorg> <http://base/orgs/mafia%20%2B> .\n"
+                + "<http://base/person/a%20b> <http://voc/hasSpecies> <http://eunis.eea.europa.eu/species/1366> .\n",
+                testOutput.toString());
+    }
+
+    /**
+     * A colon in an identifier or a foreign key doesn't make the IRI
+     * absolute. Only the pointer values and segments with a scheme are
+     * left as they are.
+     */
+    @Test
+    public void writeColonInIdentifiers() throws Exception {
+        classToTest.writeStartResource("rdf:Description", "person", "EU:1");
+        classToTest.writeProperty(new RDFField("inCountry", "->country", ""), "DK:2");
+        classToTest.writeProperty(new RDFField("seeAlso", "->", ""), "urn:isbn:0451450523");
+        classToTest.writeProperty(new RDFField("seeAlso", "->", ""), "person/EU:3");
+        testWriter.close();
+        assertEquals("<http://base/person/EU:1> <http://voc/inCountry> <http://base/country/DK:2> .\n"
+                + "<http://base/person/EU:1> <http://voc/seeAlso> <urn:isbn:0451450523> .\n"
+                + "<http://base/person/EU:1> <http://voc/seeAlso> <http://base/person/EU:3> .\n",
+                testOutput.toString());
+    }
+
+    /**
+     * N-Triples can't be written without a base URL.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void baseURLRequired() throws Exception {
+        new ResourceWriterNQ(testWriter).setBaseURL(null);
+    }
+
+    /**
+     * Names with an unknown prefix are taken to be IRIs.
+     */
+    @Test
+    public void expandUnknownPrefix() throws Exception {
+        assertEquals("http://buzz#lightyear", classToTest.expandName("http://buzz#lightyear"));
+        assertEquals("http://xmlns.com/foaf/0.1/name", classToTest.expandName("foaf:name"));
+    }
+
+    @Test
+    public void writeQuads() throws Exception {
+        ResourceWriterNQ quads = new ResourceWriterNQ(testWriter);
+        quads.setVocabulary("http://voc/");
+        quads.setBaseURL("http://base/");
+        quads.writeStartResource("Person", "person", "1");
+        quads.writeProperty(new RDFField("name", "", ""), "Alice");
+        testWriter.close();
+        assertEquals("<http://base/person/1> <http://www.w3.org/1999/02/22-rdf-syntax-ns#type> <http://voc/Person>"
+                + " <http://base/person> .\n"
+                + "<http://base/person/1> <http://voc/name> \"Alice\" <http://base/person> .\n",
+                testOutput.toString());
+    }
+}
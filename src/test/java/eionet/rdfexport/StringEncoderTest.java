@@ -111,4 +111,18 @@ public class StringEncoderTest {
         assertEquals(expct, StringEncoder.encodeToIRI(input));
     }
 
+    @Test
+    public void encodeXmlIRISameAsTwoPasses() {
+        String[] inputs = {"", "plain", "mafia +", "a&b'c<d>\"e", "Ηλέκτρα & €", "100%\n{x}", "𝄞 | ^"};
+        for (String input : inputs) {
+            assertEquals(StringEncoder.encodeToXml(StringEncoder.encodeToIRI(input)),
+                    StringEncoder.encodeToXmlIRI(input));
+        }
+    }
+
+    @Test
+    public void encodeNull() {
+        assertEquals(null, StringEncoder.encodeToXmlIRI(null));
+    }
+
 }